@@ -0,0 +1,35 @@
+package io.github.feishu.bridge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 读取 src/jmh/resources 下的录制数据。
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    public static String read(String path) {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) throw new IllegalArgumentException("fixture not found: " + path);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 按 StreamingReplyService 的方式取出每行 SSE 的 data 部分（去掉 "data:" 前缀），跳过空行。
+     */
+    public static String[] sseData(String path) {
+        return read(path).lines()
+                .filter(line -> line.startsWith("data:"))
+                .map(line -> line.substring(line.startsWith("data: ") ? 6 : 5).trim())
+                .filter(data -> !data.isEmpty())
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.Fixtures;
+import io.github.feishu.bridge.config.StreamingProperties;
+import io.github.feishu.bridge.streaming.OpenAiStreamingProvider;
+import io.github.feishu.bridge.streaming.StreamEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成一次卡片更新 JSON 的开销：按录制的回复每 {@code chunksPerUpdate} 个 chunk 取一次快照，
+ * 每次调用渲染一次更新，按顺序循环（回到第一次更新时视为新的回复）。
+ * <ul>
+ *   <li>full：首张卡片和错误卡片使用的一次性渲染，每次转义全文；</li>
+ *   <li>incremental：PATCH 引擎使用的增量渲染，只转义新增部分。</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CardJsonBenchmark {
+
+    @Param({"8"})
+    public int chunksPerUpdate;
+
+    private ReplyBuffer.Snapshot[] snapshots;
+    private String[] texts;
+    private MarkdownCardJson renderer;
+    private int next;
+
+    @Setup
+    public void setup() {
+        var provider = new OpenAiStreamingProvider(new StreamingProperties.OpenAi());
+        var buffer = new ReplyBuffer();
+        var snapshotList = new ArrayList<ReplyBuffer.Snapshot>();
+        int chunks = 0;
+        for (String line : Fixtures.sseData("sse/openai.txt")) {
+            StreamEvent event = provider.decode("ou_benchmark", line);
+            if (event.type() != StreamEvent.Type.CONTENT) continue;
+            buffer.append(event.text());
+            if (++chunks % chunksPerUpdate == 0) snapshotList.add(buffer.snapshot());
+        }
+        snapshotList.add(buffer.snapshot());
+        snapshots = snapshotList.toArray(ReplyBuffer.Snapshot[]::new);
+        texts = new String[snapshots.length];
+        for (int i = 0; i < snapshots.length; i++) {
+            texts[i] = snapshots[i].toString();
+        }
+    }
+
+    @Benchmark
+    public String full() {
+        String text = texts[next];
+        if (++next == texts.length) next = 0;
+        return FeishuApiService.buildMarkdownCard(text);
+    }
+
+    @Benchmark
+    public String incremental() {
+        if (next == 0) renderer = new MarkdownCardJson();
+        ReplyBuffer.Snapshot snapshot = snapshots[next];
+        if (++next == snapshots.length) next = 0;
+        return renderer.renderIncremental(snapshot);
+    }
+}
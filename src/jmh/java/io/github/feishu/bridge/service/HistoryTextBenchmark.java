@@ -0,0 +1,52 @@
+package io.github.feishu.bridge.service;
+
+import com.lark.oapi.service.im.v1.model.Message;
+import com.lark.oapi.service.im.v1.model.MessageBody;
+import io.github.feishu.bridge.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从一条历史消息中提取纯文本的开销（拉取话题 / 回复链历史时每条消息调用一次）。
+ * card_markdown 是机器人发出的 Markdown 卡片，card_rows 是消息接口返回的二维 elements 格式。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HistoryTextBenchmark {
+
+    @Param({"text", "card_markdown", "card_rows"})
+    public String fixture;
+
+    private Message message;
+
+    @Setup
+    public void setup() {
+        message = Message.newBuilder()
+                .msgType("text".equals(fixture) ? "text" : "interactive")
+                .body(MessageBody.newBuilder().content(Fixtures.read("history/" + fixture + ".json")).build())
+                .build();
+        if (FeishuApiService.extractTextContent(message) == null) {
+            throw new IllegalStateException("fixture yields no text: " + fixture);
+        }
+    }
+
+    @Benchmark
+    public String extractText() {
+        return FeishuApiService.extractTextContent(message);
+    }
+}
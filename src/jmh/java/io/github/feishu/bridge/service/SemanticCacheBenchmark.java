@@ -0,0 +1,120 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 语义缓存的开销，索引中预先放入 {@code entries} 个由词表组合出的 FAQ 式问题：
+ * <ul>
+ *   <li>embed：一个问题的哈希向量；</li>
+ *   <li>lookup：一次查询（向量 + LSH 候选 + 精确相似度），一半是已索引问题换了说法，一半是未索引的问题；</li>
+ *   <li>put：向已满的索引加入一个新问题（含 LRU 淘汰），乘以条目数即为建索引的开销。</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SemanticCacheBenchmark {
+
+    private static final String[] SUBJECTS = {"密码", "VPN", "邮箱", "报销", "请假", "年假", "工资条", "打印机",
+            "会议室", "门禁卡", "工牌", "电脑", "显示器", "发票", "差旅", "加班", "社保", "公积金", "入职", "离职"};
+    private static final String[] ACTIONS = {"重置", "申请", "修改", "查询", "开通", "取消", "设置", "续期"};
+    private static final String[] DETAILS = {"流程", "失败", "权限", "审批", "进度", "时间", "材料", "入口",
+            "上限", "规则", "负责人", "系统"};
+    private static final String SCOPE = "openai\nbenchmark";
+
+    @Param({"1000", "5000"})
+    public int entries;
+
+    private SemanticCache cache;
+    private ResponseCache.Key[] probes;
+    private ResponseCache.Key[] fresh;
+    private String[] texts;
+    private int next;
+
+    @Setup
+    public void setup() {
+        var props = new StreamingProperties();
+        props.getCache().setSemanticMaxEntries(entries);
+        cache = new SemanticCache(props);
+
+        var random = new Random(42);
+        var indexed = new ArrayList<String>();
+        for (int i = 0; i < entries; i++) {
+            String query = question(random, i);
+            indexed.add(query);
+            cache.put(key(query), "answer " + i);
+        }
+
+        var probeList = new ArrayList<ResponseCache.Key>();
+        for (int i = 0; i < 1024; i++) {
+            if (i % 2 == 0) {
+                // 已索引问题换个说法：加上疑问词、调换语序
+                String query = indexed.get(random.nextInt(indexed.size()));
+                probeList.add(key("请问" + query + "怎么办"));
+            } else {
+                probeList.add(key(question(random, entries + i)));
+            }
+        }
+        probes = probeList.toArray(ResponseCache.Key[]::new);
+
+        var freshList = new ArrayList<ResponseCache.Key>();
+        for (int i = 0; i < 1024; i++) {
+            freshList.add(key(question(random, entries * 2 + i)));
+        }
+        fresh = freshList.toArray(ResponseCache.Key[]::new);
+        texts = freshList.stream().map(ResponseCache.Key::prompt).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public float[] embed() {
+        String text = texts[next];
+        next = (next + 1) & (texts.length - 1);
+        return HashingEmbedder.embed(text);
+    }
+
+    @Benchmark
+    public SemanticCache.Match lookup() {
+        ResponseCache.Key key = probes[next];
+        next = (next + 1) & (probes.length - 1);
+        return cache.lookup(key);
+    }
+
+    @Benchmark
+    public void put() {
+        ResponseCache.Key key = fresh[next];
+        next = (next + 1) & (fresh.length - 1);
+        cache.put(key, "answer");
+    }
+
+    private static String question(Random random, int seq) {
+        List<String> parts = List.of(
+                SUBJECTS[random.nextInt(SUBJECTS.length)],
+                ACTIONS[random.nextInt(ACTIONS.length)],
+                DETAILS[random.nextInt(DETAILS.length)]);
+        // 词表组合有限，加编号保证问题各不相同
+        return parts.get(0) + parts.get(1) + "的" + parts.get(2) + " " + seq;
+    }
+
+    private static ResponseCache.Key key(String query) {
+        return new ResponseCache.Key(SCOPE, ResponseCache.normalize(query));
+    }
+}
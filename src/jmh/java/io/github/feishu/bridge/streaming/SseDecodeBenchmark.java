@@ -0,0 +1,51 @@
+package io.github.feishu.bridge.streaming;
+
+import io.github.feishu.bridge.Fixtures;
+import io.github.feishu.bridge.config.StreamingProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解码一行 SSE data 的开销（每次调用一行，按录制顺序循环），配合 -prof gc 得到每行分配字节数。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SseDecodeBenchmark {
+
+    @Param({"openai", "openai_reasoning", "dify"})
+    public String fixture;
+
+    private StreamingProvider provider;
+    private String[] lines;
+    private int next;
+
+    @Setup
+    public void setup() {
+        lines = Fixtures.sseData("sse/" + fixture + ".txt");
+        provider = fixture.startsWith("openai")
+                ? new OpenAiStreamingProvider(new StreamingProperties.OpenAi())
+                : new DifyStreamingProvider(new StreamingProperties.Dify());
+    }
+
+    @Benchmark
+    public StreamEvent decodeLine() {
+        String line = lines[next];
+        if (++next == lines.length) next = 0;
+        return provider.decode("ou_benchmark", line);
+    }
+}
@@ -5,23 +5,19 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.net.http.HttpClient;
-import java.time.Duration;
-
 @Configuration
-@EnableConfigurationProperties({FeishuProperties.class, StreamingProperties.class})
+@EnableConfigurationProperties({FeishuProperties.class, StreamingProperties.class, HttpProperties.class})
 public class FeishuClientConfig {
 
     @Bean
     public Client feishuClient(FeishuProperties props) {
-        return Client.newBuilder(props.getAppId(), props.getAppSecret()).build();
+        return Client.newBuilder(props.getAppId(), props.getAppSecret())
+                .openBaseUrl(props.getBaseUrl())
+                .build();
     }
 
     @Bean
-    public HttpClient httpClient() {
-        return HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+    public HttpClients httpClients(HttpProperties props) {
+        return new HttpClients(props);
     }
 }
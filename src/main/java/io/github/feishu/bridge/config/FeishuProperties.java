@@ -12,10 +12,117 @@ public class FeishuProperties {
 
     private String appId;
     private String appSecret;
+    /**
+     * 开放平台地址，私有化部署或测试桩服务时修改
+     */
+    private String baseUrl = "https://open.feishu.cn";
     private Webhook webhook = new Webhook();
+    private Dedup dedup = new Dedup();
+    private Ws ws = new Ws();
+
+    @Data
+    public static class Ws {
+        /**
+         * 是否建立事件长连接，关闭后只能通过本地入口注入事件（如压测）
+         */
+        private boolean enabled = true;
+    }
+
+    @Data
+    public static class Dedup {
+        /**
+         * 是否按 event_id / message_id 丢弃飞书重推的重复事件
+         */
+        private boolean enabled = true;
+        /**
+         * 最多记住多少个事件 ID，超出按 LRU 淘汰
+         */
+        private int maxEntries = 100000;
+        /**
+         * 事件 ID 的记忆时长（分钟），应覆盖飞书的重推窗口
+         */
+        private int ttlMinutes = 720;
+    }
 
     @Data
     public static class Webhook {
         private List<String> urls = new ArrayList<>();
+        /**
+         * 每个目标地址的待发送队列容量，队列满时丢弃新事件
+         */
+        private int queueCapacity = 1000;
+        /**
+         * 每个目标地址同时在途的请求数上限
+         */
+        private int maxConcurrency = 4;
+        /**
+         * 单次请求超时（秒）
+         */
+        private int timeoutSeconds = 30;
+        private Retry retry = new Retry();
+        private Outbox outbox = new Outbox();
+        private Batch batch = new Batch();
+    }
+
+    @Data
+    public static class Batch {
+        /**
+         * 开启批量投递的 webhook 地址（需同时出现在 urls 中），未列出的地址仍逐条投递
+         */
+        private List<String> urls = new ArrayList<>();
+        /**
+         * 攒够多少条事件发送一次
+         */
+        private int maxEvents = 100;
+        /**
+         * 首条事件最多等待多久（毫秒）就发送，不论是否攒够
+         */
+        private long lingerMs = 1000;
+        /**
+         * json（JSON 数组）| ndjson（每行一个 JSON）
+         */
+        private String format = "json";
+        /**
+         * 是否 gzip 压缩请求体
+         */
+        private boolean gzip = false;
+    }
+
+    @Data
+    public static class Retry {
+        /**
+         * 单个事件的最大投递次数（含首次），0 表示一直重试。
+         * 未配置时 outbox 模式一直重试（事件已落盘，放弃即丢失），内存队列模式最多 50 次
+         */
+        private Integer maxAttempts;
+        /**
+         * 首次重试的退避时间（毫秒），之后指数增长并叠加随机抖动
+         */
+        private long initialBackoffMs = 500;
+        /**
+         * 退避时间上限（毫秒）
+         */
+        private long maxBackoffMs = 60000;
+
+        public int resolveMaxAttempts(boolean outbox) {
+            if (maxAttempts != null) return maxAttempts;
+            return outbox ? 0 : 50;
+        }
+    }
+
+    @Data
+    public static class Outbox {
+        /**
+         * 是否先将事件写入本地 outbox 文件再投递（下游故障期间不丢事件）
+         */
+        private boolean enabled = false;
+        /**
+         * outbox 文件存放目录
+         */
+        private String dir = "data/outbox";
+        /**
+         * 单个 segment 文件的大小上限（字节），超出后滚动到新文件
+         */
+        private long segmentBytes = 64L * 1024 * 1024;
     }
 }
@@ -0,0 +1,105 @@
+package io.github.feishu.bridge.config;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按用途划分的出站 HttpClient：每个客户端有自己的连接池、协议版本和执行器。
+ */
+@Slf4j
+public class HttpClients {
+
+    private final HttpClient llm;
+    private final HttpClient feishu;
+    private final HttpClient webhook;
+    private final List<ExecutorService> executors = new ArrayList<>();
+
+    public HttpClients(HttpProperties props) {
+        applyJvmWideSettings(props);
+        this.llm = build("llm", props.getLlm());
+        this.feishu = build("feishu", props.getFeishu());
+        this.webhook = build("webhook", props.getWebhook());
+    }
+
+    /** LLM 流式请求（长连接 SSE） */
+    public HttpClient llm() {
+        return llm;
+    }
+
+    /** 飞书开放平台 API 代理 */
+    public HttpClient feishu() {
+        return feishu;
+    }
+
+    /** webhook 转发 */
+    public HttpClient webhook() {
+        return webhook;
+    }
+
+    private HttpClient build(String name, HttpProperties.Profile profile) {
+        var builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.valueOf(profile.getVersion().trim().toUpperCase()))
+                .connectTimeout(Duration.ofSeconds(Math.max(1, profile.getConnectTimeoutSeconds())));
+
+        switch (profile.getExecutor().toLowerCase()) {
+            case "virtual" -> builder.executor(track(Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("http-" + name + "-", 0).factory())));
+            case "fixed" -> {
+                var counter = new AtomicInteger();
+                builder.executor(track(Executors.newFixedThreadPool(Math.max(1, profile.getExecutorThreads()), r -> {
+                    Thread t = new Thread(r, "http-" + name + "-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                })));
+            }
+            default -> {
+            }
+        }
+
+        log.info("[http] {} 客户端: version={}, connectTimeout={}s, executor={}", name,
+                profile.getVersion(), profile.getConnectTimeoutSeconds(), profile.getExecutor());
+        return builder.build();
+    }
+
+    private ExecutorService track(ExecutorService executor) {
+        executors.add(executor);
+        return executor;
+    }
+
+    /**
+     * JDK HttpClient 的保活和连接池参数只能通过系统属性设置，且在首次使用时读取，对整个 JVM 生效。
+     * 已通过 -D 显式指定的不覆盖。
+     */
+    private static void applyJvmWideSettings(HttpProperties props) {
+        if (props.getKeepAliveTimeoutSeconds() > 0) {
+            String seconds = String.valueOf(props.getKeepAliveTimeoutSeconds());
+            setIfAbsent("jdk.httpclient.keepalive.timeout", seconds);
+            setIfAbsent("jdk.httpclient.keepalive.timeout.h2", seconds);
+        }
+        if (props.getConnectionPoolSize() > 0) {
+            setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(props.getConnectionPoolSize()));
+        }
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        llm.shutdownNow();
+        feishu.shutdownNow();
+        webhook.shutdownNow();
+        executors.forEach(ExecutorService::shutdownNow);
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.feishu.bridge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 出站 HTTP 客户端配置。LLM 流式请求、飞书 API 代理、webhook 转发各用一个独立的 HttpClient，
+ * 长时间占用连接的 SSE 流不会挤占短请求的连接。
+ */
+@Data
+@ConfigurationProperties(prefix = "http")
+public class HttpProperties {
+
+    /**
+     * 空闲连接保活时间（秒），0 表示使用 JDK 默认值。JDK 的连接池参数是 JVM 全局的，对所有客户端生效
+     */
+    private int keepAliveTimeoutSeconds = 0;
+    /**
+     * 每个客户端保留的空闲 HTTP/1.1 连接上限，0 表示不限制（JVM 全局）
+     */
+    private int connectionPoolSize = 0;
+
+    private Profile llm = Profile.of("HTTP_1_1");
+    private Profile feishu = Profile.of("HTTP_2");
+    private Profile webhook = Profile.of("HTTP_1_1");
+
+    @Data
+    public static class Profile {
+        /**
+         * HTTP_1_1 | HTTP_2（https 通过 ALPN 协商，对端不支持时自动回退到 HTTP/1.1，同一连接可多路复用）
+         */
+        private String version = "HTTP_1_1";
+        /**
+         * 建立连接超时（秒）
+         */
+        private int connectTimeoutSeconds = 10;
+        /**
+         * 处理异步响应的执行器：default（JDK 内置线程池）| virtual（虚拟线程）| fixed（固定大小线程池）
+         */
+        private String executor = "default";
+        /**
+         * executor=fixed 时的线程数
+         */
+        private int executorThreads = 8;
+
+        static Profile of(String version) {
+            var profile = new Profile();
+            profile.setVersion(version);
+            return profile;
+        }
+    }
+}
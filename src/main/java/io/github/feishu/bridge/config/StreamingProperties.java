@@ -1,8 +1,13 @@
 package io.github.feishu.bridge.config;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @ConfigurationProperties(prefix = "streaming")
 public class StreamingProperties {
@@ -24,8 +29,15 @@ public class StreamingProperties {
     private Dify dify = new Dify();
     private Memory memory = new Memory();
     private Log log = new Log();
+    private Card card = new Card();
+    private Concurrency concurrency = new Concurrency();
+    private Cache cache = new Cache();
+
+    private Failover failover = new Failover();
 
     @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class OpenAi {
         private String apiUrl = "https://api.openai.com/v1/chat/completions";
         private String apiKey;
@@ -34,6 +46,8 @@ public class StreamingProperties {
     }
 
     @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class Dify {
         private String apiUrl;
         private String apiKey;
@@ -50,6 +64,46 @@ public class StreamingProperties {
          * 获取的最大历史消息条数，0 表示不限制
          */
         private int maxMessages = 0;
+        /**
+         * 本地消息缓存的最大条数，用于回复链回溯时免去逐条调用飞书 API
+         */
+        private int cacheMaxMessages = 10000;
+        /**
+         * 本地消息缓存的过期时间（分钟）
+         */
+        private int cacheTtlMinutes = 60;
+        /**
+         * 话题记忆存储：memory（仅内存）| file（同时写入本地文件，重启后可恢复）
+         */
+        private String store = "memory";
+        /**
+         * store=file 时的存放目录
+         */
+        private String storeDir = "data/memory";
+        /**
+         * 内存中最多保留的话题数，超出按 LRU 淘汰
+         */
+        private int maxThreads = 1000;
+        /**
+         * 单个话题保留的最大字符数，超出丢弃最早的消息，0 表示不限制
+         */
+        private int maxCharsPerThread = 50000;
+        /**
+         * 发送给 LLM 的历史预算（估算 token 数），从最新一轮往前保留，0 表示不限制
+         */
+        private int maxHistoryTokens = 0;
+        /**
+         * 单条 assistant 历史消息的最大字符数，超出截断，0 表示不截断
+         */
+        private int maxMessageChars = 0;
+        /**
+         * 超出预算的早期对话是否压缩为一段摘要（按话题缓存，跨轮复用）
+         */
+        private boolean summaryEnabled = false;
+        /**
+         * 摘要的最大字符数
+         */
+        private int summaryMaxChars = 1000;
     }
 
     @Data
@@ -60,8 +114,158 @@ public class StreamingProperties {
          */
         private String dir = "logs/conversations";
         /**
-         * 保留最近几份日志文件，0 表示不限制
+         * files（每次对话一个 JSON 文件）| ndjson（追加写入滚动分段文件，每行一条记录）
+         */
+        private String format = "files";
+        /**
+         * files 模式：保留最近几份日志文件，0 表示不限制
          */
         private int maxFiles = 100;
+        /**
+         * ndjson 模式：单个分段的大小上限（字节），超出滚动到新分段
+         */
+        private long segmentBytes = 64L * 1024 * 1024;
+        /**
+         * ndjson 模式：分段最长写入时间（分钟），超出滚动到新分段，0 表示只按大小滚动
+         */
+        private int rollMinutes = 60;
+        /**
+         * ndjson 模式：保留的分段数，0 表示不限制
+         */
+        private int maxSegments = 168;
+        /**
+         * ndjson 模式：分段保留时长（小时），0 表示不限制
+         */
+        private int maxAgeHours = 168;
+        /**
+         * 待写入日志的排队上限（向上取整为 2 的幂）
+         */
+        private int queueCapacity = 10000;
+        /**
+         * 队列满时的处理：drop（立即丢弃并计数）| block（最多等待 blockTimeoutMs，仍满则丢弃）
+         */
+        private String overflowPolicy = "drop";
+        /**
+         * block 策略下的最长等待时间（毫秒）
+         */
+        private long blockTimeoutMs = 100;
+        /**
+         * 是否维护日志索引（conversations.idx），供 /api/conversation-logs 按条件查询
+         */
+        private boolean indexEnabled = true;
+    }
+
+    @Data
+    public static class Card {
+        /**
+         * 卡片更新方式：patch（每次 PATCH 整张卡片）| cardkit（CardKit 卡片实体流式更新文本组件，不可用时自动降级为 patch）
+         */
+        private String engine = "patch";
+        /**
+         * 全应用共享的卡片 PATCH 预算（次/秒），需低于飞书应用级频控
+         */
+        private int maxPatchQps = 20;
+        /**
+         * 触发频控后自适应退避的下限（次/秒）
+         */
+        private int minPatchQps = 2;
+        /**
+         * 同一张卡片两次更新的最小间隔（毫秒）
+         */
+        private long minIntervalMs = 200;
+    }
+
+    @Data
+    public static class Concurrency {
+        /**
+         * 同时进行的会话数上限，超出时直接回复繁忙提示
+         */
+        private int maxConversations = 100;
+        /**
+         * 飞书 API 调用（发卡片、更新卡片）线程数
+         */
+        private int feishuApiThreads = 16;
+        /**
+         * 飞书 API 调用排队上限，队列满时不在提交方线程执行：卡片更新下一轮重试，繁忙提示丢弃
+         */
+        private int feishuApiQueueCapacity = 1000;
+        /**
+         * 达到会话上限时的回复内容，为空时使用默认提示
+         */
+        private String busyMessage = "当前请求较多，请稍后再试。";
+        /**
+         * 同一用户在同一会话（同一话题）中上一条回复未结束时又发来消息：
+         * parallel（并行，默认）| cancel（取消上一条）| queue（排队）
+         */
+        private String supersedePolicy = "parallel";
+    }
+
+    @Data
+    public static class Cache {
+        /**
+         * 是否缓存相同问题的回答，只对不带历史的请求生效
+         */
+        private boolean enabled = false;
+        /**
+         * 最多缓存的回答数，超出按 LRU 淘汰
+         */
+        private int maxEntries = 1000;
+        /**
+         * 回答的缓存时长（分钟）
+         */
+        private int ttlMinutes = 60;
+        /**
+         * 超过此长度（字符）的回答不缓存，0 表示不限制
+         */
+        private int maxAnswerChars = 20000;
+        /**
+         * 是否开启语义层：精确匹配未命中时，按本地哈希向量的相似度复用换了说法的同一问题的回答
+         */
+        private boolean semanticEnabled = false;
+        /**
+         * 语义层命中所需的最低余弦相似度（0~1），越低命中越多、答非所问的风险越大
+         */
+        private double semanticThreshold = 0.85;
+        /**
+         * 语义层最多索引的问题数，超出按 LRU 淘汰
+         */
+        private int semanticMaxEntries = 5000;
+    }
+
+    @Data
+    public static class Failover {
+        /**
+         * 备用端点，与 provider 配置的主端点一起参与路由；为空时只使用主端点
+         */
+        private List<Endpoint> endpoints = new ArrayList<>();
+        /**
+         * 首个 token 超过此时间（毫秒）仍未到达时，向下一个端点发出一次对冲请求，先返回 token 的一方胜出，0 表示不对冲
+         */
+        private long hedgeAfterMs = 0;
+        /**
+         * 端点请求失败（连接错误、5xx、429 等）后暂停路由的时间（秒）
+         */
+        private int cooldownSeconds = 30;
+        /**
+         * 首 token 延迟 EWMA 的平滑系数（0~1），越大越偏向最近几次请求
+         */
+        private double ewmaAlpha = 0.3;
+    }
+
+    @Data
+    public static class Endpoint {
+        /**
+         * 端点名称，用于日志和指标，为空时为 backup-序号
+         */
+        private String name;
+        /**
+         * openai | dify
+         */
+        private String provider = "openai";
+        /**
+         * 未配置的字段（接口地址、API Key、模型、系统提示词等）沿用主端点的配置
+         */
+        private OpenAi openai = new OpenAi(null, null, null, null);
+        private Dify dify = new Dify(null, null, null);
     }
 }
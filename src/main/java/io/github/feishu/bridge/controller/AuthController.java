@@ -1,11 +1,7 @@
 package io.github.feishu.bridge.controller;
 
-import com.lark.oapi.Client;
 import com.lark.oapi.core.utils.Jsons;
-import com.lark.oapi.service.auth.v3.model.InternalTenantAccessTokenReq;
-import com.lark.oapi.service.auth.v3.model.InternalTenantAccessTokenReqBody;
-import com.lark.oapi.service.auth.v3.model.InternalTenantAccessTokenResp;
-import io.github.feishu.bridge.config.FeishuProperties;
+import io.github.feishu.bridge.service.TenantTokenManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
@@ -14,7 +10,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Slf4j
@@ -23,31 +19,30 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class AuthController {
 
-    private final Client feishuClient;
-    private final FeishuProperties feishuProperties;
+    private final TenantTokenManager tokenManager;
 
+    /**
+     * 返回缓存的 tenant_access_token，格式与飞书原始响应一致，expire 为剩余有效期（秒）。
+     */
     @GetMapping("/tenant_access_token")
     public ResponseEntity<String> getTenantAccessToken() throws Exception {
-        InternalTenantAccessTokenReq req = InternalTenantAccessTokenReq.newBuilder()
-                .internalTenantAccessTokenReqBody(InternalTenantAccessTokenReqBody.newBuilder()
-                        .appId(feishuProperties.getAppId())
-                        .appSecret(feishuProperties.getAppSecret())
-                        .build())
-                .build();
-
-        InternalTenantAccessTokenResp resp = feishuClient.auth().v3().tenantAccessToken().internal(req);
-
-        if (!resp.success()) {
-            log.error("获取 tenant_access_token 失败: code={}, msg={}", resp.getCode(), resp.getMsg());
+        TenantTokenManager.Token token;
+        try {
+            token = tokenManager.getToken();
+        } catch (TenantTokenManager.TokenException e) {
+            log.error("获取 tenant_access_token 失败: code={}, msg={}", e.getCode(), e.getMsg());
             return ResponseEntity.status(502)
                     .contentType(MediaType.APPLICATION_JSON)
-                    .body(Jsons.DEFAULT.toJson(Map.of("code", resp.getCode(), "msg", resp.getMsg())));
+                    .body(Jsons.DEFAULT.toJson(Map.of("code", e.getCode(), "msg", e.getMsg())));
         }
 
-        // tenant_access_token 和 expire 在原始响应顶层，不在 data 中
-        String rawBody = new String(resp.getRawResponse().getBody(), StandardCharsets.UTF_8);
+        var body = new LinkedHashMap<String, Object>();
+        body.put("code", 0);
+        body.put("msg", "ok");
+        body.put("tenant_access_token", token.value());
+        body.put("expire", token.remainingSeconds());
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(rawBody);
+                .body(Jsons.DEFAULT.toJson(body));
     }
 }
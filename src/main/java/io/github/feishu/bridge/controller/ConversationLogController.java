@@ -0,0 +1,105 @@
+package io.github.feishu.bridge.controller;
+
+import io.github.feishu.bridge.service.ConversationLogIndex;
+import io.github.feishu.bridge.service.ConversationLogService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/conversation-logs")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "streaming.log.enabled", havingValue = "true")
+public class ConversationLogController {
+
+    private static final int MAX_LIMIT = 500;
+
+    private final ConversationLogService logService;
+
+    /**
+     * 按索引查询对话日志，按时间倒序分页。例如最近一小时 dify 首 token 超过 5 秒的记录：
+     * {@code GET /api/conversation-logs?sinceMinutes=60&provider=dify&minTtftMs=5000}
+     * <p>
+     * from / to 接受毫秒时间戳或 ISO-8601 时间；detail=true 时按索引位置读出当前页的完整日志。
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> query(
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) Integer sinceMinutes,
+            @RequestParam(required = false) String openId,
+            @RequestParam(required = false) String threadId,
+            @RequestParam(required = false) String provider,
+            @RequestParam(required = false) Integer httpStatus,
+            @RequestParam(required = false) Long minTtftMs,
+            @RequestParam(required = false) Long maxTtftMs,
+            @RequestParam(required = false) Long minTotalMs,
+            @RequestParam(required = false) Long maxTotalMs,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "false") boolean detail) {
+        if (!logService.isIndexEnabled()) {
+            return ResponseEntity.status(404).body(Map.of("error", "conversation log index is disabled"));
+        }
+        Long fromMs;
+        Long toMs;
+        try {
+            fromMs = parseTime(from);
+            toMs = parseTime(to);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "invalid time: " + e.getParsedString()));
+        }
+        if (sinceMinutes != null) {
+            long since = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(sinceMinutes);
+            fromMs = fromMs == null ? since : Math.max(fromMs, since);
+        }
+
+        var filter = new ConversationLogIndex.Filter(fromMs, toMs, openId, threadId, provider, httpStatus,
+                minTtftMs, maxTtftMs, minTotalMs, maxTotalMs);
+        var page = logService.query(filter, Math.max(0, offset), Math.clamp(limit, 1, MAX_LIMIT));
+
+        var items = new ArrayList<Object>(page.items().size());
+        for (var entry : page.items()) {
+            if (!detail) {
+                items.add(entry);
+                continue;
+            }
+            var item = new LinkedHashMap<String, Object>();
+            item.put("index", entry);
+            try {
+                item.put("record", logService.readRecord(entry));
+            } catch (IOException e) {
+                log.warn("[conv-log] 读取对话日志失败: {}@{}", entry.file(), entry.offset(), e);
+                item.put("record", null);
+            }
+            items.add(item);
+        }
+
+        var body = new LinkedHashMap<String, Object>();
+        body.put("total", page.total());
+        body.put("offset", page.offset());
+        body.put("limit", page.limit());
+        body.put("items", items);
+        return ResponseEntity.ok(body);
+    }
+
+    private static Long parseTime(String value) {
+        if (value == null || value.isBlank()) return null;
+        if (value.chars().allMatch(Character::isDigit)) return Long.parseLong(value);
+        return Instant.parse(value).toEpochMilli();
+    }
+}
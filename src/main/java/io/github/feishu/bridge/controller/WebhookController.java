@@ -0,0 +1,26 @@
+package io.github.feishu.bridge.controller;
+
+import io.github.feishu.bridge.service.WebhookForwardService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/webhook")
+@RequiredArgsConstructor
+public class WebhookController {
+
+    private final WebhookForwardService webhookForwardService;
+
+    /**
+     * 每个 webhook 目标的队列深度、在途请求、成功/失败/丢弃计数和延迟。
+     */
+    @GetMapping("/stats")
+    public List<Map<String, Object>> stats() {
+        return webhookForwardService.stats();
+    }
+}
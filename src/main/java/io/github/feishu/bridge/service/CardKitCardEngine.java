@@ -0,0 +1,141 @@
+package io.github.feishu.bridge.service;
+
+import com.lark.oapi.core.utils.Jsons;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CardKit 卡片实体：首张卡片创建为开启流式模式的卡片实体，之后只更新其中的 Markdown 组件文本，
+ * 不再重建和传输整张卡片，客户端对新增文本做打字机渲染；最终内容写完后关闭流式模式。
+ * <p>
+ * 降级：创建卡片实体失败（未开通 CardKit 权限、私有化环境不支持等）时，本张卡片改用 {@link PatchCardEngine}，
+ * 并在一段时间内不再尝试 CardKit；组件流式更新失败（如流式模式已超时关闭）时改为全量更新卡片实体。
+ */
+@Slf4j
+public class CardKitCardEngine implements CardUpdateEngine {
+
+    static final String ELEMENT_ID = "content";
+    private static final long UNAVAILABLE_RETRY_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final String STREAMING_OFF = Jsons.DEFAULT.toJson(
+            Map.of("config", Map.of("streaming_mode", false)));
+
+    private final FeishuApiService feishuApi;
+    private final StreamingExecutors executors;
+    private final PatchCardEngine fallback;
+    private final ConcurrentHashMap<String, CardState> cards = new ConcurrentHashMap<>();
+    private volatile long unavailableUntil;
+
+    private static final class CardState {
+        private final String cardId;
+        private final AtomicInteger sequence = new AtomicInteger();
+        private volatile boolean elementUpdateBroken;
+        private volatile boolean closed;
+
+        private CardState(String cardId) {
+            this.cardId = cardId;
+        }
+    }
+
+    public CardKitCardEngine(FeishuApiService feishuApi, StreamingExecutors executors) {
+        this.feishuApi = feishuApi;
+        this.executors = executors;
+        this.fallback = new PatchCardEngine(feishuApi);
+    }
+
+    @Override
+    public String send(String openId, String replyToMessageId, String content) throws Exception {
+        if (System.currentTimeMillis() < unavailableUntil) {
+            return fallback.send(openId, replyToMessageId, content);
+        }
+
+        var created = feishuApi.createCard(buildCard(content, true));
+        if (!created.success() || created.getData() == null || created.getData().getCardId() == null) {
+            unavailableUntil = System.currentTimeMillis() + UNAVAILABLE_RETRY_MS;
+            log.warn("[card] CardKit 不可用，{} 分钟内改用整卡 PATCH: code={}, msg={}",
+                    TimeUnit.MILLISECONDS.toMinutes(UNAVAILABLE_RETRY_MS), created.getCode(), created.getMsg());
+            return fallback.send(openId, replyToMessageId, content);
+        }
+
+        String cardId = created.getData().getCardId();
+        String reference = Jsons.DEFAULT.toJson(Map.of("type", "card", "data", Map.of("card_id", cardId)));
+        String messageId = feishuApi.sendInteractive(openId, replyToMessageId, reference);
+        if (messageId != null) {
+            cards.put(messageId, new CardState(cardId));
+        }
+        return messageId;
+    }
+
+    @Override
+    public Result update(String messageId, CharSequence content, boolean isFinal) throws Exception {
+        CardState state = cards.get(messageId);
+        if (state == null) {
+            // 发送时已降级为普通卡片
+            return fallback.update(messageId, content, isFinal);
+        }
+
+        if (!state.elementUpdateBroken) {
+            Result result = Result.of(feishuApi.updateCardElementContent(
+                    state.cardId, ELEMENT_ID, content.toString(), state.sequence.incrementAndGet()));
+            if (result != Result.FAILED) {
+                if (result == Result.OK && isFinal) closeStreaming(state);
+                return result;
+            }
+            state.elementUpdateBroken = true;
+            log.warn("[card] 组件流式更新失败，改为全量更新卡片实体: cardId={}", state.cardId);
+        }
+
+        Result result = Result.of(feishuApi.updateCard(
+                state.cardId, buildCard(content.toString(), !isFinal), state.sequence.incrementAndGet()));
+        if (result == Result.OK && isFinal) state.closed = true;
+        return result;
+    }
+
+    @Override
+    public void release(String messageId) {
+        // 降级发送的卡片由 fallback 持有渲染缓存，同样需要释放
+        fallback.release(messageId);
+        CardState state = cards.remove(messageId);
+        // 未写完就被取消的卡片也要关闭流式模式，否则会一直显示生成中；
+        // 取消发生在会话线程上，关闭请求交给飞书 API 线程池，不阻塞会话结束
+        if (state != null && !state.closed) {
+            executors.supplyFeishuApi(() -> {
+                closeStreaming(state);
+                return null;
+            });
+        }
+    }
+
+    PatchCardEngine fallback() {
+        return fallback;
+    }
+
+    private void closeStreaming(CardState state) {
+        if (state.closed) return;
+        state.closed = true;
+        try {
+            feishuApi.updateCardSettings(state.cardId, STREAMING_OFF, state.sequence.incrementAndGet());
+        } catch (Exception e) {
+            log.warn("[card] 关闭流式模式失败: cardId={}", state.cardId, e);
+        }
+    }
+
+    /**
+     * 卡片 JSON 2.0：单个带 element_id 的 Markdown 组件。
+     */
+    static String buildCard(String content, boolean streaming) {
+        return Jsons.DEFAULT.toJson(Map.of(
+                "schema", "2.0",
+                "config", Map.of("streaming_mode", streaming, "wide_screen_mode", true),
+                "body", Map.of("elements", List.of(Map.of(
+                        "tag", "markdown",
+                        "element_id", ELEMENT_ID,
+                        "content", content
+                )))
+        ));
+    }
+}
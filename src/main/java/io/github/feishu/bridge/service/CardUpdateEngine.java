@@ -0,0 +1,50 @@
+package io.github.feishu.bridge.service;
+
+import com.lark.oapi.core.response.BaseResponse;
+
+import java.util.Set;
+
+/**
+ * 流式回复卡片的发送与更新方式，由 streaming.card.engine 选择：
+ * <ul>
+ *   <li>patch：普通卡片消息，每次 PATCH 整张卡片（{@link PatchCardEngine}）；</li>
+ *   <li>cardkit：CardKit 卡片实体 + 流式文本组件，只更新文本组件（{@link CardKitCardEngine}）。</li>
+ * </ul>
+ * 更新调用由 {@link CardUpdateScheduler} 统一限速，同一张卡片同时只有一个更新在途。
+ */
+public interface CardUpdateEngine {
+
+    /** 飞书频控错误码：应用级请求频率超限 / 单条消息更新频率超限 */
+    Set<Integer> RATE_LIMIT_CODES = Set.of(99991400, 230020);
+
+    enum Result {
+        OK, RATE_LIMITED, FAILED;
+
+        static Result of(BaseResponse<?> resp) {
+            if (resp == null) return FAILED;
+            if (resp.success()) return OK;
+            if (RATE_LIMIT_CODES.contains(resp.getCode())) return RATE_LIMITED;
+            if (resp.getRawResponse() != null && resp.getRawResponse().getStatusCode() == 429) return RATE_LIMITED;
+            return FAILED;
+        }
+    }
+
+    /**
+     * 发送首张卡片：replyToMessageId 非空时以回复形式发送，否则私信给 openId。
+     *
+     * @return 新消息的 messageId，失败返回 null
+     */
+    String send(String openId, String replyToMessageId, String content) throws Exception;
+
+    /**
+     * 将卡片内容更新为 content（完整文本，通常是 {@link ReplyBuffer} 的快照）。
+     *
+     * @param isFinal 是否为最终内容，之后不会再有更新
+     */
+    Result update(String messageId, CharSequence content, boolean isFinal) throws Exception;
+
+    /**
+     * 卡片不再更新（已完成或被取消）时调用，释放引擎为其保存的状态。
+     */
+    void release(String messageId);
+}
@@ -0,0 +1,24 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "streaming.enabled", havingValue = "true")
+public class CardUpdateEngineConfig {
+
+    @Bean
+    public CardUpdateEngine cardUpdateEngine(FeishuApiService feishuApi, StreamingExecutors executors,
+                                             StreamingProperties props) {
+        String engine = props.getCard().getEngine().toLowerCase();
+        log.info("[card] 卡片更新方式: {}", engine);
+        return switch (engine) {
+            case "cardkit" -> new CardKitCardEngine(feishuApi, executors);
+            default -> new PatchCardEngine(feishuApi);
+        };
+    }
+}
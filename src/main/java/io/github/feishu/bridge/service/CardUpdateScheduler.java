@@ -0,0 +1,272 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 全局卡片更新调度器：所有会话共享一份 PATCH 预算（令牌桶）。
+ * <ul>
+ *   <li>同一 messageId 的待更新内容只保留最新一份（合并）；</li>
+ *   <li>就绪队列轮转分配 PATCH 名额，保证活跃会话之间公平；</li>
+ *   <li>遇到飞书频控错误码时预算减半（AIMD），之后每秒逐步恢复。</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "streaming.enabled", havingValue = "true")
+public class CardUpdateScheduler {
+
+    private static final long TICK_MS = 10;
+    private static final long RECOVER_INTERVAL_MS = 1000;
+    private static final long RATE_LIMIT_PAUSE_MS = 1000;
+    private static final int MAX_FINAL_RETRIES = 3;
+
+    private final CardUpdateEngine engine;
+    private final StreamingMetrics metrics;
+    private final double maxQps;
+    private final double minQps;
+    private final long minIntervalMs;
+
+    private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<String> ready = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pendingRateLimits = new AtomicInteger();
+    private final ScheduledExecutorService dispatcher;
+    private final StreamingExecutors executors;
+
+    // 以下字段仅由 dispatcher 线程读写
+    private volatile double currentQps;
+    private double tokens;
+    private long lastTick;
+    private long lastRateLimitAt;
+    private long lastRecoverAt;
+
+    public CardUpdateScheduler(CardUpdateEngine engine, StreamingExecutors executors,
+                               StreamingMetrics metrics, StreamingProperties props) {
+        this.engine = engine;
+        this.metrics = metrics;
+        this.executors = executors;
+        var card = props.getCard();
+        this.maxQps = Math.max(1, card.getMaxPatchQps());
+        this.minQps = Math.max(1, Math.min(card.getMinPatchQps(), card.getMaxPatchQps()));
+        this.minIntervalMs = Math.max(0, card.getMinIntervalMs());
+        this.currentQps = this.maxQps;
+        this.lastTick = System.currentTimeMillis();
+
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "card-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        log.info("[card] 卡片更新调度器已启动: maxPatchQps={}, minPatchQps={}, minIntervalMs={}",
+                card.getMaxPatchQps(), card.getMinPatchQps(), minIntervalMs);
+    }
+
+    /**
+     * 提交一次卡片内容更新。尚未发出的旧内容会被直接覆盖，只有最新内容会被 PATCH。
+     */
+    public void submit(String messageId, CharSequence content) {
+        Slot slot = slots.computeIfAbsent(messageId, k -> new Slot());
+        synchronized (slot) {
+            if (slot.finalizing) return;
+            slot.pending = content;
+            if (!slot.queued && !slot.inFlight) {
+                slot.queued = true;
+                ready.offerLast(messageId);
+            }
+        }
+    }
+
+    /**
+     * 提交最终内容：优先调度、不受单卡最小间隔限制，并等待之前在途的 PATCH 结束后再发出，
+     * 保证最终内容不会被旧内容覆盖。返回的 future 在最终内容更新完成（或放弃）后完成，
+     * 值为最终内容是否更新成功。
+     */
+    public CompletableFuture<Boolean> complete(String messageId, CharSequence content) {
+        Slot slot = slots.computeIfAbsent(messageId, k -> new Slot());
+        synchronized (slot) {
+            slot.finalizing = true;
+            slot.pending = content;
+            if (!slot.queued && !slot.inFlight) {
+                slot.queued = true;
+                ready.offerFirst(messageId);
+            }
+            return slot.done;
+        }
+    }
+
+    /**
+     * 放弃某张卡片的后续更新（如会话异常结束）。
+     */
+    public void cancel(String messageId) {
+        Slot slot = slots.remove(messageId);
+        if (slot != null) {
+            synchronized (slot) {
+                slot.pending = null;
+                slot.done.complete(false);
+            }
+            engine.release(messageId);
+        }
+    }
+
+    public double getCurrentQps() {
+        return currentQps;
+    }
+
+    public int getActiveCards() {
+        return slots.size();
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            adjustRate(now);
+            tokens = Math.min(Math.max(1, currentQps / 10), tokens + currentQps * (now - lastTick) / 1000.0);
+            lastTick = now;
+
+            int scan = ready.size();
+            while (tokens >= 1 && scan-- > 0) {
+                String messageId = ready.pollFirst();
+                if (messageId == null) break;
+                Slot slot = slots.get(messageId);
+                if (slot == null) continue;
+
+                CharSequence content;
+                boolean isFinal;
+                long previousPatchAt;
+                synchronized (slot) {
+                    boolean throttled = now < slot.notBefore
+                            || (!slot.finalizing && now - slot.lastPatchAt < minIntervalMs);
+                    if (throttled || slot.pending == null) {
+                        if (slot.pending != null) {
+                            ready.offerLast(messageId);
+                        } else {
+                            slot.queued = false;
+                        }
+                        continue;
+                    }
+                    content = slot.pending;
+                    isFinal = slot.finalizing;
+                    slot.pending = null;
+                    slot.queued = false;
+                    slot.inFlight = true;
+                    previousPatchAt = slot.lastPatchAt;
+                    slot.lastPatchAt = now;
+                }
+                if (!executors.tryExecuteFeishuApi(() -> runPatch(messageId, slot, content, isFinal))) {
+                    // 线程池已满：调度线程不能阻塞，内容放回槽位（已有更新的内容则以新内容为准），下一轮再发
+                    requeue(messageId, slot, content, previousPatchAt);
+                    metrics.recordFeishuApiRejected("card_update");
+                    break;
+                }
+                tokens -= 1;
+            }
+        } catch (Exception e) {
+            log.warn("[card] 调度异常", e);
+        }
+    }
+
+    private void requeue(String messageId, Slot slot, CharSequence content, long previousPatchAt) {
+        synchronized (slot) {
+            slot.inFlight = false;
+            slot.lastPatchAt = previousPatchAt;
+            if (slot.pending == null) slot.pending = content;
+            if (!slot.queued) {
+                slot.queued = true;
+                if (slot.finalizing) {
+                    ready.offerFirst(messageId);
+                } else {
+                    ready.offerLast(messageId);
+                }
+            }
+        }
+    }
+
+    /**
+     * AIMD：有频控事件时预算减半并暂停发放名额，持续无频控时每秒 +1 直至上限。
+     */
+    private void adjustRate(long now) {
+        int limited = pendingRateLimits.getAndSet(0);
+        if (limited > 0) {
+            double before = currentQps;
+            currentQps = Math.max(minQps, currentQps / 2);
+            tokens = 0;
+            lastRateLimitAt = now;
+            lastRecoverAt = now;
+            log.warn("[card] 触发飞书频控 {} 次，PATCH 预算 {}/s -> {}/s", limited,
+                    String.format("%.1f", before), String.format("%.1f", currentQps));
+        } else if (currentQps < maxQps
+                && now - lastRateLimitAt >= RECOVER_INTERVAL_MS
+                && now - lastRecoverAt >= RECOVER_INTERVAL_MS) {
+            currentQps = Math.min(maxQps, currentQps + 1);
+            lastRecoverAt = now;
+        }
+    }
+
+    private void runPatch(String messageId, Slot slot, CharSequence content, boolean isFinal) {
+        var result = CardUpdateEngine.Result.FAILED;
+        long start = System.nanoTime();
+        try {
+            result = engine.update(messageId, content, isFinal);
+        } catch (Exception e) {
+            log.warn("[card] 卡片更新失败: messageId={}", messageId, e);
+        }
+        metrics.recordCardUpdate(result, System.nanoTime() - start);
+        boolean rateLimited = result == CardUpdateEngine.Result.RATE_LIMITED;
+        if (rateLimited) {
+            pendingRateLimits.incrementAndGet();
+        }
+
+        synchronized (slot) {
+            slot.inFlight = false;
+            if (rateLimited) {
+                slot.notBefore = System.currentTimeMillis() + RATE_LIMIT_PAUSE_MS;
+                // 最终内容被限流时重试；中间内容只要后续还有新内容就无需重发
+                if (slot.pending == null && isFinal && slot.finalRetries++ < MAX_FINAL_RETRIES) {
+                    slot.pending = content;
+                }
+            }
+            if (slot.pending != null) {
+                if (!slot.queued) {
+                    slot.queued = true;
+                    if (slot.finalizing) {
+                        ready.offerFirst(messageId);
+                    } else {
+                        ready.offerLast(messageId);
+                    }
+                }
+            } else if (slot.finalizing) {
+                if (slots.remove(messageId, slot)) engine.release(messageId);
+                // 最终阶段没有待发内容时，刚发出的这次就是最终内容
+                slot.done.complete(isFinal && result == CardUpdateEngine.Result.OK);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+    }
+
+    private static final class Slot {
+        private final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        private CharSequence pending;
+        private boolean queued;
+        private boolean inFlight;
+        private boolean finalizing;
+        private int finalRetries;
+        private long lastPatchAt;
+        private long notBefore;
+    }
+}
@@ -0,0 +1,312 @@
+package io.github.feishu.bridge.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 对话日志的轻量索引：每条记录的关键指标和它在日志文件中的位置，按写入顺序追加到 index 文件（TSV，每行一条），
+ * 同时保存在内存中供查询，查询时不需要读取日志文件。
+ * <ul>
+ *   <li>只由日志写线程追加和删除，查询可来自任意线程；</li>
+ *   <li>日志文件被清理时，从头部移除该文件的索引项，并按剩余的索引项重建字符串去重表；失效行超过有效行时重写 index 文件。</li>
+ * </ul>
+ */
+@Slf4j
+public class ConversationLogIndex {
+
+    static final String INDEX_FILE = "conversations.idx";
+    /** 记录时间戳由各回复线程生成，写入顺序与时间顺序可能略有出入，按时间截止扫描时留出余量 */
+    private static final long ORDER_SLACK_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * @param file   日志文件名（不含目录）
+     * @param offset 记录在文件中的起始字节
+     * @param length 记录的字节数
+     */
+    public record Entry(long timestamp, String openId, String threadId, int httpStatus,
+                        long ttftMs, long totalMs, String provider,
+                        String file, long offset, int length) {
+    }
+
+    /**
+     * 查询条件，为 null 的字段不过滤；时间为毫秒时间戳，区间为 [from, to)。
+     */
+    public record Filter(Long from, Long to, String openId, String threadId, String provider,
+                         Integer httpStatus, Long minTtftMs, Long maxTtftMs,
+                         Long minTotalMs, Long maxTotalMs) {
+
+        boolean matches(Entry e) {
+            return (from == null || e.timestamp() >= from)
+                    && (to == null || e.timestamp() < to)
+                    && (openId == null || openId.equals(e.openId()))
+                    && (threadId == null || threadId.equals(e.threadId()))
+                    && (provider == null || provider.equalsIgnoreCase(e.provider()))
+                    && (httpStatus == null || httpStatus == e.httpStatus())
+                    && (minTtftMs == null || e.ttftMs() >= minTtftMs)
+                    && (maxTtftMs == null || e.ttftMs() <= maxTtftMs)
+                    && (minTotalMs == null || e.totalMs() >= minTotalMs)
+                    && (maxTotalMs == null || e.totalMs() <= maxTotalMs);
+        }
+    }
+
+    /**
+     * @param total 满足条件的总条数
+     * @param items 按时间倒序的当前页
+     */
+    public record Page(int total, int offset, int limit, List<Entry> items) {
+    }
+
+    private final Path indexFile;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /** 按写入顺序排列，[head, size) 为有效项 */
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    private int head;
+    /** openId / provider 等重复出现的字符串只保留一份，只含有效索引项引用的字符串（见 {@link #pruneStrings}） */
+    private final Map<String, String> strings = new HashMap<>();
+    /** index 文件中已失效的行数 */
+    private int staleLines;
+    private BufferedWriter out;
+
+    ConversationLogIndex(Path dir) {
+        this.indexFile = dir.resolve(INDEX_FILE);
+    }
+
+    /**
+     * 启动时加载 index 文件，丢弃指向已不存在的日志文件的行。
+     *
+     * @param liveFiles 当前存在的日志文件名
+     * @return 已有索引的日志文件名，其余文件需要调用方补建索引
+     */
+    Set<String> load(Set<String> liveFiles) throws IOException {
+        var indexed = new HashSet<String>();
+        if (Files.exists(indexFile)) {
+            try (var lines = Files.lines(indexFile, StandardCharsets.UTF_8)) {
+                lines.forEach(line -> {
+                    Entry e = parse(line);
+                    if (e != null && liveFiles.contains(e.file())) {
+                        entries.add(e);
+                        indexed.add(e.file());
+                    } else {
+                        staleLines++;
+                    }
+                });
+            }
+        }
+        out = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (staleLines > 0) pruneStrings();
+        compactIfNeeded();
+        log.info("[conv-log] 日志索引已加载: {} 条，文件={}", entries.size(), indexFile.toAbsolutePath());
+        return indexed;
+    }
+
+    /**
+     * 追加一批索引项，日志内容已落盘后调用。
+     */
+    void append(List<Entry> batch) throws IOException {
+        if (batch.isEmpty()) return;
+        var interned = new ArrayList<Entry>(batch.size());
+        for (Entry e : batch) {
+            Entry entry = new Entry(e.timestamp(), intern(e.openId()), intern(e.threadId()), e.httpStatus(),
+                    e.ttftMs(), e.totalMs(), intern(e.provider()), intern(e.file()), e.offset(), e.length());
+            interned.add(entry);
+            out.write(format(entry));
+        }
+        out.flush();
+        lock.writeLock().lock();
+        try {
+            entries.addAll(interned);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 日志文件被删除后移除其索引项。清理总是从最早的文件开始，对应的索引项通常位于头部；
+     * 不在头部时（如启动时补建的索引）退化为全量过滤。
+     */
+    void removeFile(String file) {
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            while (head < entries.size() && entries.get(head).file().equals(file)) {
+                entries.set(head++, null);
+                removed++;
+            }
+            if (removed == 0) {
+                entries.subList(0, head).clear();
+                head = 0;
+                int before = entries.size();
+                entries.removeIf(e -> e.file().equals(file));
+                removed = before - entries.size();
+            } else if (head > 1024 && head > entries.size() / 2) {
+                entries.subList(0, head).clear();
+                head = 0;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (removed > 0) {
+            staleLines += removed;
+            pruneStrings();
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * 按时间重新排序，启动时补建索引后调用（补建的旧记录追加在末尾）。
+     */
+    void sortByTime() {
+        lock.writeLock().lock();
+        try {
+            entries.subList(0, head).clear();
+            head = 0;
+            entries.sort(Comparator.comparingLong(Entry::timestamp));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 从最新的记录往前扫描；设置了 from 时，遇到早于 from 的记录（留出乱序余量）即停止。
+     */
+    public Page query(Filter filter, int offset, int limit) {
+        var items = new ArrayList<Entry>(Math.min(limit, 256));
+        int total = 0;
+        lock.readLock().lock();
+        try {
+            for (int i = entries.size() - 1; i >= head; i--) {
+                Entry e = entries.get(i);
+                if (filter.from() != null && e.timestamp() < filter.from() - ORDER_SLACK_MS) break;
+                if (!filter.matches(e)) continue;
+                if (total >= offset && items.size() < limit) items.add(e);
+                total++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new Page(total, offset, limit, items);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size() - head;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void close() {
+        try {
+            if (out != null) out.close();
+        } catch (IOException e) {
+            log.warn("[conv-log] 关闭日志索引失败", e);
+        }
+    }
+
+    /**
+     * 失效行多于有效行时，把有效项写入临时文件后原子替换 index 文件。
+     */
+    private void compactIfNeeded() {
+        int live = size();
+        if (staleLines <= Math.max(1024, live)) return;
+        Path tmp = indexFile.resolveSibling(INDEX_FILE + ".tmp");
+        try {
+            out.close();
+            try (var w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                lock.readLock().lock();
+                try {
+                    for (int i = head; i < entries.size(); i++) {
+                        w.write(format(entries.get(i)));
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            staleLines = 0;
+            log.debug("[conv-log] 日志索引已重写: {} 条", live);
+        } catch (IOException e) {
+            log.warn("[conv-log] 重写日志索引失败", e);
+        } finally {
+            try {
+                out = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                log.error("[conv-log] 打开日志索引失败", e);
+            }
+        }
+    }
+
+    /**
+     * 按有效索引项重建字符串去重表，去掉只被已删除记录引用的 openId、话题 ID 等。
+     * 只在日志文件被删除时调用，频率与日志轮转相同。
+     */
+    private void pruneStrings() {
+        strings.clear();
+        lock.readLock().lock();
+        try {
+            for (int i = head; i < entries.size(); i++) {
+                Entry e = entries.get(i);
+                intern(e.openId());
+                intern(e.threadId());
+                intern(e.provider());
+                intern(e.file());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int internedStrings() {
+        return strings.size();
+    }
+
+    private String intern(String s) {
+        return s == null ? null : strings.computeIfAbsent(s, k -> k);
+    }
+
+    private static String format(Entry e) {
+        return e.timestamp() + "\t" + field(e.openId()) + "\t" + field(e.threadId()) + "\t" + e.httpStatus()
+                + "\t" + e.ttftMs() + "\t" + e.totalMs() + "\t" + field(e.provider())
+                + "\t" + e.file() + "\t" + e.offset() + "\t" + e.length() + "\n";
+    }
+
+    private static String field(String s) {
+        if (s == null) return "-";
+        return s.indexOf('\t') < 0 && s.indexOf('\n') < 0 ? s : s.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    private Entry parse(String line) {
+        String[] f = line.split("\t", -1);
+        if (f.length != 10) return null;
+        try {
+            return new Entry(Long.parseLong(f[0]), intern(nullable(f[1])), intern(nullable(f[2])),
+                    Integer.parseInt(f[3]), Long.parseLong(f[4]), Long.parseLong(f[5]), intern(nullable(f[6])),
+                    intern(f[7]), Long.parseLong(f[8]), Integer.parseInt(f[9]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String nullable(String s) {
+        return "-".equals(s) ? null : s;
+    }
+}
@@ -1,22 +1,43 @@
 package io.github.feishu.bridge.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import io.github.feishu.bridge.config.StreamingProperties;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Stream;
 
+/**
+ * 对话日志。save 只把不可变的 {@link ConversationRecord} 放入无锁环形队列，回复线程不组装 Map、不做序列化和文件 IO；
+ * 队列满时按 overflowPolicy 丢弃（drop）或短暂等待（block，超时后丢弃）。
+ * 开启索引时，写线程同时维护 {@link ConversationLogIndex}，供按时间、用户、延迟等条件查询。
+ * <ul>
+ *   <li>files：每次对话一个格式化的 JSON 文件，保留最近 maxFiles 份；</li>
+ *   <li>ndjson：紧凑的单行 JSON 追加写入 segment 文件，按大小或时间滚动，按份数和保留时长清理，每批只 flush 一次。</li>
+ * </ul>
+ */
 @Slf4j
 @Service
 @ConditionalOnProperty(name = "streaming.log.enabled", havingValue = "true")
@@ -25,57 +46,396 @@ public class ConversationLogService {
     private static final DateTimeFormatter FILE_TS = DateTimeFormatter
             .ofPattern("yyyyMMdd_HHmmss_SSS")
             .withZone(ZoneId.systemDefault());
+    private static final String SEGMENT_PREFIX = "conversations_";
+    private static final String SEGMENT_SUFFIX = ".ndjson";
+    private static final int MAX_BATCH = 256;
 
     private final Path logDir;
     private final int maxFiles;
+    private final boolean ndjson;
+    private final long segmentBytes;
+    private final long rollIntervalMs;
+    private final int maxSegments;
+    private final long maxAgeMs;
     private final ObjectMapper mapper;
+    private final RingBuffer<ConversationRecord> queue;
+    private final boolean blockWhenFull;
+    private final long blockTimeoutNanos;
+    private final LongAdder dropped = new LongAdder();
+    /** 未开启索引时为 null */
+    private final ConversationLogIndex index;
+    private final Thread writer;
+    private volatile boolean running = true;
+    /** 写线程空闲挂起时为 true，生产者据此决定是否唤醒 */
+    private volatile boolean writerParked;
+
+    // 以下字段仅由写线程访问
+    private final Deque<Path> files = new ArrayDeque<>();
+    private BufferedOutputStream segment;
+    private long segmentSize;
+    private long segmentOpenedAt;
 
     public ConversationLogService(StreamingProperties props) {
-        this.logDir = Path.of(props.getLog().getDir());
-        this.maxFiles = props.getLog().getMaxFiles();
-        this.mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        var cfg = props.getLog();
+        this.logDir = Path.of(cfg.getDir());
+        this.maxFiles = cfg.getMaxFiles();
+        this.ndjson = "ndjson".equalsIgnoreCase(cfg.getFormat());
+        this.segmentBytes = Math.max(1024, cfg.getSegmentBytes());
+        this.rollIntervalMs = TimeUnit.MINUTES.toMillis(Math.max(0, cfg.getRollMinutes()));
+        this.maxSegments = cfg.getMaxSegments();
+        this.maxAgeMs = TimeUnit.HOURS.toMillis(Math.max(0, cfg.getMaxAgeHours()));
+        this.mapper = ndjson ? new ObjectMapper() : new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        this.queue = new RingBuffer<>(cfg.getQueueCapacity());
+        this.blockWhenFull = "block".equalsIgnoreCase(cfg.getOverflowPolicy());
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, cfg.getBlockTimeoutMs()));
+        this.index = cfg.isIndexEnabled() ? new ConversationLogIndex(logDir) : null;
         try {
             Files.createDirectories(logDir);
-            log.info("[conv-log] 对话日志已启用，目录={}，保留最近 {} 份（0=不限）",
-                    logDir.toAbsolutePath(), maxFiles);
+            loadExistingFiles();
+            if (ndjson) {
+                log.info("[conv-log] 对话日志已启用（ndjson），目录={}，滚动={}MB/{}分钟，保留 {} 份 / {} 小时（0=不限）",
+                        logDir.toAbsolutePath(), segmentBytes / (1024 * 1024), cfg.getRollMinutes(),
+                        maxSegments, cfg.getMaxAgeHours());
+            } else {
+                log.info("[conv-log] 对话日志已启用，目录={}，保留最近 {} 份（0=不限）",
+                        logDir.toAbsolutePath(), maxFiles);
+            }
         } catch (IOException e) {
             log.error("[conv-log] 创建日志目录失败: {}", logDir, e);
         }
+        this.writer = Thread.ofPlatform().daemon().name("conv-log-writer").start(this::writeLoop);
+    }
+
+    /**
+     * 提交一条对话日志。drop 策略下从不阻塞；block 策略下队列满时最多等待 blockTimeoutMs，仍满则丢弃并计数。
+     */
+    public void save(ConversationRecord record) {
+        if (!queue.offer(record) && !(blockWhenFull && offerBlocking(record))) {
+            dropped.increment();
+            log.warn("[conv-log] 日志队列已满，丢弃一条对话日志（累计 {} 条）", dropped.sum());
+            return;
+        }
+        if (writerParked) LockSupport.unpark(writer);
+    }
+
+    private boolean offerBlocking(ConversationRecord record) {
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        LockSupport.unpark(writer);
+        while (System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(50_000);
+            if (queue.offer(record)) return true;
+        }
+        return false;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public boolean isIndexEnabled() {
+        return index != null;
+    }
+
+    /**
+     * 按索引查询，结果按时间倒序分页，不读取日志文件。
+     */
+    public ConversationLogIndex.Page query(ConversationLogIndex.Filter filter, int offset, int limit) {
+        if (index == null) throw new IllegalStateException("conversation log index is disabled");
+        return index.query(filter, offset, limit);
+    }
+
+    /**
+     * 按索引项中的位置读取一条完整日志；文件已被清理时返回 null。
+     */
+    public JsonNode readRecord(ConversationLogIndex.Entry entry) throws IOException {
+        Path file = logDir.resolve(entry.file());
+        try (var raf = new RandomAccessFile(file.toFile(), "r")) {
+            byte[] data = new byte[entry.length()];
+            raf.seek(entry.offset());
+            raf.readFully(data);
+            return mapper.readTree(data);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
     }
 
-    public void save(Map<String, Object> logData) {
-        String ts = FILE_TS.format(Instant.now());
-        String openId = String.valueOf(logData.getOrDefault("openId", "unknown"));
-        String suffix = openId.length() > 6 ? openId.substring(openId.length() - 6) : openId;
-        String filename = ts + "_" + suffix + ".json";
+    private void writeLoop() {
+        if (index != null) initIndex();
+        var batch = new ArrayList<ConversationRecord>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                if (queue.drainTo(batch, MAX_BATCH) > 0) {
+                    if (ndjson) {
+                        appendSegment(batch);
+                    } else {
+                        writeFiles(batch);
+                    }
+                } else {
+                    if (ndjson) rollIfExpired();
+                    awaitRecords();
+                }
+            } catch (Exception e) {
+                log.error("[conv-log] 写入对话日志失败，丢弃 {} 条", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+        closeSegment();
+        if (index != null) index.close();
+    }
 
+    /**
+     * 队列为空时挂起，最长 1 秒（用于按时间滚动分段和检查停机），有新记录时由生产者唤醒。
+     */
+    private void awaitRecords() {
+        writerParked = true;
         try {
-            Path file = logDir.resolve(filename);
-            mapper.writeValue(file.toFile(), logData);
-            log.debug("[conv-log] 对话日志已保存: {}", file);
-        } catch (IOException e) {
-            log.error("[conv-log] 写入对话日志失败: {}", filename, e);
+            if (queue.isEmpty() && running) {
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        } finally {
+            writerParked = false;
         }
+    }
+
+    // ---- files 模式 ----
 
-        cleanup();
+    private void writeFiles(List<ConversationRecord> batch) {
+        var indexed = new ArrayList<ConversationLogIndex.Entry>(batch.size());
+        for (ConversationRecord record : batch) {
+            String ts = FILE_TS.format(Instant.ofEpochMilli(record.timestamp()));
+            String openId = record.openId() != null ? record.openId() : "unknown";
+            String suffix = openId.length() > 6 ? openId.substring(openId.length() - 6) : openId;
+            String filename = ts + "_" + suffix + ".json";
+
+            try {
+                Path file = logDir.resolve(filename);
+                // 同一毫秒内同一用户的多条记录加序号，不覆盖已有文件
+                for (int seq = 1; Files.exists(file); seq++) {
+                    filename = ts + "_" + suffix + "_" + seq + ".json";
+                    file = logDir.resolve(filename);
+                }
+                byte[] json = mapper.writeValueAsBytes(record.toMap());
+                Files.write(file, json, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                files.addLast(file);
+                indexed.add(indexEntry(record, filename, 0, json.length));
+                log.debug("[conv-log] 对话日志已保存: {}", file);
+            } catch (IOException e) {
+                log.error("[conv-log] 写入对话日志失败: {}", filename, e);
+            }
+        }
+        appendIndex(indexed);
+        cleanupFiles();
     }
 
-    private void cleanup() {
+    /**
+     * 已知文件按时间顺序保存在内存中，清理时无需再列目录。
+     */
+    private void cleanupFiles() {
         if (maxFiles <= 0) return;
-        try (Stream<Path> files = Files.list(logDir)) {
-            List<Path> sorted = files
-                    .filter(p -> p.toString().endsWith(".json"))
-                    .sorted()
-                    .toList();
+        while (files.size() > maxFiles) {
+            deleteLogFile(files.pollFirst());
+        }
+    }
+
+    // ---- ndjson 模式 ----
+
+    private void appendSegment(List<ConversationRecord> batch) throws IOException {
+        rollIfExpired();
+        var indexed = new ArrayList<ConversationLogIndex.Entry>(batch.size());
+        for (ConversationRecord record : batch) {
+            if (segment == null || segmentSize >= segmentBytes) {
+                // 切换分段前先写入已落盘记录的索引，保证索引项不指向已被清理的分段
+                if (segment != null) {
+                    segment.flush();
+                    appendIndex(indexed);
+                    indexed.clear();
+                }
+                openSegment();
+            }
+            byte[] line = mapper.writeValueAsBytes(record.toMap());
+            segment.write(line);
+            segment.write('\n');
+            indexed.add(indexEntry(record, files.peekLast().getFileName().toString(), segmentSize, line.length));
+            segmentSize += line.length + 1;
+        }
+        segment.flush();
+        appendIndex(indexed);
+    }
+
+    private void rollIfExpired() {
+        if (segment != null && rollIntervalMs > 0
+                && System.currentTimeMillis() - segmentOpenedAt >= rollIntervalMs) {
+            closeSegment();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        closeSegment();
+        String base = SEGMENT_PREFIX + FILE_TS.format(Instant.now());
+        Path file = logDir.resolve(base + SEGMENT_SUFFIX);
+        // 同一毫秒内连续滚动时加序号，避免追加到刚写满的分段
+        for (int seq = 1; Files.exists(file); seq++) {
+            file = logDir.resolve(base + "_" + seq + SEGMENT_SUFFIX);
+        }
+        segment = new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE_NEW), 64 * 1024);
+        segmentSize = 0;
+        segmentOpenedAt = System.currentTimeMillis();
+        files.addLast(file);
+        cleanupSegments();
+        log.debug("[conv-log] 新日志分段: {}", file.getFileName());
+    }
+
+    private void closeSegment() {
+        if (segment == null) return;
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("[conv-log] 关闭日志分段失败", e);
+        }
+        segment = null;
+    }
+
+    /**
+     * 按份数和保留时长清理已关闭的分段，当前写入的分段不删除。
+     */
+    private void cleanupSegments() {
+        long now = System.currentTimeMillis();
+        while (files.size() > 1) {
+            Path oldest = files.peekFirst();
+            boolean overCount = maxSegments > 0 && files.size() > maxSegments;
+            boolean expired = maxAgeMs > 0 && now - lastModified(oldest) > maxAgeMs;
+            if (!overCount && !expired) break;
+            deleteLogFile(files.pollFirst());
+        }
+    }
+
+    // ---- 索引 ----
+
+    private static ConversationLogIndex.Entry indexEntry(ConversationRecord r, String file, long offset, int length) {
+        return new ConversationLogIndex.Entry(r.timestamp(), r.openId(), r.threadId(), r.httpStatus(),
+                r.ttftMs(), r.totalMs(), r.provider(), file, offset, length);
+    }
+
+    private void appendIndex(List<ConversationLogIndex.Entry> entries) {
+        if (index == null) return;
+        try {
+            index.append(entries);
+        } catch (IOException e) {
+            log.warn("[conv-log] 写入日志索引失败", e);
+        }
+    }
+
+    /**
+     * 加载索引文件，并为没有索引的已有日志（如升级前写入的）补建索引。
+     */
+    private void initIndex() {
+        try {
+            var names = new HashSet<String>();
+            for (Path file : files) {
+                names.add(file.getFileName().toString());
+            }
+            var indexed = index.load(names);
+            int rebuilt = 0;
+            for (Path file : files) {
+                if (!indexed.contains(file.getFileName().toString())) {
+                    rebuilt += rebuildIndex(file);
+                }
+            }
+            if (rebuilt > 0) {
+                index.sortByTime();
+                log.info("[conv-log] 已为既有日志补建索引: {} 条", rebuilt);
+            }
+        } catch (Exception e) {
+            log.error("[conv-log] 加载日志索引失败", e);
+        }
+    }
 
-            if (sorted.size() > maxFiles) {
-                for (int i = 0; i < sorted.size() - maxFiles; i++) {
-                    Files.deleteIfExists(sorted.get(i));
-                    log.debug("[conv-log] 清理旧日志: {}", sorted.get(i).getFileName());
+    private int rebuildIndex(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        byte[] data = Files.readAllBytes(file);
+        var entries = new ArrayList<ConversationLogIndex.Entry>();
+        if (ndjson) {
+            int start = 0;
+            for (int i = 0; i <= data.length; i++) {
+                if (i < data.length && data[i] != '\n') continue;
+                if (i > start) {
+                    addRebuiltEntry(entries, data, name, start, i - start);
                 }
+                start = i + 1;
             }
+        } else {
+            addRebuiltEntry(entries, data, name, 0, data.length);
+        }
+        appendIndex(entries);
+        return entries.size();
+    }
+
+    private void addRebuiltEntry(List<ConversationLogIndex.Entry> entries, byte[] data,
+                                 String file, int offset, int length) {
+        try {
+            JsonNode node = mapper.readTree(data, offset, length);
+            entries.add(new ConversationLogIndex.Entry(
+                    Instant.parse(node.path("timestamp").asText()).toEpochMilli(),
+                    textOrNull(node.path("openId")),
+                    textOrNull(node.path("threadId")),
+                    node.path("response").path("httpStatus").asInt(-1),
+                    node.path("metrics").path("ttftMs").asLong(-1),
+                    node.path("metrics").path("totalMs").asLong(-1),
+                    textOrNull(node.path("config").path("provider")),
+                    file, offset, length));
+        } catch (Exception e) {
+            log.debug("[conv-log] 跳过无法解析的日志: {}@{}", file, offset);
+        }
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node.isTextual() ? node.asText() : null;
+    }
+
+    // ---- 通用 ----
+
+    private void loadExistingFiles() throws IOException {
+        String suffix = ndjson ? SEGMENT_SUFFIX : ".json";
+        try (Stream<Path> list = Files.list(logDir)) {
+            list.filter(p -> p.getFileName().toString().endsWith(suffix))
+                    .sorted()
+                    .forEach(files::addLast);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
         } catch (IOException e) {
-            log.warn("[conv-log] 清理旧日志失败", e);
+            return 0;
+        }
+    }
+
+    private void deleteLogFile(Path file) {
+        if (index != null) index.removeFile(file.getFileName().toString());
+        try {
+            Files.deleteIfExists(file);
+            log.debug("[conv-log] 清理旧日志: {}", file.getFileName());
+        } catch (IOException e) {
+            log.warn("[conv-log] 清理旧日志失败: {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 不中断写线程（中断会关闭正在写入的文件通道），等待其排空队列后自行退出
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
@@ -0,0 +1,106 @@
+package io.github.feishu.bridge.service;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次对话的日志记录。回复线程只创建这个不可变对象，组装 Map 和序列化都在日志写线程中完成（{@link #toMap()}）。
+ * history 直接引用本轮发送给 LLM 的历史列表，创建后不再修改。
+ *
+ * @param timestamp       记录时间（毫秒）
+ * @param historySource   none | thread | reply_chain
+ * @param error           失败原因，成功时为 null
+ * @param aiReply         完整回复，失败时为 null
+ * @param ttftMs          首 token 延迟，无内容时为 -1
+ */
+public record ConversationRecord(
+        long timestamp,
+        String openId,
+        String userMessageId,
+        String parentId,
+        String threadId,
+        String userQuery,
+        String provider,
+        boolean replyMode,
+        boolean memoryEnabled,
+        int memoryMaxMessages,
+        String historySource,
+        List<Map<String, String>> history,
+        String requestUrl,
+        int httpStatus,
+        String error,
+        String aiReply,
+        String replyMessageId,
+        long totalMs,
+        long ttftMs,
+        int contentChunks,
+        int contentChars,
+        int reasoningChunks,
+        int reasoningChars,
+        int sseLines,
+        double overallSpeed,
+        double contentSpeed) {
+
+    public boolean success() {
+        return error == null && aiReply != null;
+    }
+
+    /**
+     * 转换为日志文件中的 JSON 结构
+     */
+    public Map<String, Object> toMap() {
+        var data = new LinkedHashMap<String, Object>();
+        data.put("timestamp", Instant.ofEpochMilli(timestamp).toString());
+        data.put("openId", openId);
+        data.put("userMessageId", userMessageId);
+        data.put("parentId", parentId);
+        data.put("threadId", threadId);
+        data.put("userQuery", userQuery);
+
+        var config = new LinkedHashMap<String, Object>();
+        config.put("provider", provider);
+        config.put("replyMode", replyMode);
+        config.put("memoryEnabled", memoryEnabled);
+        config.put("memoryMaxMessages", memoryMaxMessages == Integer.MAX_VALUE ? "unlimited" : memoryMaxMessages);
+        data.put("config", config);
+
+        var historyMap = new LinkedHashMap<String, Object>();
+        historyMap.put("source", historySource);
+        historyMap.put("sourceId", "thread".equals(historySource) ? threadId
+                : "reply_chain".equals(historySource) ? parentId : null);
+        historyMap.put("count", history.size());
+        historyMap.put("messages", history);
+        data.put("history", historyMap);
+
+        var requestMap = new LinkedHashMap<String, Object>();
+        requestMap.put("url", requestUrl);
+        data.put("request", requestMap);
+
+        var responseMap = new LinkedHashMap<String, Object>();
+        responseMap.put("httpStatus", httpStatus);
+        responseMap.put("aiReply", aiReply);
+        responseMap.put("error", error);
+        data.put("response", responseMap);
+
+        var metrics = new LinkedHashMap<String, Object>();
+        metrics.put("totalMs", totalMs);
+        metrics.put("ttftMs", ttftMs);
+        metrics.put("contentChunks", contentChunks);
+        metrics.put("contentChars", contentChars);
+        metrics.put("reasoningChunks", reasoningChunks);
+        metrics.put("reasoningChars", reasoningChars);
+        metrics.put("sseLines", sseLines);
+        metrics.put("overallSpeed", String.format("%.1f 字/秒", overallSpeed));
+        metrics.put("contentSpeed", String.format("%.1f 字/秒", contentSpeed));
+        data.put("metrics", metrics);
+
+        var resultMap = new LinkedHashMap<String, Object>();
+        resultMap.put("replyMessageId", replyMessageId);
+        resultMap.put("mode", replyMode ? "reply" : "send");
+        resultMap.put("success", success());
+        data.put("result", resultMap);
+        return data;
+    }
+}
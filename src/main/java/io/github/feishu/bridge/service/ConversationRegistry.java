@@ -0,0 +1,104 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 按会话、用户（及话题）跟踪进行中的流式回复。同一用户在同一会话中上一条回复结束前又发来消息时，按策略处理：
+ * <ul>
+ *   <li>parallel（默认）：互不影响，各自跑完；</li>
+ *   <li>cancel：取消上一条，关闭其上游响应流并停止卡片更新；</li>
+ *   <li>queue：等上一条结束后再开始。</li>
+ * </ul>
+ * 同一用户在不同单聊 / 群中的提问是不同的会话，互不取代。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "streaming.enabled", havingValue = "true")
+public class ConversationRegistry {
+
+    public enum Policy {CANCEL, QUEUE, PARALLEL}
+
+    /**
+     * 一次进行中的回复。cancel 可能来自其他线程，会话线程通过 {@link #isCancelled()} 感知。
+     */
+    public static final class Handle {
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private volatile boolean cancelled;
+        private volatile Closeable upstream;
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 登记上游响应流；若此前已被取消则立即关闭。
+         */
+        public void attachUpstream(Closeable stream) {
+            upstream = stream;
+            if (cancelled) closeQuietly(stream);
+        }
+
+        void cancel() {
+            cancelled = true;
+            Closeable stream = upstream;
+            if (stream != null) closeQuietly(stream);
+        }
+
+        private static void closeQuietly(Closeable c) {
+            try {
+                c.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private final Policy policy;
+    private final ConcurrentHashMap<String, Handle> active = new ConcurrentHashMap<>();
+
+    public ConversationRegistry(StreamingProperties props) {
+        this.policy = Policy.valueOf(props.getConcurrency().getSupersedePolicy().trim().toUpperCase());
+        log.info("[streaming] 同一用户连续提问的处理策略: {}", policy.name().toLowerCase());
+    }
+
+    /**
+     * 登记一次新的回复；queue 策略下会阻塞到上一条结束。
+     *
+     * @param key 会话标识（会话 + 用户 + 话题）
+     */
+    public Handle begin(String key) throws InterruptedException {
+        var handle = new Handle();
+        if (policy == Policy.PARALLEL) return handle;
+
+        Handle previous = active.put(key, handle);
+        if (previous == null) return handle;
+        if (policy == Policy.CANCEL) {
+            log.info("[streaming] 收到新消息，取消上一条进行中的回复: key={}", key);
+            previous.cancel();
+        } else {
+            log.info("[streaming] 上一条回复尚未结束，排队等待: key={}", key);
+            try {
+                previous.finished.get();
+            } catch (ExecutionException ignored) {
+            }
+        }
+        return handle;
+    }
+
+    public void end(String key, Handle handle) {
+        active.remove(key, handle);
+        handle.finished.complete(null);
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.feishu.bridge.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.feishu.bridge.config.FeishuProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 飞书事件是至少一次投递，ack 慢时会用同一个 event_id 重推。
+ * 这里用容量和存活时间有界的 LRU 记住最近见过的 ID，重复事件不再转发、也不会再触发一次 LLM 调用。
+ */
+@Slf4j
+@Service
+public class EventDeduplicator {
+
+    private final boolean enabled;
+    private final Cache<String, Boolean> seen;
+    private final LongAdder duplicates = new LongAdder();
+
+    public EventDeduplicator(FeishuProperties props) {
+        var dedup = props.getDedup();
+        this.enabled = dedup.isEnabled();
+        this.seen = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, dedup.getMaxEntries()))
+                .expireAfterWrite(Duration.ofMinutes(Math.max(1, dedup.getTtlMinutes())))
+                .build();
+    }
+
+    /**
+     * 首次见到该 ID（或 ID 为空）时返回 true 并记住它，重复时返回 false。
+     */
+    public boolean firstSeen(String id) {
+        if (!enabled || id == null || id.isEmpty()) return true;
+        if (seen.asMap().putIfAbsent(id, Boolean.TRUE) == null) return true;
+        duplicates.increment();
+        return false;
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+}
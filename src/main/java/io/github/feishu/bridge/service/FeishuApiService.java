@@ -1,33 +1,52 @@
 package io.github.feishu.bridge.service;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.lark.oapi.Client;
 import com.lark.oapi.core.utils.Jsons;
+import com.lark.oapi.service.cardkit.v1.model.ContentCardElementReq;
+import com.lark.oapi.service.cardkit.v1.model.ContentCardElementReqBody;
+import com.lark.oapi.service.cardkit.v1.model.ContentCardElementResp;
+import com.lark.oapi.service.cardkit.v1.model.CreateCardReq;
+import com.lark.oapi.service.cardkit.v1.model.CreateCardReqBody;
+import com.lark.oapi.service.cardkit.v1.model.CreateCardResp;
+import com.lark.oapi.service.cardkit.v1.model.SettingsCardReq;
+import com.lark.oapi.service.cardkit.v1.model.SettingsCardReqBody;
+import com.lark.oapi.service.cardkit.v1.model.SettingsCardResp;
+import com.lark.oapi.service.cardkit.v1.model.UpdateCardReq;
+import com.lark.oapi.service.cardkit.v1.model.UpdateCardReqBody;
+import com.lark.oapi.service.cardkit.v1.model.UpdateCardResp;
 import com.lark.oapi.service.im.v1.model.*;
 import io.github.feishu.bridge.config.FeishuProperties;
+import io.github.feishu.bridge.config.HttpClients;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.StringReader;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FeishuApiService {
 
-    private static final String BASE_URL = "https://open.feishu.cn/open-apis";
+    /** token 无效 / token 已过期 */
+    private static final Set<Integer> TOKEN_EXPIRED_CODES = Set.of(99991661, 99991663);
 
     private final Client feishuClient;
+    private final TenantTokenManager tokenManager;
+    private final MessageCache messageCache;
+    private final ThreadMemoryStore threadMemoryStore;
+    private final HttpClients httpClients;
     private final FeishuProperties feishuProperties;
-    private final HttpClient httpClient;
 
     // ---- SDK 方法（内置 token 缓存，推荐使用）----
 
@@ -72,9 +91,23 @@ public class FeishuApiService {
     }
 
     /**
-     * PATCH 更新已发送的卡片消息（使用 SDK，自动管理 token）
+     * 发送一条卡片消息：replyToMessageId 非空时回复该消息，否则私信给 openId。
+     * 返回新消息的 messageId，失败返回 null。
      */
-    public void patchMessage(String messageId, String cardJson) throws Exception {
+    public String sendInteractive(String openId, String replyToMessageId, String content) throws Exception {
+        if (replyToMessageId != null) {
+            var resp = replyMessage(replyToMessageId, "interactive", content);
+            return resp.success() ? resp.getData().getMessageId() : null;
+        }
+        var resp = sendMessage(openId, "open_id", "interactive", content);
+        return resp.success() ? resp.getData().getMessageId() : null;
+    }
+
+    /**
+     * PATCH 更新已发送的卡片消息（使用 SDK，自动管理 token）。
+     * 返回原始响应，供调用方识别频控等错误码。
+     */
+    public PatchMessageResp patchMessage(String messageId, String cardJson) throws Exception {
         PatchMessageReq req = PatchMessageReq.newBuilder()
                 .messageId(messageId)
                 .patchMessageReqBody(PatchMessageReqBody.newBuilder()
@@ -86,19 +119,97 @@ public class FeishuApiService {
         if (!resp.success()) {
             log.warn("更新卡片失败: code={}, msg={}, messageId={}", resp.getCode(), resp.getMsg(), messageId);
         }
+        return resp;
+    }
+
+    // ---- CardKit 卡片实体 ----
+
+    /**
+     * 创建卡片实体（JSON 2.0 结构），返回原始响应，card_id 在 data 中。
+     */
+    public CreateCardResp createCard(String cardJson) throws Exception {
+        CreateCardReq req = CreateCardReq.newBuilder()
+                .createCardReqBody(CreateCardReqBody.newBuilder()
+                        .type("card_json")
+                        .data(cardJson)
+                        .build())
+                .build();
+
+        CreateCardResp resp = feishuClient.cardkit().v1().card().create(req);
+        if (!resp.success()) {
+            log.warn("创建卡片实体失败: code={}, msg={}", resp.getCode(), resp.getMsg());
+        }
+        return resp;
+    }
+
+    /**
+     * 流式更新卡片实体中某个文本组件的内容。content 为组件的完整文本，
+     * 新文本以旧文本为前缀时客户端只以打字机效果渲染新增部分。sequence 需在同一卡片内严格递增。
+     */
+    public ContentCardElementResp updateCardElementContent(String cardId, String elementId,
+                                                           String content, int sequence) throws Exception {
+        ContentCardElementReq req = ContentCardElementReq.newBuilder()
+                .cardId(cardId)
+                .elementId(elementId)
+                .contentCardElementReqBody(ContentCardElementReqBody.newBuilder()
+                        .content(content)
+                        .sequence(sequence)
+                        .build())
+                .build();
+
+        ContentCardElementResp resp = feishuClient.cardkit().v1().cardElement().content(req);
+        if (!resp.success()) {
+            log.warn("流式更新卡片组件失败: code={}, msg={}, cardId={}", resp.getCode(), resp.getMsg(), cardId);
+        }
+        return resp;
+    }
+
+    /**
+     * 全量更新卡片实体。
+     */
+    public UpdateCardResp updateCard(String cardId, String cardJson, int sequence) throws Exception {
+        UpdateCardReq req = UpdateCardReq.newBuilder()
+                .cardId(cardId)
+                .updateCardReqBody(UpdateCardReqBody.newBuilder()
+                        .card(com.lark.oapi.service.cardkit.v1.model.Card.newBuilder()
+                                .type("card_json")
+                                .data(cardJson)
+                                .build())
+                        .sequence(sequence)
+                        .build())
+                .build();
+
+        UpdateCardResp resp = feishuClient.cardkit().v1().card().update(req);
+        if (!resp.success()) {
+            log.warn("全量更新卡片实体失败: code={}, msg={}, cardId={}", resp.getCode(), resp.getMsg(), cardId);
+        }
+        return resp;
+    }
+
+    /**
+     * 更新卡片实体配置，如关闭流式模式。
+     */
+    public SettingsCardResp updateCardSettings(String cardId, String settingsJson, int sequence) throws Exception {
+        SettingsCardReq req = SettingsCardReq.newBuilder()
+                .cardId(cardId)
+                .settingsCardReqBody(SettingsCardReqBody.newBuilder()
+                        .settings(settingsJson)
+                        .sequence(sequence)
+                        .build())
+                .build();
+
+        SettingsCardResp resp = feishuClient.cardkit().v1().card().settings(req);
+        if (!resp.success()) {
+            log.warn("更新卡片实体配置失败: code={}, msg={}, cardId={}", resp.getCode(), resp.getMsg(), cardId);
+        }
+        return resp;
     }
 
     /**
      * 构建一张 Markdown 内容的简易卡片 JSON
      */
     public static String buildMarkdownCard(String content) {
-        return Jsons.DEFAULT.toJson(Map.of(
-                "config", Map.of("wide_screen_mode", true),
-                "elements", List.of(Map.of(
-                        "tag", "markdown",
-                        "content", content
-                ))
-        ));
+        return MarkdownCardJson.render(content);
     }
 
     /**
@@ -118,78 +229,109 @@ public class FeishuApiService {
     }
 
     /**
-     * 通过飞书 list messages API 获取话题（thread）内的历史消息，按时间正序排列。
+     * 获取话题（thread）内的历史消息，按时间正序排列，返回最近 maxMessages 条。
      * 每条包含 "role"（user/assistant）和 "content"（文本）。
+     * 已解码的历史保存在 {@link ThreadMemoryStore} 中，只解码和记录上次之后的新消息。
+     * 请求仍带 start_time，但话题容器不支持按时间过滤，以 {@link ThreadMemoryStore.ThreadHistory#append} 的游标为准。
      */
     public List<Map<String, String>> fetchThreadHistory(String threadId, int maxMessages) {
-        var history = new ArrayList<Map<String, String>>();
-        String pageToken = null;
-
-        outer:
-        while (history.size() < maxMessages) {
-            try {
-                var reqBuilder = ListMessageReq.newBuilder()
-                        .containerIdType("thread")
-                        .containerId(threadId)
-                        .sortType("ByCreateTimeAsc")
-                        .pageSize(Math.min(maxMessages - history.size(), 50));
-                if (pageToken != null) {
-                    reqBuilder.pageToken(pageToken);
-                }
+        ThreadMemoryStore.ThreadHistory history = threadMemoryStore.acquire(threadId);
+        history.lock().lock();
+        try {
+            String pageToken = null;
+            int fetched = 0;
+
+            while (true) {
+                try {
+                    var reqBuilder = ListMessageReq.newBuilder()
+                            .containerIdType("thread")
+                            .containerId(threadId)
+                            .sortType("ByCreateTimeAsc")
+                            .pageSize(50);
+                    if (history.lastCreateTime() > 0) {
+                        reqBuilder.startTime(String.valueOf(history.lastCreateTime() / 1000));
+                    }
+                    if (pageToken != null) {
+                        reqBuilder.pageToken(pageToken);
+                    }
 
-                ListMessageResp resp = feishuClient.im().v1().message().list(reqBuilder.build());
-                if (!resp.success() || resp.getData().getItems() == null) {
-                    log.warn("[memory] 获取话题历史失败: code={}, msg={}, threadId={}",
-                            resp.getCode(), resp.getMsg(), threadId);
-                    break;
-                }
+                    ListMessageResp resp = feishuClient.im().v1().message().list(reqBuilder.build());
+                    if (!resp.success() || resp.getData().getItems() == null) {
+                        log.warn("[memory] 获取话题历史失败: code={}, msg={}, threadId={}",
+                                resp.getCode(), resp.getMsg(), threadId);
+                        break;
+                    }
 
-                for (Message msg : resp.getData().getItems()) {
-                    if (history.size() >= maxMessages) break outer;
-                    String role = resolveRole(msg);
-                    String text = extractTextContent(msg);
-                    if (text != null && !text.isBlank()) {
-                        history.add(Map.of("role", role, "content", text));
+                    for (Message msg : resp.getData().getItems()) {
+                        String id = msg.getMessageId();
+                        long createTime = parseCreateTime(msg);
+                        if (id == null || history.isProcessed(id, createTime)) continue;
+                        MessageCache.CachedMessage cached = messageCache.get(id);
+                        String role = cached != null ? cached.role() : resolveRole(msg);
+                        String text = cached != null ? cached.content() : extractTextContent(msg);
+                        history.append(id, role, text, createTime);
+                        fetched++;
                     }
-                }
 
-                if (!Boolean.TRUE.equals(resp.getData().getHasMore())) break;
-                pageToken = resp.getData().getPageToken();
-            } catch (Exception e) {
-                log.warn("[memory] 获取话题历史异常: threadId={}", threadId, e);
-                break;
+                    if (!Boolean.TRUE.equals(resp.getData().getHasMore())) break;
+                    pageToken = resp.getData().getPageToken();
+                } catch (Exception e) {
+                    log.warn("[memory] 获取话题历史异常: threadId={}", threadId, e);
+                    break;
+                }
             }
+
+            threadMemoryStore.save(threadId, history);
+            log.debug("[memory] 话题历史增量拉取: threadId={}, newMessages={}", threadId, fetched);
+            return history.tail(maxMessages);
+        } finally {
+            history.lock().unlock();
         }
+    }
 
-        return history;
+    private static long parseCreateTime(Message msg) {
+        try {
+            return msg.getCreateTime() != null ? Long.parseLong(msg.getCreateTime()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     /**
      * 沿回复链（parent_id）向上遍历，返回按时间正序排列的历史消息。
      * 每条包含 "role"（user/assistant）和 "content"（文本）。
+     * 优先从 {@link MessageCache} 读取，只有缓存缺失的消息才调用 API，取回后写入缓存。
      */
     public List<Map<String, String>> fetchReplyChainHistory(String startMessageId, int maxMessages) {
         var history = new ArrayList<Map<String, String>>();
         String currentId = startMessageId;
+        int apiCalls = 0;
 
         while (currentId != null && history.size() < maxMessages) {
             try {
-                Message msg = getMessage(currentId);
-                if (msg == null) break;
+                MessageCache.CachedMessage cached = messageCache.get(currentId);
+                if (cached == null) {
+                    Message msg = getMessage(currentId);
+                    apiCalls++;
+                    if (msg == null) break;
+                    cached = new MessageCache.CachedMessage(
+                            resolveRole(msg), extractTextContent(msg), msg.getParentId());
+                    messageCache.put(currentId, cached);
+                }
 
-                String role = resolveRole(msg);
-                String text = extractTextContent(msg);
+                String text = cached.content();
                 if (text != null && !text.isBlank()) {
-                    history.addFirst(Map.of("role", role, "content", text));
+                    history.addFirst(Map.of("role", cached.role(), "content", text));
                 }
 
-                currentId = msg.getParentId();
+                currentId = cached.parentId();
             } catch (Exception e) {
                 log.warn("[memory] 获取回复链消息失败: messageId={}", currentId, e);
                 break;
             }
         }
 
+        log.debug("[memory] 回复链回溯完成: size={}, apiCalls={}", history.size(), apiCalls);
         return history;
     }
 
@@ -212,7 +354,7 @@ public class FeishuApiService {
      * 卡片的 elements 可能是一维 [{tag,content}] 或二维 [[{tag,text}]]，两种都兼容。
      */
     @SuppressWarnings("unchecked")
-    private String extractTextContent(Message msg) {
+    static String extractTextContent(Message msg) {
         if (msg.getBody() == null || msg.getBody().getContent() == null) return null;
         String content = msg.getBody().getContent();
         String msgType = msg.getMsgType();
@@ -246,7 +388,7 @@ public class FeishuApiService {
         return null;
     }
 
-    private void appendElementText(Map<?, ?> elem, StringBuilder sb) {
+    private static void appendElementText(Map<?, ?> elem, StringBuilder sb) {
         String tag = (String) elem.get("tag");
         if ("markdown".equals(tag)) {
             Object v = elem.get("content");
@@ -259,49 +401,61 @@ public class FeishuApiService {
 
     // ---- 通用代理请求（给 ProxyController 用）----
 
-    @SuppressWarnings("unchecked")
     public String obtainTenantAccessToken() throws Exception {
-        var tokenReq = com.lark.oapi.service.auth.v3.model.InternalTenantAccessTokenReq.newBuilder()
-                .internalTenantAccessTokenReqBody(
-                        com.lark.oapi.service.auth.v3.model.InternalTenantAccessTokenReqBody.newBuilder()
-                                .appId(feishuProperties.getAppId())
-                                .appSecret(feishuProperties.getAppSecret())
-                                .build())
-                .build();
-
-        var resp = feishuClient.auth().v3().tenantAccessToken().internal(tokenReq);
-        if (!resp.success()) {
-            throw new RuntimeException("获取 tenant_access_token 失败: code=" + resp.getCode() + ", msg=" + resp.getMsg());
-        }
-
-        String rawBody = new String(resp.getRawResponse().getBody(), StandardCharsets.UTF_8);
-        Map<String, Object> parsed = Jsons.DEFAULT.fromJson(rawBody, Map.class);
-        return (String) parsed.get("tenant_access_token");
+        return tokenManager.getToken().value();
     }
 
     /**
-     * 通用代理请求（给 ProxyController 转发用，需要手动获取 token）
+     * 通用代理请求（给 ProxyController 转发用，token 由 {@link TenantTokenManager} 缓存）。
+     * 飞书返回 token 失效错误码时作废缓存并重试一次。
      */
     public String proxyRequest(String method, String fullPath, String jsonBody) throws Exception {
-        String url = BASE_URL + fullPath;
         String token = obtainTenantAccessToken();
+        HttpResponse<String> resp = httpClients.feishu().send(
+                buildProxyRequest(method, fullPath, jsonBody, token), HttpResponse.BodyHandlers.ofString());
+
+        if (isTokenExpired(resp.body())) {
+            log.info("代理请求 token 失效，刷新后重试: {} {}", method, fullPath);
+            tokenManager.invalidate(token);
+            token = obtainTenantAccessToken();
+            resp = httpClients.feishu().send(
+                    buildProxyRequest(method, fullPath, jsonBody, token), HttpResponse.BodyHandlers.ofString());
+        }
+        return resp.body();
+    }
 
+    private HttpRequest buildProxyRequest(String method, String fullPath, String jsonBody, String token) {
         HttpRequest.Builder reqBuilder = HttpRequest.newBuilder()
-                .uri(URI.create(url))
+                .uri(URI.create(feishuProperties.getBaseUrl() + "/open-apis" + fullPath))
                 .header("Authorization", "Bearer " + token)
                 .header("Content-Type", "application/json")
                 .timeout(Duration.ofSeconds(30));
 
         String bodyContent = jsonBody != null ? jsonBody : "";
-        HttpRequest req = switch (method.toUpperCase()) {
+        return switch (method.toUpperCase()) {
             case "PUT" -> reqBuilder.PUT(HttpRequest.BodyPublishers.ofString(bodyContent)).build();
             case "PATCH" -> reqBuilder.method("PATCH", HttpRequest.BodyPublishers.ofString(bodyContent)).build();
             case "DELETE" -> reqBuilder.method("DELETE", HttpRequest.BodyPublishers.noBody()).build();
             case "GET" -> reqBuilder.GET().build();
             default -> reqBuilder.POST(HttpRequest.BodyPublishers.ofString(bodyContent)).build();
         };
+    }
 
-        HttpResponse<String> resp = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-        return resp.body();
+    /**
+     * 只读取响应顶层的 code 字段判断 token 是否失效，不解析整个响应体。
+     */
+    private static boolean isTokenExpired(String body) {
+        if (body == null || !body.contains("9999166")) return false;
+        try (JsonReader reader = new JsonReader(new StringReader(body))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("code".equals(reader.nextName()) && reader.peek() == JsonToken.NUMBER) {
+                    return TOKEN_EXPIRED_CODES.contains(reader.nextInt());
+                }
+                reader.skipValue();
+            }
+        } catch (Exception ignored) {
+        }
+        return false;
     }
 }
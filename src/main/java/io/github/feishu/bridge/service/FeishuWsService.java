@@ -1,5 +1,8 @@
 package io.github.feishu.bridge.service;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.lark.oapi.core.request.EventReq;
 import com.lark.oapi.core.utils.Jsons;
 import com.lark.oapi.event.CustomEventHandler;
@@ -27,6 +30,8 @@ public class FeishuWsService implements SmartLifecycle {
 
     private final FeishuProperties feishuProperties;
     private final WebhookForwardService webhookForwardService;
+    private final MessageCache messageCache;
+    private final EventDeduplicator deduplicator;
 
     @Autowired(required = false)
     private StreamingReplyService streamingReplyService;
@@ -40,30 +45,15 @@ public class FeishuWsService implements SmartLifecycle {
             log.warn("feishu.app-id 未配置，跳过 WebSocket 长连接");
             return;
         }
+        if (!feishuProperties.getWs().isEnabled()) {
+            log.warn("feishu.ws.enabled=false，跳过 WebSocket 长连接");
+            return;
+        }
 
         CustomEventHandler catchAllHandler = new CustomEventHandler() {
             @Override
-            @SuppressWarnings("unchecked")
             public void handle(EventReq event) throws Exception {
-                String eventData = new String(event.getBody(), StandardCharsets.UTF_8);
-
-                String eventType = "unknown";
-                try {
-                    Map<String, Object> parsed = Jsons.DEFAULT.fromJson(eventData, Map.class);
-                    Map<String, Object> header = (Map<String, Object>) parsed.get("header");
-                    if (header != null && header.get("event_type") != null) {
-                        eventType = (String) header.get("event_type");
-                    }
-                } catch (Exception ignored) {
-                }
-
-                log.info("收到事件: type={}", eventType);
-                Object payload = parseJsonSafely(eventData);
-                webhookForwardService.forwardEvent(eventType, payload);
-
-                if ("im.message.receive_v1".equals(eventType) && streamingReplyService != null) {
-                    tryStreamingReply(eventData);
-                }
+                handleEvent(new String(event.getBody(), StandardCharsets.UTF_8));
             }
         };
 
@@ -71,11 +61,14 @@ public class FeishuWsService implements SmartLifecycle {
                 .onP2CardActionTrigger(new P2CardActionTriggerHandler() {
                     @Override
                     public P2CardActionTriggerResponse handle(P2CardActionTrigger event) throws Exception {
-                        String eventJson = Jsons.DEFAULT.toJson(event.getEvent());
-                        log.info("收到卡片回调: {}", eventJson);
-
-                        Object payload = parseJsonSafely(eventJson);
-                        webhookForwardService.forwardCardAction(payload);
+                        String eventId = event.getHeader() != null ? event.getHeader().getEventId() : null;
+                        if (!deduplicator.firstSeen(eventId != null ? "event:" + eventId : null)) {
+                            log.info("收到重复卡片回调，跳过: eventId={}", eventId);
+                        } else {
+                            String eventJson = Jsons.DEFAULT.toJson(event.getEvent());
+                            log.info("收到卡片回调: {}", eventJson);
+                            webhookForwardService.forwardCardAction(eventJson);
+                        }
 
                         P2CardActionTriggerResponse resp = new P2CardActionTriggerResponse();
                         CallBackToast toast = new CallBackToast();
@@ -99,6 +92,34 @@ public class FeishuWsService implements SmartLifecycle {
         log.info("飞书 WebSocket 长连接已启动");
     }
 
+    /**
+     * 处理一条原始事件（卡片回调除外）：去重、转发 webhook，消息事件触发流式回复。
+     * 除长连接外，压测等本地驱动也通过此入口注入事件。
+     */
+    public void handleEvent(String eventData) {
+        // 原始事件只解析一次：转发直接使用原文，流式回复复用解析出的 JSON 树
+        JsonObject root = parseObjectSafely(eventData);
+
+        String eventType = "unknown";
+        JsonObject header = root != null ? getObject(root, "header") : null;
+        if (header != null && getString(header, "event_type") != null) {
+            eventType = getString(header, "event_type");
+        }
+
+        String eventId = header != null ? getString(header, "event_id") : null;
+        if (!deduplicator.firstSeen(eventId != null ? "event:" + eventId : null)) {
+            log.info("收到重复事件，跳过: type={}, eventId={}", eventType, eventId);
+            return;
+        }
+
+        log.info("收到事件: type={}", eventType);
+        webhookForwardService.forwardEvent(eventType, root != null ? eventData : Jsons.DEFAULT.toJson(eventData));
+
+        if ("im.message.receive_v1".equals(eventType) && streamingReplyService != null && root != null) {
+            tryStreamingReply(root);
+        }
+    }
+
     /**
      * SDK 的 EventDispatcher 不支持通配事件处理器，通过反射将内部的事件处理器 Map
      * 替换为一个带默认兜底的 Map，使任何未显式注册的事件类型都能被 catchAllHandler 捕获并转发。
@@ -140,46 +161,65 @@ public class FeishuWsService implements SmartLifecycle {
         return Integer.MAX_VALUE;
     }
 
-    @SuppressWarnings("unchecked")
-    private void tryStreamingReply(String eventData) {
+    private void tryStreamingReply(JsonObject root) {
         try {
-            Map<String, Object> parsed = Jsons.DEFAULT.fromJson(eventData, Map.class);
-            Map<String, Object> event = (Map<String, Object>) parsed.get("event");
+            JsonObject event = getObject(root, "event");
             if (event == null) return;
 
-            Map<String, Object> sender = (Map<String, Object>) event.get("sender");
-            Map<String, Object> message = (Map<String, Object>) event.get("message");
+            JsonObject sender = getObject(event, "sender");
+            JsonObject message = getObject(event, "message");
             if (sender == null || message == null) return;
 
-            Map<String, Object> senderId = (Map<String, Object>) sender.get("sender_id");
+            JsonObject senderId = getObject(sender, "sender_id");
             if (senderId == null) return;
-            String openId = (String) senderId.get("open_id");
+            String openId = getString(senderId, "open_id");
 
-            String msgType = (String) message.get("message_type");
+            String msgType = getString(message, "message_type");
             if (!"text".equals(msgType)) return;
 
-            String messageId = (String) message.get("message_id");
-            String parentId = (String) message.get("parent_id");
-            String threadId = (String) message.get("thread_id");
+            String messageId = getString(message, "message_id");
+            // 同一条消息可能以不同 event_id 重推，按 message_id 再防一次重复回复
+            if (!deduplicator.firstSeen(messageId != null ? "msg:" + messageId : null)) {
+                log.info("消息已处理过，跳过流式回复: messageId={}", messageId);
+                return;
+            }
+            String parentId = getString(message, "parent_id");
+            String threadId = getString(message, "thread_id");
+            String chatId = getString(message, "chat_id");
+
+            // content 是嵌套的 JSON 字符串，只解析这一小段
+            String contentJson = getString(message, "content");
+            JsonObject content = contentJson != null ? parseObjectSafely(contentJson) : null;
+            String text = content != null ? getString(content, "text") : null;
 
-            String contentJson = (String) message.get("content");
-            Map<String, Object> content = Jsons.DEFAULT.fromJson(contentJson, Map.class);
-            String text = (String) content.get("text");
+            if (messageId != null) {
+                messageCache.put(messageId, new MessageCache.CachedMessage("user", text, parentId));
+            }
 
             if (openId != null && text != null && !text.isBlank()) {
-                streamingReplyService.handleMessage(openId, text, messageId, parentId, threadId);
+                streamingReplyService.handleMessage(openId, chatId, text, messageId, parentId, threadId);
             }
         } catch (Exception e) {
             log.warn("解析消息事件失败，跳过流式回复", e);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Object parseJsonSafely(String json) {
+    private static JsonObject parseObjectSafely(String json) {
         try {
-            return Jsons.DEFAULT.fromJson(json, Map.class);
+            JsonElement element = JsonParser.parseString(json);
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
         } catch (Exception e) {
-            return json;
+            return null;
         }
     }
+
+    private static JsonObject getObject(JsonObject obj, String key) {
+        JsonElement e = obj.get(key);
+        return e != null && e.isJsonObject() ? e.getAsJsonObject() : null;
+    }
+
+    private static String getString(JsonObject obj, String key) {
+        JsonElement e = obj.get(key);
+        return e != null && e.isJsonPrimitive() ? e.getAsString() : null;
+    }
 }
@@ -0,0 +1,114 @@
+package io.github.feishu.bridge.service;
+
+import java.util.Set;
+
+/**
+ * 基于特征哈希的本地文本向量，纯 CPU、无模型文件，用于判断两个问题是否只是换了说法：
+ * <ul>
+ *   <li>中文按单字和相邻两字（bigram）取特征，英文和数字按单词及其字符三元组取特征（容忍词形变化和拼写差异）；</li>
+ *   <li>"怎么""如何""how""do" 等泛问和功能词（及包含它们的 bigram）不计入，"how do I reset my password" 与 "password reset" 得到相同的特征；</li>
+ *   <li>what / why / when / where / who / which 决定问的是什么，单独作为高权重特征，"when is the deadline" 与 "what is the deadline" 不会被视为同一问题；</li>
+ *   <li>特征哈希到固定维度并带符号，向量做 L2 归一化，点积即余弦相似度。</li>
+ * </ul>
+ * 输入应为 {@link ResponseCache#normalize} 规范化后的文本。
+ */
+final class HashingEmbedder {
+
+    static final int DIMENSIONS = 256;
+
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float TRIGRAM_WEIGHT = 0.4f;
+    private static final float CJK_UNIGRAM_WEIGHT = 0.5f;
+    private static final float CJK_BIGRAM_WEIGHT = 1.0f;
+    private static final float WH_WORD_WEIGHT = 1.5f;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "the", "i", "me", "my", "we", "our", "you", "your", "it", "is", "are", "was", "be",
+            "do", "does", "did", "can", "could", "should", "would", "will", "how", "to", "of", "in", "on",
+            "for", "with", "and", "or", "please", "pls");
+    /** 只取单词特征、不取字符三元组：几个词开头都是 "wh"，三元组会抬高它们之间的相似度 */
+    private static final Set<String> WH_WORDS = Set.of("what", "why", "when", "where", "who", "which");
+    /** 中文疑问和功能字，不计入单字特征，包含它们的 bigram 也不计入 */
+    private static final String CJK_STOP_CHARS = "的了吗呢吧啊呀么我你是请问怎如何该要";
+    private static final Set<String> STOP_BIGRAMS = Set.of("什么", "为什", "可以", "一下");
+
+    private HashingEmbedder() {
+    }
+
+    /**
+     * @return 长度为 {@link #DIMENSIONS} 的单位向量；没有任何有效特征时返回 null
+     */
+    static float[] embed(String text) {
+        float[] v = new float[DIMENSIONS];
+        int features = 0;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                if (CJK_STOP_CHARS.indexOf(c) < 0) {
+                    add(v, c, CJK_UNIGRAM_WEIGHT);
+                    features++;
+                }
+                if (i + 1 < n && isCjk(text.charAt(i + 1))
+                        && CJK_STOP_CHARS.indexOf(c) < 0 && CJK_STOP_CHARS.indexOf(text.charAt(i + 1)) < 0) {
+                    String bigram = text.substring(i, i + 2);
+                    if (!STOP_BIGRAMS.contains(bigram)) {
+                        add(v, bigram.hashCode() * 31 + 2, CJK_BIGRAM_WEIGHT);
+                        features++;
+                    }
+                }
+                i++;
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < n && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) i++;
+                String word = text.substring(start, i);
+                if (STOP_WORDS.contains(word)) continue;
+                if (WH_WORDS.contains(word)) {
+                    add(v, word.hashCode() * 31 + 1, WH_WORD_WEIGHT);
+                    features++;
+                    continue;
+                }
+                add(v, word.hashCode() * 31 + 1, WORD_WEIGHT);
+                features++;
+                if (word.length() > 3) {
+                    String padded = "^" + word + "$";
+                    for (int j = 0; j + 3 <= padded.length(); j++) {
+                        add(v, padded.substring(j, j + 3).hashCode() * 31 + 3, TRIGRAM_WEIGHT);
+                    }
+                }
+            } else {
+                i++;
+            }
+        }
+        if (features == 0) return null;
+
+        double norm = 0;
+        for (float x : v) norm += x * x;
+        if (norm == 0) return null;
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int d = 0; d < DIMENSIONS; d++) v[d] *= scale;
+        return v;
+    }
+
+    private static void add(float[] v, int feature, float weight) {
+        int h = mix(feature);
+        v[h & (DIMENSIONS - 1)] += (h & 0x80000000) == 0 ? weight : -weight;
+    }
+
+    /**
+     * murmur3 的 fmix32，打散 String.hashCode 的低位
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static boolean isCjk(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+}
@@ -0,0 +1,171 @@
+package io.github.feishu.bridge.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.feishu.bridge.config.StreamingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按估算 token 数裁剪发送给 LLM 的历史：
+ * <ol>
+ *   <li>过长的 assistant 消息（通常是长卡片）先截断；</li>
+ *   <li>从最新一轮往前保留，直到用完预算；</li>
+ *   <li>开启摘要时，放不下的早期对话压缩为一段摘要，按会话缓存并在后续轮次增量复用。</li>
+ * </ol>
+ * 摘要为抽取式（每条取开头若干字），不额外调用 LLM。
+ */
+@Slf4j
+@Service
+public class HistoryBudgeter {
+
+    private static final String TRUNCATED_SUFFIX = "…（已截断）";
+    private static final String SUMMARY_HEADER = "以下是更早对话的摘要：\n";
+    private static final int SUMMARY_LINE_CHARS = 80;
+
+    /**
+     * @param lastHash     摘要覆盖的最后一条消息的 hash，下一轮据此定位尚未摘要的消息
+     * @param previousHash 其前一条消息的 hash，只覆盖了一条消息时为 0
+     */
+    private record Summary(int lastHash, int previousHash, String text) {
+    }
+
+    private final int maxHistoryTokens;
+    private final int maxMessageChars;
+    private final boolean summaryEnabled;
+    private final int summaryMaxChars;
+    private final Cache<String, Summary> summaries;
+
+    public HistoryBudgeter(StreamingProperties props) {
+        var memory = props.getMemory();
+        this.maxHistoryTokens = memory.getMaxHistoryTokens();
+        this.maxMessageChars = memory.getMaxMessageChars();
+        this.summaryEnabled = memory.isSummaryEnabled();
+        this.summaryMaxChars = Math.max(100, memory.getSummaryMaxChars());
+        this.summaries = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, memory.getMaxThreads()))
+                .expireAfterAccess(Duration.ofHours(6))
+                .build();
+    }
+
+    /**
+     * @param conversationKey 用于复用摘要的会话标识（话题 ID 或用户 ID）
+     */
+    public List<Map<String, String>> apply(String conversationKey, List<Map<String, String>> history) {
+        if (history.isEmpty() || (maxHistoryTokens <= 0 && maxMessageChars <= 0)) return history;
+
+        var truncated = new ArrayList<Map<String, String>>(history.size());
+        for (var msg : history) {
+            truncated.add(truncateIfNeeded(msg));
+        }
+        if (maxHistoryTokens <= 0) return truncated;
+
+        int budget = summaryEnabled ? Math.max(0, maxHistoryTokens - estimateTokens(SUMMARY_HEADER) - summaryMaxChars)
+                : maxHistoryTokens;
+        int used = 0;
+        int keepFrom = truncated.size();
+        while (keepFrom > 0) {
+            int cost = estimateTokens(truncated.get(keepFrom - 1).get("content"));
+            if (used + cost > budget) break;
+            used += cost;
+            keepFrom--;
+        }
+        if (keepFrom == 0) return truncated;
+
+        var result = new ArrayList<Map<String, String>>(truncated.size() - keepFrom + 1);
+        if (summaryEnabled && conversationKey != null) {
+            result.add(Map.of("role", "system", "content",
+                    SUMMARY_HEADER + summarize(conversationKey, truncated.subList(0, keepFrom))));
+        }
+        result.addAll(truncated.subList(keepFrom, truncated.size()));
+        log.info("[memory] 历史超出预算: 原始 {} 条，保留最近 {} 条（约 {} tokens），{} 条早期消息{}",
+                history.size(), truncated.size() - keepFrom, used, keepFrom,
+                summaryEnabled ? "已压缩为摘要" : "已丢弃");
+        return result;
+    }
+
+    private Map<String, String> truncateIfNeeded(Map<String, String> msg) {
+        String content = msg.get("content");
+        if (maxMessageChars <= 0 || !"assistant".equals(msg.get("role"))
+                || content == null || content.length() <= maxMessageChars) {
+            return msg;
+        }
+        return Map.of("role", "assistant", "content", content.substring(0, maxMessageChars) + TRUNCATED_SUFFIX);
+    }
+
+    /**
+     * 能在被挤出的消息中找到上一轮摘要覆盖的最后一条时，只为其后的消息追加摘要行；
+     * 已滑出历史窗口的更早消息仍保留在摘要中。
+     */
+    private String summarize(String conversationKey, List<Map<String, String>> dropped) {
+        Summary cached = summaries.getIfPresent(conversationKey);
+        int from = cached == null ? -1 : uncoveredFrom(cached, dropped);
+
+        StringBuilder sb;
+        if (from < 0) {
+            sb = new StringBuilder();
+            from = 0;
+        } else {
+            if (from == dropped.size()) return cached.text();
+            sb = new StringBuilder(cached.text());
+        }
+
+        for (int i = from; i < dropped.size(); i++) {
+            var msg = dropped.get(i);
+            String content = msg.get("content").replace('\n', ' ');
+            sb.append("assistant".equals(msg.get("role")) ? "助手: " : "用户: ")
+                    .append(content, 0, Math.min(content.length(), SUMMARY_LINE_CHARS))
+                    .append(content.length() > SUMMARY_LINE_CHARS ? "…\n" : "\n");
+        }
+        // 超长时丢弃最早的摘要行
+        while (sb.length() > summaryMaxChars) {
+            int nl = sb.indexOf("\n");
+            if (nl < 0 || nl + 1 >= sb.length()) {
+                sb.delete(0, sb.length() - summaryMaxChars);
+                break;
+            }
+            sb.delete(0, nl + 1);
+        }
+
+        String text = sb.toString();
+        int last = dropped.size() - 1;
+        summaries.put(conversationKey, new Summary(dropped.get(last).hashCode(),
+                last > 0 ? dropped.get(last - 1).hashCode() : 0, text));
+        return text;
+    }
+
+    /**
+     * 历史按条数或字数取最近的一段，窗口滑动时被挤出部分的开头每轮都在变，而上一轮摘要到的位置仍在其中，
+     * 因此以摘要覆盖的最后一条消息（连同前一条，避免内容相同的短消息误配）为锚点。
+     *
+     * @return 第一条尚未摘要的消息的下标，找不到锚点（如换了一条回复链）时返回 -1
+     */
+    private static int uncoveredFrom(Summary cached, List<Map<String, String>> dropped) {
+        for (int i = dropped.size() - 1; i >= 0; i--) {
+            if (dropped.get(i).hashCode() != cached.lastHash()) continue;
+            if (i == 0 || cached.previousHash() == 0 || dropped.get(i - 1).hashCode() == cached.previousHash()) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 粗略估算 token 数：ASCII 约 4 字符 1 token，中文等非 ASCII 字符约 1 字 1 token。
+     */
+    static int estimateTokens(String text) {
+        if (text == null) return 0;
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) ascii++;
+            else other++;
+        }
+        return other + (ascii + 3) / 4;
+    }
+}
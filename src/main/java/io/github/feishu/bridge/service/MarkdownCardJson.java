@@ -0,0 +1,69 @@
+package io.github.feishu.bridge.service;
+
+/**
+ * 单个 Markdown 组件的卡片 JSON 序列化器，按卡片复用：
+ * 内容是上一次内容的延续（同一 {@link ReplyBuffer} 的更长快照）时，只转义新增的尾部，
+ * 已转义的前缀直接复用，不再构建 Map 或经过 Gson。
+ * 缓存中连同卡片 JSON 的开头一起保存，每次更新只在末尾临时接上结尾再复制出结果字符串，不另建中间缓冲区。
+ */
+final class MarkdownCardJson {
+
+    private static final String PREFIX =
+            "{\"config\":{\"wide_screen_mode\":true},\"elements\":[{\"tag\":\"markdown\",\"content\":\"";
+    private static final String SUFFIX = "\"}]}";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** 卡片 JSON 开头加上已转义的内容 */
+    private final StringBuilder json = new StringBuilder(PREFIX);
+    private ReplyBuffer source;
+    private int escapedChars;
+
+    /**
+     * 一次性渲染，不保留转义缓存。
+     */
+    static String render(String content) {
+        var sb = new StringBuilder(PREFIX.length() + content.length() + SUFFIX.length() + 16).append(PREFIX);
+        escape(content, 0, content.length(), sb);
+        return sb.append(SUFFIX).toString();
+    }
+
+    synchronized String renderIncremental(CharSequence content) {
+        boolean continues = content instanceof ReplyBuffer.Snapshot snapshot
+                && snapshot.source() == source && snapshot.length() >= escapedChars;
+        if (!continues) {
+            json.setLength(PREFIX.length());
+            escapedChars = 0;
+            source = content instanceof ReplyBuffer.Snapshot snapshot ? snapshot.source() : null;
+        }
+        escape(content, escapedChars, content.length(), json);
+        escapedChars = content.length();
+
+        int end = json.length();
+        String card = json.append(SUFFIX).toString();
+        json.setLength(end);
+        return card;
+    }
+
+    private static void escape(CharSequence s, int from, int to, StringBuilder out) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                case '\b' -> out.append("\\b");
+                case '\f' -> out.append("\\f");
+                default -> {
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.append("\\u").append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+                                .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+    }
+}
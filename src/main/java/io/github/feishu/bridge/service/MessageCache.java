@@ -0,0 +1,44 @@
+package io.github.feishu.bridge.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.feishu.bridge.config.StreamingProperties;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * 按 message_id 缓存已解码的消息（角色、文本、parent_id），容量和存活时间有界。
+ * 桥接服务自己收到的用户消息和发出的最终回复会提前写入，回溯回复链时大多可直接命中内存，
+ * 只有缺失的环节才调用飞书 API。
+ */
+@Service
+public class MessageCache {
+
+    /**
+     * @param role     user / assistant
+     * @param content  纯文本内容，非文本消息为 null
+     * @param parentId 回复链上一条消息的 message_id，没有则为 null
+     */
+    public record CachedMessage(String role, String content, String parentId) {
+    }
+
+    private final Cache<String, CachedMessage> cache;
+
+    public MessageCache(StreamingProperties props) {
+        var memory = props.getMemory();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, memory.getCacheMaxMessages()))
+                .expireAfterWrite(Duration.ofMinutes(Math.max(1, memory.getCacheTtlMinutes())))
+                .build();
+    }
+
+    public CachedMessage get(String messageId) {
+        return messageId == null ? null : cache.getIfPresent(messageId);
+    }
+
+    public void put(String messageId, CachedMessage message) {
+        if (messageId == null || message == null) return;
+        cache.put(messageId, message);
+    }
+}
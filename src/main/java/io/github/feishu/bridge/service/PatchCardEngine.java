@@ -0,0 +1,36 @@
+package io.github.feishu.bridge.service;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 普通卡片消息：每次更新 PATCH 整张卡片，兼容所有应用，但请求体随回复长度线性增长。
+ * 每张卡片保留一份已转义内容的缓存（{@link MarkdownCardJson}），更新时只转义新增部分。
+ */
+@RequiredArgsConstructor
+public class PatchCardEngine implements CardUpdateEngine {
+
+    private final FeishuApiService feishuApi;
+    private final ConcurrentHashMap<String, MarkdownCardJson> renderers = new ConcurrentHashMap<>();
+
+    @Override
+    public String send(String openId, String replyToMessageId, String content) throws Exception {
+        return feishuApi.sendInteractive(openId, replyToMessageId, FeishuApiService.buildMarkdownCard(content));
+    }
+
+    @Override
+    public Result update(String messageId, CharSequence content, boolean isFinal) throws Exception {
+        String card = renderers.computeIfAbsent(messageId, k -> new MarkdownCardJson()).renderIncremental(content);
+        return Result.of(feishuApi.patchMessage(messageId, card));
+    }
+
+    @Override
+    public void release(String messageId) {
+        renderers.remove(messageId);
+    }
+
+    boolean isTracked(String messageId) {
+        return renderers.containsKey(messageId);
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.feishu.bridge.service;
+
+import java.util.Arrays;
+
+/**
+ * 只追加的回复文本缓冲区。字符按固定大小分块存储，已写入的字符不会再改动，
+ * 因此 {@link #snapshot()} 只记录当前长度、不复制内容，快照可以安全地交给其他线程读取。
+ * 追加只允许由单个线程（会话线程）进行。
+ */
+public final class ReplyBuffer {
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private char[][] chunks = new char[4][];
+    private int length;
+    private Snapshot lastSnapshot;
+
+    public void append(String text) {
+        int offset = 0;
+        while (offset < text.length()) {
+            int chunkIndex = length >>> CHUNK_SHIFT;
+            if (chunkIndex == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            }
+            if (chunks[chunkIndex] == null) {
+                chunks[chunkIndex] = new char[CHUNK_SIZE];
+            }
+            int pos = length & CHUNK_MASK;
+            int n = Math.min(CHUNK_SIZE - pos, text.length() - offset);
+            text.getChars(offset, offset + n, chunks[chunkIndex], pos);
+            offset += n;
+            length += n;
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * 当前内容的只读视图，O(1)，内容未变化时复用上一次的快照。
+     */
+    public Snapshot snapshot() {
+        Snapshot last = lastSnapshot;
+        if (last != null && last.length == length) return last;
+        return lastSnapshot = new Snapshot(this, chunks, length);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * 某一时刻缓冲区前 length 个字符的不可变视图。同一缓冲区的快照之间互为前缀。
+     */
+    public static final class Snapshot implements CharSequence {
+        private final ReplyBuffer source;
+        private final char[][] chunks;
+        private final int length;
+        private String string;
+
+        private Snapshot(ReplyBuffer source, char[][] chunks, int length) {
+            this.source = source;
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        /**
+         * 产生该快照的缓冲区，用于判断两个快照是否互为前缀。
+         */
+        ReplyBuffer source() {
+            return source;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+            return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        /**
+         * 将 [from, length) 区间的字符追加到 sb，按块批量复制。
+         */
+        void appendTo(StringBuilder sb, int from) {
+            int pos = from;
+            while (pos < length) {
+                int offset = pos & CHUNK_MASK;
+                int n = Math.min(CHUNK_SIZE - offset, length - pos);
+                sb.append(chunks[pos >>> CHUNK_SHIFT], offset, n);
+                pos += n;
+            }
+        }
+
+        @Override
+        public String toString() {
+            String s = string;
+            if (s == null) {
+                var sb = new StringBuilder(length);
+                appendTo(sb, 0);
+                string = s = sb.toString();
+            }
+            return s;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.feishu.bridge.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.feishu.bridge.config.StreamingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 相同问题的回答缓存：帮助台场景下大量用户问同一个 FAQ，命中时直接把缓存的回答写入卡片，不再请求上游。
+ * <ul>
+ *   <li>键为规范化后的问题加上 provider 给出的作用域（模型、系统提示词等），见 {@code StreamingProvider#cacheScope}；</li>
+ *   <li>只用于不带历史的请求，容量和存活时间有界，超出按 LRU 淘汰；</li>
+ *   <li>只缓存正常结束的完整回答（读到上游结束事件且最终卡片更新成功），被取代、出错、中途断开或超过长度上限的回答不缓存；</li>
+ *   <li>开启语义层（{@link SemanticCache}）时，精确匹配未命中再按相似度查找换了说法的同一问题。</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "streaming.cache.enabled", havingValue = "true")
+public class ResponseCache {
+
+    /** 命中后首张卡片先展示的字符数，其余内容走正常的最终更新 */
+    private static final int REPLAY_FIRST_CHARS = 64;
+
+    /**
+     * @param scope  决定回答的请求参数，同一配置下是同一个实例
+     * @param prompt 规范化后的问题
+     */
+    public record Key(String scope, String prompt) {
+    }
+
+    /**
+     * @param semantic   是否由语义层命中
+     * @param similarity 语义层命中时与已缓存问题的相似度，精确命中为 1
+     */
+    public record Hit(String answer, boolean semantic, double similarity) {
+    }
+
+    private final Cache<Key, String> cache;
+    private final Map<String, String> scopes = new ConcurrentHashMap<>();
+    private final int maxAnswerChars;
+    private final SemanticCache semanticCache;
+
+    public ResponseCache(StreamingProperties props,
+                         @Autowired(required = false) SemanticCache semanticCache) {
+        var config = props.getCache();
+        this.maxAnswerChars = config.getMaxAnswerChars();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, config.getMaxEntries()))
+                .expireAfterWrite(Duration.ofMinutes(Math.max(1, config.getTtlMinutes())))
+                .build();
+        this.semanticCache = semanticCache;
+        log.info("[cache] 响应缓存已开启: maxEntries={}, ttlMinutes={}, maxAnswerChars={}",
+                config.getMaxEntries(), config.getTtlMinutes(), maxAnswerChars);
+    }
+
+    /**
+     * @param scope provider 的缓存作用域，为 null 时（请求依赖上游会话状态）不可缓存
+     * @return 不可缓存时返回 null
+     */
+    public Key key(String scope, String userQuery) {
+        if (scope == null || userQuery == null) return null;
+        String prompt = normalize(userQuery);
+        if (prompt.isEmpty()) return null;
+        // 作用域字符串可能包含较长的系统提示词，所有键共用一份
+        return new Key(scopes.computeIfAbsent(scope, s -> s), prompt);
+    }
+
+    /**
+     * 先精确匹配，未命中且开启语义层时再按相似度查找。
+     */
+    public Hit get(Key key) {
+        if (key == null) return null;
+        String answer = cache.getIfPresent(key);
+        if (answer != null) return new Hit(answer, false, 1);
+        if (semanticCache == null) return null;
+        var match = semanticCache.lookup(key);
+        if (match == null) return null;
+        log.info("[cache] 语义缓存命中: query={}, cached={}, similarity={}",
+                key.prompt(), match.prompt(), String.format("%.3f", match.similarity()));
+        return new Hit(match.answer(), true, match.similarity());
+    }
+
+    public void put(Key key, String answer) {
+        if (key == null || answer == null || answer.isBlank()) return;
+        if (maxAnswerChars > 0 && answer.length() > maxAnswerChars) return;
+        cache.put(key, answer);
+        if (semanticCache != null) semanticCache.put(key, answer);
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 命中时首张卡片的内容：回答开头的一段，优先在换行处截断。
+     */
+    static String firstSegment(String answer) {
+        if (answer.length() <= REPLAY_FIRST_CHARS) return answer;
+        int newline = answer.lastIndexOf('\n', REPLAY_FIRST_CHARS);
+        int end = newline > 0 ? newline : REPLAY_FIRST_CHARS;
+        // 不拆开代理对
+        if (Character.isHighSurrogate(answer.charAt(end - 1))) end--;
+        return answer.substring(0, end);
+    }
+
+    /**
+     * 规范化问题：全角转半角（NFKC）、小写、合并空白，去掉末尾的标点，
+     * 使"如何报销？"和"如何报销"、"VPN 怎么连"和"vpn  怎么连"命中同一条缓存。
+     */
+    static String normalize(String query) {
+        String s = Normalizer.normalize(query, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        var sb = new StringBuilder(s.length());
+        boolean space = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = !sb.isEmpty();
+            } else {
+                if (space) sb.append(' ');
+                sb.append(c);
+                space = false;
+            }
+        }
+        int end = sb.length();
+        // 标点前可能还有空白（"如何报销 ？"），一并去掉
+        while (end > 0 && (isTrailingPunctuation(sb.charAt(end - 1)) || sb.charAt(end - 1) == ' ')) end--;
+        sb.setLength(end);
+        return sb.toString();
+    }
+
+    private static boolean isTrailingPunctuation(char c) {
+        return switch (Character.getType(c)) {
+            case Character.OTHER_PUNCTUATION, Character.END_PUNCTUATION, Character.FINAL_QUOTE_PUNCTUATION -> true;
+            default -> false;
+        };
+    }
+}
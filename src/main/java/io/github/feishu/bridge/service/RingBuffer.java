@@ -0,0 +1,87 @@
+package io.github.feishu.bridge.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形队列（多生产者、单消费者），基于每个槽位的序号做 CAS，生产者之间、生产者与消费者之间都不加锁。
+ * 容量向上取整为 2 的幂。
+ */
+final class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> items;
+    /** 槽位序号：等于写位置时可写，等于写位置 + 1 时可读 */
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /** 只有消费者线程修改 */
+    private volatile long head;
+
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.min(Math.max(2, capacity), 1 << 30) - 1) << 1;
+        this.mask = size - 1;
+        this.items = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return 队列已满时返回 false
+     */
+    boolean offer(E e) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    items.lazySet(index, e);
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 只能由消费者线程调用，最多取出 max 条追加到 out。
+     *
+     * @return 取出的条数
+     */
+    int drainTo(List<? super E> out, int max) {
+        long pos = head;
+        int n = 0;
+        while (n < max) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos + 1) break;
+            out.add(items.get(index));
+            items.lazySet(index, null);
+            sequences.set(index, pos + mask + 1);
+            pos++;
+            n++;
+        }
+        head = pos;
+        return n;
+    }
+
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
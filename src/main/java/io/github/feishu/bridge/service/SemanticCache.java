@@ -0,0 +1,207 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 响应缓存的语义层：精确匹配未命中时，按 {@link HashingEmbedder} 向量的余弦相似度查找说法不同的同一问题，
+ * 相似度不低于阈值时复用其回答。
+ * <ul>
+ *   <li>近似最近邻用随机超平面 LSH：{@value #TABLES} 张表，每张表取 {@value #BITS} 个超平面的符号位作为桶号，
+ *       查询时合并各表同桶的候选再精确计算相似度；</li>
+ *   <li>条目数和存活时间有界，超出按 LRU 淘汰，只有命中才刷新访问顺序；</li>
+ *   <li>问题向量很稀疏（通常几十个非零维），投影和相似度都只遍历非零维；</li>
+ *   <li>向量计算在锁外，索引读写在同一把锁内。</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "streaming.cache", name = {"enabled", "semantic-enabled"}, havingValue = "true")
+public class SemanticCache {
+
+    static final int TABLES = 24;
+    static final int BITS = 12;
+    /** 超平面固定种子，重启后桶号一致，便于对比基准结果 */
+    private static final long SEED = 0x5eed_cafeL;
+
+    /**
+     * @param prompt     命中的已缓存问题（规范化后）
+     * @param similarity 余弦相似度
+     */
+    public record Match(String answer, String prompt, double similarity) {
+    }
+
+    private static final class Entry {
+        final ResponseCache.Key key;
+        /** 向量的非零维及其取值 */
+        final int[] dims;
+        final float[] weights;
+        final int[] buckets;
+        final String answer;
+        final long expiresAt;
+        /** 最近一次被作为候选访问的查询序号，用于合并多表候选时去重 */
+        long visited;
+
+        Entry(ResponseCache.Key key, float[] vector, int[] buckets, String answer, long expiresAt) {
+            this.key = key;
+            int nonZero = 0;
+            for (float x : vector) if (x != 0) nonZero++;
+            this.dims = new int[nonZero];
+            this.weights = new float[nonZero];
+            for (int d = 0, i = 0; d < vector.length; d++) {
+                if (vector[d] == 0) continue;
+                dims[i] = d;
+                weights[i++] = vector[d];
+            }
+            this.buckets = buckets;
+            this.answer = answer;
+            this.expiresAt = expiresAt;
+        }
+
+        float similarity(float[] query) {
+            float sum = 0;
+            for (int i = 0; i < dims.length; i++) sum += weights[i] * query[dims[i]];
+            return sum;
+        }
+    }
+
+    private final double threshold;
+    private final int maxEntries;
+    private final long ttlMs;
+    private final LongSupplier clock;
+    /** 超平面按维度转置存放：[维][表 * BITS + 位]，投影时只需遍历向量的非零维 */
+    private final float[][] planes = new float[HashingEmbedder.DIMENSIONS][TABLES * BITS];
+
+    // 以下字段由 this 保护
+    private final LinkedHashMap<ResponseCache.Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    @SuppressWarnings("unchecked")
+    private final HashMap<Integer, List<Entry>>[] tables = new HashMap[TABLES];
+    private long queries;
+
+    @Autowired
+    public SemanticCache(StreamingProperties props) {
+        this(props, System::currentTimeMillis);
+    }
+
+    SemanticCache(StreamingProperties props, LongSupplier clock) {
+        var config = props.getCache();
+        this.clock = clock;
+        this.threshold = config.getSemanticThreshold();
+        this.maxEntries = Math.max(1, config.getSemanticMaxEntries());
+        this.ttlMs = TimeUnit.MINUTES.toMillis(Math.max(1, config.getTtlMinutes()));
+        var random = new Random(SEED);
+        for (int t = 0; t < TABLES; t++) {
+            tables[t] = new HashMap<>();
+        }
+        for (float[] row : planes) {
+            for (int k = 0; k < row.length; k++) row[k] = (float) random.nextGaussian();
+        }
+        log.info("[cache] 语义缓存已开启: threshold={}, maxEntries={}", threshold, maxEntries);
+    }
+
+    /**
+     * 查找与 key 同作用域、相似度不低于阈值的最相近问题。
+     */
+    public Match lookup(ResponseCache.Key key) {
+        if (key == null) return null;
+        float[] vector = HashingEmbedder.embed(key.prompt());
+        if (vector == null) return null;
+        int[] buckets = buckets(vector);
+        long now = clock.getAsLong();
+
+        synchronized (this) {
+            long query = ++queries;
+            Entry best = null;
+            float bestSimilarity = 0;
+            List<Entry> expired = null;
+            for (int t = 0; t < TABLES; t++) {
+                List<Entry> bucket = tables[t].get(buckets[t]);
+                if (bucket == null) continue;
+                for (Entry e : bucket) {
+                    if (e.visited == query) continue;
+                    e.visited = query;
+                    if (e.expiresAt <= now) {
+                        if (expired == null) expired = new ArrayList<>();
+                        expired.add(e);
+                        continue;
+                    }
+                    if (!e.key.scope().equals(key.scope())) continue;
+                    float similarity = e.similarity(vector);
+                    if (similarity > bestSimilarity) {
+                        best = e;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+            if (expired != null) {
+                for (Entry e : expired) remove(e);
+            }
+            if (best == null || bestSimilarity < threshold) return null;
+            entries.get(best.key);
+            return new Match(best.answer, best.key.prompt(), bestSimilarity);
+        }
+    }
+
+    public void put(ResponseCache.Key key, String answer) {
+        if (key == null || answer == null) return;
+        float[] vector = HashingEmbedder.embed(key.prompt());
+        if (vector == null) return;
+        var entry = new Entry(key, vector, buckets(vector), answer, clock.getAsLong() + ttlMs);
+
+        synchronized (this) {
+            Entry old = entries.get(key);
+            if (old != null) remove(old);
+            entries.put(key, entry);
+            for (int t = 0; t < TABLES; t++) {
+                tables[t].computeIfAbsent(entry.buckets[t], b -> new ArrayList<>(2)).add(entry);
+            }
+            while (entries.size() > maxEntries) {
+                remove(entries.values().iterator().next());
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(Entry e) {
+        if (!entries.remove(e.key, e)) return;
+        for (int t = 0; t < TABLES; t++) {
+            List<Entry> bucket = tables[t].get(e.buckets[t]);
+            if (bucket == null) continue;
+            bucket.remove(e);
+            if (bucket.isEmpty()) tables[t].remove(e.buckets[t]);
+        }
+    }
+
+    private int[] buckets(float[] vector) {
+        float[] projections = new float[TABLES * BITS];
+        for (int d = 0; d < vector.length; d++) {
+            float x = vector[d];
+            if (x == 0) continue;
+            float[] row = planes[d];
+            for (int k = 0; k < projections.length; k++) projections[k] += x * row[k];
+        }
+        int[] buckets = new int[TABLES];
+        for (int t = 0; t < TABLES; t++) {
+            int bits = 0;
+            for (int b = 0; b < BITS; b++) {
+                if (projections[t * BITS + b] >= 0) bits |= 1 << b;
+            }
+            buckets[t] = bits;
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 流式回复专用的执行器，不再借用 Spring 默认异步线程池和 ForkJoinPool.commonPool()：
+ * <ul>
+ *   <li>conversations：每个会话一个虚拟线程，阻塞读取上游 SSE 不占用平台线程；</li>
+ *   <li>feishuApi：有界线程池，承载发卡片、PATCH 等阻塞的飞书 SDK 调用；队列满时拒绝，不在提交方线程执行，
+ *       调度器线程和 WebSocket 回调线程不能被阻塞（见 {@link #tryExecuteFeishuApi}），会话虚拟线程自行承担背压
+ *       （见 {@link #supplyFeishuApi}）；</li>
+ *   <li>准入控制：同时进行的会话数达到上限后，新会话直接拒绝，由调用方回复"繁忙"。</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "streaming.enabled", havingValue = "true")
+public class StreamingExecutors {
+
+    private final ExecutorService conversations = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("conversation-", 0).factory());
+    private final ThreadPoolExecutor feishuApi;
+    private final Semaphore admission;
+    private final int maxConversations;
+
+    public StreamingExecutors(StreamingProperties props) {
+        var concurrency = props.getConcurrency();
+        this.maxConversations = Math.max(1, concurrency.getMaxConversations());
+        this.admission = new Semaphore(maxConversations);
+
+        int threads = Math.max(1, concurrency.getFeishuApiThreads());
+        var counter = new AtomicInteger();
+        this.feishuApi = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, concurrency.getFeishuApiQueueCapacity())),
+                r -> {
+                    Thread t = new Thread(r, "feishu-api-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.feishuApi.allowCoreThreadTimeOut(true);
+        log.info("[streaming] 执行器已初始化: maxConversations={}, feishuApiThreads={}, feishuApiQueue={}",
+                maxConversations, threads, concurrency.getFeishuApiQueueCapacity());
+    }
+
+    /**
+     * 尝试占用一个会话名额；成功时在虚拟线程中执行 task 并在结束后归还名额。
+     *
+     * @return 已达到并发上限时返回 false，task 不会被执行
+     */
+    public boolean tryStartConversation(Runnable task) {
+        if (!admission.tryAcquire()) return false;
+        try {
+            conversations.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    admission.release();
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            admission.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 不阻塞地提交一个飞书 API 调用，供不能被阻塞的线程（卡片调度器、WebSocket 回调）使用。
+     *
+     * @return 队列已满时返回 false，task 不会被执行，由调用方决定重试或丢弃
+     */
+    public boolean tryExecuteFeishuApi(Runnable task) {
+        try {
+            feishuApi.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 在飞书 API 线程池中执行；队列已满时在当前线程同步执行。只应由会话虚拟线程调用，阻塞的是会话本身。
+     */
+    public <T> CompletableFuture<T> supplyFeishuApi(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, feishuApi);
+        } catch (RejectedExecutionException e) {
+            try {
+                return CompletableFuture.completedFuture(task.get());
+            } catch (RuntimeException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+    }
+
+    public int getActiveConversations() {
+        return maxConversations - admission.availablePermits();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        conversations.shutdown();
+        feishuApi.shutdown();
+    }
+}
@@ -0,0 +1,225 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import io.github.feishu.bridge.streaming.FailoverStreamingProvider;
+import io.github.feishu.bridge.streaming.StreamingProvider;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式回复链路的 Micrometer 指标，通过 /actuator/prometheus 暴露。
+ * 耗时类指标发布直方图，可直接在 Prometheus 中按 histogram_quantile 计算 p99 并告警。
+ * 固定标签的指标在构造时注册，按 HTTP 状态等动态标签的指标按需创建并缓存。
+ */
+@Component
+@ConditionalOnProperty(name = "streaming.enabled", havingValue = "true")
+public class StreamingMetrics {
+
+    private final MeterRegistry registry;
+    private final String provider;
+    private final String engine;
+
+    private final Timer ttft;
+    private final Timer maxGap;
+    private final DistributionSummary outputSpeed;
+    private final Counter contentChunks;
+    private final Counter contentChars;
+    private final Counter reasoningChunks;
+    private final Counter reasoningChars;
+    private final Counter burstChunks;
+    private final Counter gapChunks;
+    private final Counter rejected;
+    private final Map<String, Counter> cacheLookups = new ConcurrentHashMap<>();
+    private final Map<String, Counter> upstreams = new ConcurrentHashMap<>();
+    private final Map<String, Counter> feishuApiRejections = new ConcurrentHashMap<>();
+    private final Map<String, Timer> durations = new ConcurrentHashMap<>();
+    private final Map<String, Timer> historyFetches = new ConcurrentHashMap<>();
+    private final Map<CardUpdateEngine.Result, Timer> cardUpdates = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errors = new ConcurrentHashMap<>();
+
+    public StreamingMetrics(MeterRegistry registry, StreamingProperties props, StreamingProvider streamingProvider) {
+        this.registry = registry;
+        this.provider = props.getProvider();
+        this.engine = props.getCard().getEngine();
+
+        this.ttft = Timer.builder("feishu.streaming.ttft")
+                .description("首个内容 token 到达的延迟")
+                .tag("provider", provider)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(50))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(registry);
+        this.maxGap = Timer.builder("feishu.streaming.chunk.max.gap")
+                .description("单次回复中相邻内容 chunk 的最大间隔")
+                .tag("provider", provider)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(50))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(registry);
+        this.outputSpeed = DistributionSummary.builder("feishu.streaming.output.speed")
+                .description("首个内容到达后的输出速度")
+                .baseUnit("chars_per_second")
+                .tag("provider", provider)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.contentChunks = chunkCounter("feishu.streaming.chunks", "content");
+        this.reasoningChunks = chunkCounter("feishu.streaming.chunks", "reasoning");
+        this.contentChars = chunkCounter("feishu.streaming.chars", "content");
+        this.reasoningChars = chunkCounter("feishu.streaming.chars", "reasoning");
+        this.burstChunks = Counter.builder("feishu.streaming.chunk.intervals")
+                .description("内容 chunk 到达间隔：burst <50ms，gap ≥50ms")
+                .tags("provider", provider, "kind", "burst")
+                .register(registry);
+        this.gapChunks = Counter.builder("feishu.streaming.chunk.intervals")
+                .description("内容 chunk 到达间隔：burst <50ms，gap ≥50ms")
+                .tags("provider", provider, "kind", "gap")
+                .register(registry);
+        this.rejected = Counter.builder("feishu.streaming.rejected")
+                .description("会话数达到上限被拒绝的消息")
+                .tag("provider", provider)
+                .register(registry);
+        if (streamingProvider instanceof FailoverStreamingProvider failover) {
+            registerEndpointGauges(failover);
+        }
+    }
+
+    /**
+     * 多端点时每个端点的首 token 延迟 EWMA 和健康状态。
+     */
+    private void registerEndpointGauges(FailoverStreamingProvider failover) {
+        for (var endpoint : failover.endpoints()) {
+            Gauge.builder("feishu.streaming.endpoint.ttft.ewma", endpoint, FailoverStreamingProvider.Endpoint::ttftEwmaMs)
+                    .description("端点首 token 延迟的 EWMA，用于路由")
+                    .baseUnit("milliseconds")
+                    .tags("provider", provider, "endpoint", endpoint.name())
+                    .register(registry);
+            Gauge.builder("feishu.streaming.endpoint.healthy", endpoint,
+                            e -> e.isHealthy(System.currentTimeMillis()) ? 1 : 0)
+                    .description("端点是否可路由，请求失败后的冷却期内为 0")
+                    .tags("provider", provider, "endpoint", endpoint.name())
+                    .register(registry);
+        }
+    }
+
+    private Counter chunkCounter(String name, String type) {
+        return Counter.builder(name)
+                .tags("provider", provider, "type", type)
+                .register(registry);
+    }
+
+    public void recordTtft(long ms) {
+        ttft.record(ms, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次回复结束（成功、失败或被取代）时的总耗时和内容统计。
+     *
+     * @param outcome success | cached | error | superseded
+     */
+    public void recordReply(String outcome, long totalMs,
+                            int contentChunkCount, int contentCharCount,
+                            int reasoningChunkCount, int reasoningCharCount,
+                            int burstChunkCount, int gapChunkCount, long maxGapMs, double contentSpeed) {
+        durations.computeIfAbsent(outcome, o -> Timer.builder("feishu.streaming.duration")
+                        .description("一次回复从收到消息到最终更新完成的总耗时")
+                        .tags("provider", provider, "outcome", o)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(100))
+                        .maximumExpectedValue(Duration.ofMinutes(10))
+                        .register(registry))
+                .record(totalMs, TimeUnit.MILLISECONDS);
+        contentChunks.increment(contentChunkCount);
+        contentChars.increment(contentCharCount);
+        reasoningChunks.increment(reasoningChunkCount);
+        reasoningChars.increment(reasoningCharCount);
+        burstChunks.increment(burstChunkCount);
+        gapChunks.increment(gapChunkCount);
+        if (gapChunkCount > 0) maxGap.record(maxGapMs, TimeUnit.MILLISECONDS);
+        if (contentSpeed > 0) outputSpeed.record(contentSpeed);
+    }
+
+    /**
+     * @param status 上游 HTTP 状态码，没有响应时为 timeout 或 exception
+     */
+    public void recordError(String status) {
+        errors.computeIfAbsent(status, s -> Counter.builder("feishu.streaming.errors")
+                        .description("回复失败次数，按上游 HTTP 状态分类")
+                        .tags("provider", provider, "status", s)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * @param source thread | reply_chain
+     */
+    public void recordHistoryFetch(String source, long nanos) {
+        historyFetches.computeIfAbsent(source, s -> Timer.builder("feishu.streaming.history.fetch")
+                        .description("从飞书拉取会话历史的耗时")
+                        .tags("provider", provider, "source", s)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(10))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCardUpdate(CardUpdateEngine.Result result, long nanos) {
+        cardUpdates.computeIfAbsent(result, r -> Timer.builder("feishu.card.update")
+                        .description("单次卡片更新（PATCH 或 CardKit）调用的耗时")
+                        .tags("provider", provider, "engine", engine, "result", r.name().toLowerCase())
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(10))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * 飞书 API 线程池排满、任务未能提交的次数。
+     *
+     * @param task card_update（调度器下一轮重试）| busy_reply（直接丢弃）
+     */
+    public void recordFeishuApiRejected(String task) {
+        feishuApiRejections.computeIfAbsent(task, t -> Counter.builder("feishu.streaming.feishu.api.rejected")
+                        .description("飞书 API 线程池排满时未能提交的任务")
+                        .tags("provider", provider, "task", t)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * @param result hit | semantic_hit | miss
+     */
+    public void recordCacheLookup(String result) {
+        cacheLookups.computeIfAbsent(result, r -> Counter.builder("feishu.streaming.cache")
+                        .description("响应缓存查询次数，只统计可缓存（不带历史）的请求")
+                        .tags("provider", provider, "result", r)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * @param route first | failover | hedge_won | hedge_lost
+     */
+    public void recordUpstream(String endpoint, String route) {
+        upstreams.computeIfAbsent(endpoint + "\n" + route, k -> Counter.builder("feishu.streaming.upstream")
+                        .description("多端点时每次回复由哪个端点、经哪种路径应答")
+                        .tags("provider", provider, "endpoint", endpoint, "route", route)
+                        .register(registry))
+                .increment();
+    }
+}
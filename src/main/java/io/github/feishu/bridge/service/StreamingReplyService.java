@@ -1,25 +1,22 @@
 package io.github.feishu.bridge.service;
 
+import io.github.feishu.bridge.config.HttpClients;
 import io.github.feishu.bridge.config.StreamingProperties;
+import io.github.feishu.bridge.streaming.StreamEvent;
 import io.github.feishu.bridge.streaming.StreamingProvider;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.net.http.HttpClient;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.util.LinkedHashMap;
+import java.net.http.HttpTimeoutException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Service
@@ -27,27 +24,59 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class StreamingReplyService {
 
     private static final long LOG_INTERVAL_MS = 3000;
-    private static final long CARD_UPDATE_INTERVAL_MS = 200;
+    /** 向调度器提交最新内容的最小间隔，真正的 PATCH 频率由 {@link CardUpdateScheduler} 决定 */
+    private static final long CARD_SUBMIT_INTERVAL_MS = 50;
+    private static final long CARD_FINAL_TIMEOUT_SECONDS = 10;
 
     private final StreamingProvider streamingProvider;
     private final FeishuApiService feishuApi;
+    private final CardUpdateScheduler cardScheduler;
+    private final CardUpdateEngine cardEngine;
+    private final MessageCache messageCache;
+    private final ThreadMemoryStore threadMemoryStore;
+    private final HistoryBudgeter historyBudgeter;
     private final HttpClient httpClient;
+    private final StreamingExecutors executors;
+    private final ConversationRegistry conversations;
+    private final StreamingMetrics metrics;
+    private final String busyMessage;
     private final boolean useReplyMode;
     private final boolean memoryEnabled;
     private final int memoryMaxMessages;
     private final String providerType;
     private final ConversationLogService logService;
+    private final ResponseCache responseCache;
 
     @Autowired
     public StreamingReplyService(StreamingProvider streamingProvider,
                                   FeishuApiService feishuApi,
-                                  HttpClient httpClient,
+                                  CardUpdateScheduler cardScheduler,
+                                  CardUpdateEngine cardEngine,
+                                  MessageCache messageCache,
+                                  ThreadMemoryStore threadMemoryStore,
+                                  HistoryBudgeter historyBudgeter,
+                                  HttpClients httpClients,
+                                  StreamingExecutors executors,
+                                  ConversationRegistry conversations,
+                                  StreamingMetrics metrics,
                                   StreamingProperties streamingProperties,
-                                  @Autowired(required = false) ConversationLogService logService) {
+                                  @Autowired(required = false) ConversationLogService logService,
+                                  @Autowired(required = false) ResponseCache responseCache) {
         this.streamingProvider = streamingProvider;
         this.feishuApi = feishuApi;
-        this.httpClient = httpClient;
+        this.cardScheduler = cardScheduler;
+        this.cardEngine = cardEngine;
+        this.messageCache = messageCache;
+        this.threadMemoryStore = threadMemoryStore;
+        this.historyBudgeter = historyBudgeter;
+        this.httpClient = httpClients.llm();
+        this.executors = executors;
+        this.conversations = conversations;
+        this.metrics = metrics;
+        String busy = streamingProperties.getConcurrency().getBusyMessage();
+        this.busyMessage = busy == null || busy.isBlank() ? new StreamingProperties.Concurrency().getBusyMessage() : busy;
         this.logService = logService;
+        this.responseCache = responseCache;
         this.providerType = streamingProperties.getProvider();
         this.memoryEnabled = streamingProperties.getMemory().isEnabled();
         int cfgMax = streamingProperties.getMemory().getMaxMessages();
@@ -63,9 +92,46 @@ public class StreamingReplyService {
         }
     }
 
-    @Async
-    public void handleMessage(String openId, String userQuery,
+    /**
+     * 在独立的会话虚拟线程中处理一条消息，立即返回；会话数已达上限时回复繁忙提示。
+     *
+     * @param chatId 消息所在会话（单聊或群），同一用户在不同会话中的提问互不取代
+     */
+    public void handleMessage(String openId, String chatId, String userQuery,
                               String userMessageId, String parentId, String threadId) {
+        boolean admitted = executors.tryStartConversation(() ->
+                runConversation(openId, chatId, userQuery, userMessageId, parentId, threadId));
+        if (!admitted) {
+            metrics.recordRejected();
+            log.warn("[streaming] 会话数已达上限，回复繁忙提示: openId={}, active={}",
+                    openId, executors.getActiveConversations());
+            // 调用方是 WebSocket 回调线程，不能阻塞：线程池排满时直接放弃繁忙提示
+            if (!executors.tryExecuteFeishuApi(() -> sendErrorCard(openId, userMessageId, busyMessage))) {
+                metrics.recordFeishuApiRejected("busy_reply");
+                log.warn("[streaming] 飞书 API 队列已满，丢弃繁忙提示: openId={}", openId);
+            }
+        }
+    }
+
+    private void runConversation(String openId, String chatId, String userQuery,
+                                 String userMessageId, String parentId, String threadId) {
+        String conversationKey = chatId + "/" + openId + (threadId != null ? "/" + threadId : "");
+        ConversationRegistry.Handle handle;
+        try {
+            handle = conversations.begin(conversationKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            streamReply(handle, openId, userQuery, userMessageId, parentId, threadId);
+        } finally {
+            conversations.end(conversationKey, handle);
+        }
+    }
+
+    private void streamReply(ConversationRegistry.Handle handle, String openId, String userQuery,
+                             String userMessageId, String parentId, String threadId) {
         long startTime = System.currentTimeMillis();
         long firstContentTime = 0;
         int contentChunks = 0;
@@ -87,83 +153,113 @@ public class StreamingReplyService {
         int httpStatus = -1;
         String errorBody = null;
         String replyMessageId = null;
+        ResponseCache.Key cacheKey = null;
 
         try {
             if (memoryEnabled) {
+                long fetchStart = System.nanoTime();
                 if (threadId != null) {
                     history = feishuApi.fetchThreadHistory(threadId, memoryMaxMessages);
                     historySource = "thread";
+                    metrics.recordHistoryFetch(historySource, System.nanoTime() - fetchStart);
                     log.info("[memory] 获取话题历史: threadId={}, historySize={}", threadId, history.size());
                 } else if (parentId != null) {
                     history = feishuApi.fetchReplyChainHistory(parentId, memoryMaxMessages);
                     historySource = "reply_chain";
+                    metrics.recordHistoryFetch(historySource, System.nanoTime() - fetchStart);
                     log.info("[memory] 获取回复链历史: parentId={}, historySize={}", parentId, history.size());
                 }
+                history = historyBudgeter.apply(threadId != null ? threadId : openId, history);
+            }
+
+            // 不带历史的请求先查响应缓存，命中时直接回放缓存的回答
+            cacheKey = responseCache != null && history.isEmpty()
+                    ? responseCache.key(streamingProvider.cacheScope(openId), userQuery) : null;
+            if (cacheKey != null) {
+                var hit = responseCache.get(cacheKey);
+                metrics.recordCacheLookup(hit == null ? "miss" : hit.semantic() ? "semantic_hit" : "hit");
+                if (hit != null) {
+                    replayCachedReply(openId, userQuery, userMessageId, parentId, threadId, hit.answer(), startTime);
+                    return;
+                }
             }
 
-            var request = streamingProvider.buildRequest(userQuery, openId, history);
-            requestUrl = request.uri().toString();
             log.info("[streaming] 开始请求: openId={}, query={}, historySize={}",
                     openId, truncate(userQuery, 80), history.size());
 
-            var response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (handle.isCancelled()) throw new CancellationException("superseded");
+            var upstream = streamingProvider.open(httpClient, userQuery, openId, history, handle::attachUpstream);
+            handle.attachUpstream(upstream);
             long apiResponseTime = System.currentTimeMillis();
-            httpStatus = response.statusCode();
-            log.info("[streaming] API 响应: status={}, 耗时={}ms",
-                    httpStatus, apiResponseTime - startTime);
+            requestUrl = upstream.uri().toString();
+            httpStatus = upstream.statusCode();
+            if (upstream.endpoint() != null) {
+                metrics.recordUpstream(upstream.endpoint(), upstream.route());
+                log.info("[streaming] API 响应: status={}, endpoint={}, route={}, 耗时={}ms",
+                        httpStatus, upstream.endpoint(), upstream.route(), apiResponseTime - startTime);
+            } else {
+                log.info("[streaming] API 响应: status={}, 耗时={}ms",
+                        httpStatus, apiResponseTime - startTime);
+            }
+            StreamingProvider decoder = upstream.provider();
 
             if (httpStatus != 200) {
-                try (var is = response.body()) {
-                    errorBody = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+                try (upstream) {
+                    errorBody = upstream.readErrorBody();
                 }
                 log.error("[streaming] API 返回非 200: status={}, body={}", httpStatus, errorBody);
+                metrics.recordError(String.valueOf(httpStatus));
+                metrics.recordReply("error", System.currentTimeMillis() - startTime,
+                        0, 0, 0, 0, 0, 0, 0, 0);
                 sendErrorCard(openId, userMessageId,
                         "调用 AI 服务失败 (HTTP " + httpStatus + ")");
                 return;
             }
 
-            var accumulated = new StringBuilder();
-            long lastCardUpdate = System.currentTimeMillis();
+            var accumulated = new ReplyBuffer();
+            // 只有读到结束事件的回答才是完整的；连接提前断开或上游报错时流会在此之前结束
+            boolean completed = false;
+            long lastCardSubmit = System.currentTimeMillis();
             long lastLogTime = System.currentTimeMillis();
             int lastLogChars = 0;
-            var cardUpdating = new AtomicBoolean(false);
 
-            try (var reader = new BufferedReader(
-                    new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            try (upstream) {
                 String line;
-                while ((line = reader.readLine()) != null) {
+                while ((line = upstream.readLine()) != null) {
+                    if (handle.isCancelled()) break;
                     sseLineCount++;
 
                     if (sseLineCount <= 3) {
                         log.debug("[streaming] SSE 原始行 [{}]: {}", sseLineCount, line);
                     }
 
-                    if (!line.startsWith("data:")) continue;
-
-                    String data = line.substring(line.startsWith("data: ") ? 6 : 5).trim();
-                    if (data.isEmpty()) continue;
+                    String data = StreamingProvider.sseData(line);
+                    if (data == null) continue;
 
-                    streamingProvider.onStreamData(openId, data);
+                    StreamEvent event = decoder.decode(openId, data);
 
-                    if (streamingProvider.isDone(data)) {
+                    if (event.type() == StreamEvent.Type.DONE) {
                         log.debug("[streaming] SSE 流结束信号");
+                        completed = true;
                         break;
                     }
 
-                    String reasoning = streamingProvider.parseReasoningChunk(data);
-                    if (reasoning != null && !reasoning.isEmpty()) {
+                    if (event.reasoning() != null) {
                         reasoningChunks++;
-                        reasoningChars += reasoning.length();
+                        reasoningChars += event.reasoning().length();
+                    }
+                    if (event.type() == StreamEvent.Type.REASONING) {
                         long now = System.currentTimeMillis();
                         if (now - lastLogTime >= LOG_INTERVAL_MS) {
                             log.info("[streaming] 模型思考中: reasoning_chunks={}, reasoning_chars={}, 已耗时={}ms",
                                     reasoningChunks, reasoningChars, now - startTime);
                             lastLogTime = now;
                         }
+                        continue;
                     }
 
-                    String chunk = streamingProvider.parseChunk(data);
-                    if (chunk == null || chunk.isEmpty()) continue;
+                    if (event.type() != StreamEvent.Type.CONTENT) continue;
+                    String chunk = event.text();
 
                     long chunkTime = System.currentTimeMillis();
                     contentChunks++;
@@ -182,6 +278,7 @@ public class StreamingReplyService {
 
                     if (firstContentTime == 0) {
                         firstContentTime = chunkTime;
+                        metrics.recordTtft(firstContentTime - startTime);
                         log.info("[streaming] 首个内容到达: TTFT={}ms, 思考阶段 reasoning_chunks={}, reasoning_chars={}",
                                 firstContentTime - startTime, reasoningChunks, reasoningChars);
                     }
@@ -205,34 +302,39 @@ public class StreamingReplyService {
                         String firstContent = accumulated.toString();
                         String theOpenId = openId;
                         String theMsgId = userMessageId;
-                        messageIdFuture = CompletableFuture.supplyAsync(() ->
+                        messageIdFuture = executors.supplyFeishuApi(() ->
                                 sendFirstCard(theOpenId, theMsgId, firstContent));
-                        lastCardUpdate = chunkTime;
+                        lastCardSubmit = chunkTime;
                     } else if (messageIdFuture.isDone()
-                            && chunkTime - lastCardUpdate >= CARD_UPDATE_INTERVAL_MS
-                            && !cardUpdating.get()) {
+                            && chunkTime - lastCardSubmit >= CARD_SUBMIT_INTERVAL_MS) {
                         String msgId = messageIdFuture.getNow(null);
                         if (msgId != null) {
-                            String content = accumulated.toString();
-                            cardUpdating.set(true);
-                            CompletableFuture.runAsync(() -> {
-                                safeUpdateCard(msgId, content);
-                                cardUpdating.set(false);
-                            });
-                            lastCardUpdate = chunkTime;
+                            cardScheduler.submit(msgId, accumulated.snapshot());
+                            lastCardSubmit = chunkTime;
                         }
                     }
                 }
             }
+            // 被新消息取代时上游流会被关闭，readLine 可能正常返回 null
+            if (handle.isCancelled()) throw new CancellationException("superseded");
 
             // --- 最终更新 ---
             if (messageIdFuture != null) {
                 replyMessageId = messageIdFuture.get(10, TimeUnit.SECONDS);
                 if (replyMessageId != null && !accumulated.isEmpty()) {
-                    for (int i = 0; i < 100 && cardUpdating.get(); i++) {
-                        Thread.sleep(20);
+                    String finalContent = accumulated.toString();
+                    boolean delivered = awaitFinalUpdate(replyMessageId, finalContent);
+                    if (cacheKey != null && completed && delivered) {
+                        responseCache.put(cacheKey, finalContent);
+                    } else if (cacheKey != null) {
+                        log.info("[cache] 回答未完整结束或最终更新失败，不写入缓存: completed={}, delivered={}",
+                                completed, delivered);
+                    }
+                    messageCache.put(replyMessageId, new MessageCache.CachedMessage(
+                            "assistant", finalContent, useReplyMode ? userMessageId : null));
+                    if (memoryEnabled && threadId != null) {
+                        threadMemoryStore.updateMessage(threadId, replyMessageId, finalContent);
                     }
-                    safeUpdateCard(replyMessageId, accumulated.toString());
                 }
             } else {
                 log.warn("[streaming] 流式响应无内容，共读取 {} 行 SSE 数据", sseLineCount);
@@ -263,6 +365,8 @@ public class StreamingReplyService {
             log.info("[streaming]   突发chunks    : {} (间隔<50ms)", burstChunks);
             log.info("[streaming]   间隔chunks    : {} (间隔≥50ms, 最大间隔={}ms)", gapChunks, maxGapMs);
             log.info("[streaming] =======================");
+            metrics.recordReply("success", totalMs, contentChunks, contentChars,
+                    reasoningChunks, reasoningChars, burstChunks, gapChunks, maxGapMs, contentSpeed);
 
             // --- 对话日志 ---
             saveConversationLog(openId, userQuery, userMessageId, parentId, threadId,
@@ -273,16 +377,63 @@ public class StreamingReplyService {
                     overallSpeed, contentSpeed);
 
         } catch (Exception e) {
-            log.error("[streaming] 回复失败: openId={}", openId, e);
             long totalMs = System.currentTimeMillis() - startTime;
+            if (handle.isCancelled()) {
+                log.info("[streaming] 回复已被同一用户的新消息取代，停止读取与卡片更新: openId={}, chars={}",
+                        openId, contentChars);
+            } else {
+                log.error("[streaming] 回复失败: openId={}", openId, e);
+                metrics.recordError(httpStatus > 0 ? String.valueOf(httpStatus)
+                        : e instanceof HttpTimeoutException || e instanceof TimeoutException ? "timeout" : "exception");
+            }
+            metrics.recordReply(handle.isCancelled() ? "superseded" : "error", totalMs,
+                    contentChunks, contentChars, reasoningChunks, reasoningChars,
+                    burstChunks, gapChunks, maxGapMs, 0);
+            if (messageIdFuture != null) {
+                // 首张卡片可能仍在发送中，发送完成后同样取消其更新
+                messageIdFuture.thenAccept(msgId -> {
+                    if (msgId != null) cardScheduler.cancel(msgId);
+                });
+            }
             saveConversationLog(openId, userQuery, userMessageId, parentId, threadId,
-                    historySource, history, requestUrl, httpStatus, errorBody != null ? errorBody : e.getMessage(),
+                    historySource, history, requestUrl, httpStatus,
+                    errorBody != null ? errorBody : handle.isCancelled() ? "superseded" : e.getMessage(),
                     null, null,
                     totalMs, -1, contentChunks, contentChars,
                     reasoningChunks, reasoningChars, sseLineCount, 0, 0);
         }
     }
 
+    /**
+     * 回放缓存的回答：首张卡片先展示开头一段，其余内容走正常的最终更新，不请求上游。
+     */
+    private void replayCachedReply(String openId, String userQuery, String userMessageId,
+                                   String parentId, String threadId, String answer, long startTime) {
+        String replyMessageId = sendFirstCard(openId, userMessageId, ResponseCache.firstSegment(answer));
+        long firstCardMs = System.currentTimeMillis() - startTime;
+        if (replyMessageId == null) {
+            metrics.recordReply("error", firstCardMs, 0, 0, 0, 0, 0, 0, 0, 0);
+            saveConversationLog(openId, userQuery, userMessageId, parentId, threadId,
+                    "none", List.of(), null, -1, "send cached reply failed", null, null,
+                    firstCardMs, -1, 0, 0, 0, 0, 0, 0, 0);
+            return;
+        }
+        awaitFinalUpdate(replyMessageId, answer);
+        messageCache.put(replyMessageId, new MessageCache.CachedMessage(
+                "assistant", answer, useReplyMode ? userMessageId : null));
+        if (memoryEnabled && threadId != null) {
+            threadMemoryStore.updateMessage(threadId, replyMessageId, answer);
+        }
+
+        long totalMs = System.currentTimeMillis() - startTime;
+        log.info("[streaming] 命中响应缓存: openId={}, chars={}, 首卡片={}ms, 总耗时={}ms",
+                openId, answer.length(), firstCardMs, totalMs);
+        metrics.recordReply("cached", totalMs, 0, answer.length(), 0, 0, 0, 0, 0, 0);
+        saveConversationLog(openId, userQuery, userMessageId, parentId, threadId,
+                "none", List.of(), null, 200, null, answer, replyMessageId,
+                totalMs, firstCardMs, 0, answer.length(), 0, 0, 0, 0, 0);
+    }
+
     private void saveConversationLog(String openId, String userQuery,
                                      String userMessageId, String parentId, String threadId,
                                      String historySource, List<Map<String, String>> history,
@@ -293,62 +444,12 @@ public class StreamingReplyService {
                                      int reasoningChunks, int reasoningChars,
                                      int sseLines, double overallSpeed, double contentSpeed) {
         if (logService == null) return;
-        try {
-            var data = new LinkedHashMap<String, Object>();
-            data.put("timestamp", Instant.now().toString());
-            data.put("openId", openId);
-            data.put("userMessageId", userMessageId);
-            data.put("parentId", parentId);
-            data.put("threadId", threadId);
-            data.put("userQuery", userQuery);
-
-            data.put("config", Map.of(
-                    "provider", providerType,
-                    "replyMode", useReplyMode,
-                    "memoryEnabled", memoryEnabled,
-                    "memoryMaxMessages", memoryMaxMessages == Integer.MAX_VALUE ? "unlimited" : memoryMaxMessages
-            ));
-
-            var historyMap = new LinkedHashMap<String, Object>();
-            historyMap.put("source", historySource);
-            historyMap.put("sourceId", "thread".equals(historySource) ? threadId
-                    : "reply_chain".equals(historySource) ? parentId : null);
-            historyMap.put("count", history.size());
-            historyMap.put("messages", history);
-            data.put("history", historyMap);
-
-            var requestMap = new LinkedHashMap<String, Object>();
-            requestMap.put("url", requestUrl);
-            data.put("request", requestMap);
-
-            var responseMap = new LinkedHashMap<String, Object>();
-            responseMap.put("httpStatus", httpStatus);
-            responseMap.put("aiReply", aiReply);
-            responseMap.put("error", error);
-            data.put("response", responseMap);
-
-            data.put("metrics", Map.of(
-                    "totalMs", totalMs,
-                    "ttftMs", ttftMs,
-                    "contentChunks", contentChunks,
-                    "contentChars", contentChars,
-                    "reasoningChunks", reasoningChunks,
-                    "reasoningChars", reasoningChars,
-                    "sseLines", sseLines,
-                    "overallSpeed", String.format("%.1f 字/秒", overallSpeed),
-                    "contentSpeed", String.format("%.1f 字/秒", contentSpeed)
-            ));
-
-            var resultMap = new LinkedHashMap<String, Object>();
-            resultMap.put("replyMessageId", replyMessageId);
-            resultMap.put("mode", useReplyMode ? "reply" : "send");
-            resultMap.put("success", error == null && aiReply != null);
-            data.put("result", resultMap);
-
-            logService.save(data);
-        } catch (Exception e) {
-            log.warn("[conv-log] 构建对话日志失败", e);
-        }
+        logService.save(new ConversationRecord(System.currentTimeMillis(),
+                openId, userMessageId, parentId, threadId, userQuery,
+                providerType, useReplyMode, memoryEnabled, memoryMaxMessages,
+                historySource, history, requestUrl, httpStatus, error, aiReply, replyMessageId,
+                totalMs, ttftMs, contentChunks, contentChars, reasoningChunks, reasoningChars,
+                sseLines, overallSpeed, contentSpeed));
     }
 
     /**
@@ -356,21 +457,12 @@ public class StreamingReplyService {
      * 返回新消息的 messageId，失败返回 null。
      */
     private String sendFirstCard(String openId, String userMessageId, String content) {
-        var card = FeishuApiService.buildMarkdownCard(content);
         try {
-            if (useReplyMode && userMessageId != null) {
-                var resp = feishuApi.replyMessage(userMessageId, "interactive", card);
-                if (resp.success()) {
-                    return resp.getData().getMessageId();
-                }
-                log.error("[streaming] 回复卡片失败: code={}, msg={}", resp.getCode(), resp.getMsg());
-            } else {
-                var resp = feishuApi.sendMessage(openId, "open_id", "interactive", card);
-                if (resp.success()) {
-                    return resp.getData().getMessageId();
-                }
-                log.error("[streaming] 创建卡片失败: code={}, msg={}", resp.getCode(), resp.getMsg());
+            String messageId = cardEngine.send(openId, useReplyMode ? userMessageId : null, content);
+            if (messageId == null) {
+                log.error("[streaming] 发送首张卡片失败: openId={}", openId);
             }
+            return messageId;
         } catch (Exception e) {
             log.error("[streaming] 发送卡片异常", e);
         }
@@ -379,23 +471,26 @@ public class StreamingReplyService {
 
     private void sendErrorCard(String openId, String userMessageId, String errorText) {
         try {
-            var card = FeishuApiService.buildMarkdownCard(errorText);
-            if (useReplyMode && userMessageId != null) {
-                feishuApi.replyMessage(userMessageId, "interactive", card);
-            } else {
-                feishuApi.sendMessage(openId, "open_id", "interactive", card);
-            }
+            feishuApi.sendInteractive(openId, useReplyMode ? userMessageId : null,
+                    FeishuApiService.buildMarkdownCard(errorText));
         } catch (Exception e) {
             log.error("[streaming] 发送错误卡片失败", e);
         }
     }
 
-    private void safeUpdateCard(String messageId, String content) {
+    /**
+     * @return 最终内容是否已成功更新到卡片
+     */
+    private boolean awaitFinalUpdate(String messageId, String content) {
         try {
-            feishuApi.patchMessage(messageId, FeishuApiService.buildMarkdownCard(content));
+            return cardScheduler.complete(messageId, content).get(CARD_FINAL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.warn("[streaming] 最终卡片更新超时: messageId={}", messageId);
+            cardScheduler.cancel(messageId);
         } catch (Exception e) {
-            log.warn("[streaming] 卡片更新失败: messageId={}", messageId, e);
+            log.warn("[streaming] 最终卡片更新失败: messageId={}", messageId, e);
         }
+        return false;
     }
 
     private static String truncate(String s, int maxLen) {
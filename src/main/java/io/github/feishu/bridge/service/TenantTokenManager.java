@@ -0,0 +1,210 @@
+package io.github.feishu.bridge.service;
+
+import com.lark.oapi.Client;
+import com.lark.oapi.core.utils.Jsons;
+import com.lark.oapi.service.auth.v3.model.InternalTenantAccessTokenReq;
+import com.lark.oapi.service.auth.v3.model.InternalTenantAccessTokenReqBody;
+import io.github.feishu.bridge.config.FeishuProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * tenant_access_token 管理：缓存到临近过期，过期前在后台提前刷新，
+ * 并发调用方共享同一次刷新（single-flight）。
+ */
+@Slf4j
+@Service
+public class TenantTokenManager {
+
+    /** 距过期不足该时长即视为不可用，调用方需等待刷新 */
+    private static final long EXPIRY_SKEW_MS = TimeUnit.MINUTES.toMillis(1);
+    /** 距过期该时长时在后台提前刷新（飞书在剩余 30 分钟内会下发新 token） */
+    private static final long REFRESH_AHEAD_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long MIN_REFRESH_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long FETCH_TIMEOUT_SECONDS = 15;
+
+    private final Client feishuClient;
+    private final FeishuProperties feishuProperties;
+    private final long fetchTimeoutMs;
+
+    private final AtomicReference<CompletableFuture<Token>> inflight = new AtomicReference<>();
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "tenant-token-refresher");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService fetcher = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("tenant-token-fetch-", 0).factory());
+    private volatile Token cached;
+    private volatile ScheduledFuture<?> scheduledRefresh;
+
+    @Autowired
+    public TenantTokenManager(Client feishuClient, FeishuProperties feishuProperties) {
+        this(feishuClient, feishuProperties, TimeUnit.SECONDS.toMillis(FETCH_TIMEOUT_SECONDS));
+    }
+
+    TenantTokenManager(Client feishuClient, FeishuProperties feishuProperties, long fetchTimeoutMs) {
+        this.feishuClient = feishuClient;
+        this.feishuProperties = feishuProperties;
+        this.fetchTimeoutMs = fetchTimeoutMs;
+    }
+
+    /**
+     * @param value    token 值
+     * @param expireAt 过期时间（epoch 毫秒）
+     */
+    public record Token(String value, long expireAt) {
+
+        /** 剩余有效期（秒） */
+        public long remainingSeconds() {
+            return Math.max(0, (expireAt - System.currentTimeMillis()) / 1000);
+        }
+    }
+
+    /**
+     * 飞书鉴权接口返回错误时抛出，保留原始 code/msg。
+     */
+    @Getter
+    public static class TokenException extends RuntimeException {
+        private final int code;
+        private final String msg;
+
+        public TokenException(int code, String msg) {
+            super("获取 tenant_access_token 失败: code=" + code + ", msg=" + msg);
+            this.code = code;
+            this.msg = msg;
+        }
+    }
+
+    /**
+     * 返回可用的 token；缓存有效时不发起任何网络请求。
+     */
+    public Token getToken() throws Exception {
+        Token t = cached;
+        if (t != null && System.currentTimeMillis() < t.expireAt() - EXPIRY_SKEW_MS) {
+            return t;
+        }
+        try {
+            return refresh().get(fetchTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * API 报告 token 失效时调用：仅当缓存的仍是这个 token 时才作废，避免把别人刚刷新好的 token 丢掉。
+     */
+    public void invalidate(String token) {
+        Token t = cached;
+        if (t != null && t.value().equals(token)) {
+            cached = null;
+            log.info("[token] tenant_access_token 已失效，下次调用将重新获取");
+        }
+    }
+
+    /**
+     * single-flight 刷新：已有刷新在进行时直接复用其结果。
+     * 请求在独立的虚拟线程中执行并带超时，发起刷新的调用方和复用的调用方等待的是同一个 future。
+     */
+    private CompletableFuture<Token> refresh() {
+        while (true) {
+            CompletableFuture<Token> running = inflight.get();
+            if (running != null) return running;
+
+            var mine = new CompletableFuture<Token>();
+            if (!inflight.compareAndSet(null, mine)) continue;
+            try {
+                // 发起刷新的调用方同样只等待 fetchTimeoutMs，超时后放弃这次请求，下一个调用方重新发起
+                CompletableFuture.supplyAsync(this::fetchUnchecked, fetcher)
+                        .orTimeout(fetchTimeoutMs, TimeUnit.MILLISECONDS)
+                        .whenComplete((t, e) -> {
+                            if (e == null) {
+                                cached = t;
+                                scheduleRefresh(t);
+                            }
+                            inflight.compareAndSet(mine, null);
+                            if (e == null) {
+                                mine.complete(t);
+                            } else {
+                                mine.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                                        ? e.getCause() : e);
+                            }
+                        });
+            } catch (RejectedExecutionException e) {
+                inflight.compareAndSet(mine, null);
+                mine.completeExceptionally(e);
+            }
+            return mine;
+        }
+    }
+
+    private void scheduleRefresh(Token t) {
+        ScheduledFuture<?> previous = scheduledRefresh;
+        if (previous != null) previous.cancel(false);
+        long delay = Math.max(MIN_REFRESH_DELAY_MS, t.expireAt() - REFRESH_AHEAD_MS - System.currentTimeMillis());
+        scheduledRefresh = refresher.schedule(() -> {
+            try {
+                refresh().join();
+                log.debug("[token] 后台提前刷新 tenant_access_token 完成");
+            } catch (Exception e) {
+                log.warn("[token] 后台刷新 tenant_access_token 失败，将在调用时重试", e);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private Token fetchUnchecked() {
+        try {
+            return fetch();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Token fetch() throws Exception {
+        var tokenReq = InternalTenantAccessTokenReq.newBuilder()
+                .internalTenantAccessTokenReqBody(InternalTenantAccessTokenReqBody.newBuilder()
+                        .appId(feishuProperties.getAppId())
+                        .appSecret(feishuProperties.getAppSecret())
+                        .build())
+                .build();
+
+        var resp = feishuClient.auth().v3().tenantAccessToken().internal(tokenReq);
+        if (!resp.success()) {
+            throw new TokenException(resp.getCode(), resp.getMsg());
+        }
+
+        // tenant_access_token 和 expire 在原始响应顶层，不在 data 中
+        String rawBody = new String(resp.getRawResponse().getBody(), StandardCharsets.UTF_8);
+        Map<String, Object> parsed = Jsons.DEFAULT.fromJson(rawBody, Map.class);
+        String value = (String) parsed.get("tenant_access_token");
+        long expireSeconds = parsed.get("expire") instanceof Number n ? n.longValue() : 0;
+        log.info("[token] 已获取 tenant_access_token，有效期 {}s", expireSeconds);
+        return new Token(value, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expireSeconds));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+        fetcher.shutdownNow();
+    }
+}
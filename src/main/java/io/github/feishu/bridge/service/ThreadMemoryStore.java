@@ -0,0 +1,234 @@
+package io.github.feishu.bridge.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.feishu.bridge.config.StreamingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 话题（thread）级会话记忆：保存已解码的历史消息，每轮只需增量拉取上次之后的新消息。
+ * 内存中按话题 LRU 淘汰，单个话题按字符数上限丢弃最早的消息；
+ * store=file 时同时落盘，服务重启后可直接从本地文件恢复。
+ */
+@Slf4j
+@Service
+public class ThreadMemoryStore {
+
+    public record Entry(String messageId, String role, String content, long createTime) {
+    }
+
+    /**
+     * 落盘格式
+     *
+     * @param boundaryIds 与 lastCreateTime 同一秒内已处理过的消息 ID（按秒增量拉取时用于去重）
+     */
+    record Snapshot(long lastCreateTime, List<String> boundaryIds, List<Entry> entries) {
+    }
+
+    /**
+     * 单个话题的历史，按时间正序。调用方需持有 {@link #lock()} 读写。
+     */
+    public static final class ThreadHistory {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+        private final Set<String> boundaryIds = new HashSet<>();
+        private long lastCreateTime;
+        private long totalChars;
+
+        /**
+         * 保护本话题历史的锁。增量拉取在持锁期间分页请求飞书 API，
+         * 不能用 synchronized，否则虚拟线程阻塞在网络 IO 上时会钉住载体线程。
+         */
+        public ReentrantLock lock() {
+            return lock;
+        }
+
+        /** 已处理过的最新消息创建时间（毫秒），0 表示从未拉取 */
+        public long lastCreateTime() {
+            return lastCreateTime;
+        }
+
+        public boolean contains(String messageId) {
+            return entries.containsKey(messageId) || boundaryIds.contains(messageId);
+        }
+
+        /**
+         * 消息是否已处理过：仍在记忆或边界中，或早于游标所在的秒（处理过后可能已被裁剪）。
+         */
+        public boolean isProcessed(String messageId, long createTime) {
+            return contains(messageId) || (lastCreateTime > 0 && createTime / 1000 < lastCreateTime / 1000);
+        }
+
+        /**
+         * 记录一条新消息；content 为空的消息只推进游标，不占用记忆。
+         * 早于游标所在秒的消息此前已经处理过（可能已被裁剪），直接丢弃：
+         * 话题容器的 list messages 不支持 start_time，服务端每次都会从头返回整个话题。
+         *
+         * @return 是否为新消息
+         */
+        public boolean append(String messageId, String role, String content, long createTime) {
+            if (isProcessed(messageId, createTime)) return false;
+            if (createTime / 1000 > lastCreateTime / 1000) {
+                boundaryIds.clear();
+            }
+            lastCreateTime = Math.max(lastCreateTime, createTime);
+            // 与游标同一秒的消息都记入边界，下一轮按秒拉取时靠它去重
+            boundaryIds.add(messageId);
+            if (content == null || content.isBlank()) return true;
+            entries.put(messageId, new Entry(messageId, role, content, createTime));
+            totalChars += content.length();
+            return true;
+        }
+
+        /**
+         * 替换已记录消息的内容（如流式卡片在拉取后才写完最终内容）。
+         */
+        public void replace(String messageId, String content) {
+            Entry old = entries.get(messageId);
+            if (old == null || content == null) return;
+            entries.put(messageId, new Entry(messageId, old.role(), content, old.createTime()));
+            totalChars += content.length() - old.content().length();
+        }
+
+        /**
+         * 超过字符上限时丢弃最早的消息，至少保留最新一条。
+         */
+        void trim(int maxChars) {
+            if (maxChars <= 0) return;
+            Iterator<Entry> it = entries.values().iterator();
+            while (totalChars > maxChars && entries.size() > 1 && it.hasNext()) {
+                totalChars -= it.next().content().length();
+                it.remove();
+            }
+        }
+
+        /**
+         * 返回最近 maxMessages 条历史，每条包含 "role" 和 "content"。
+         */
+        public List<Map<String, String>> tail(int maxMessages) {
+            int skip = Math.max(0, entries.size() - maxMessages);
+            var result = new ArrayList<Map<String, String>>(entries.size() - skip);
+            for (Entry e : entries.values()) {
+                if (skip-- > 0) continue;
+                result.add(Map.of("role", e.role(), "content", e.content()));
+            }
+            return result;
+        }
+
+        Snapshot snapshot() {
+            return new Snapshot(lastCreateTime, List.copyOf(boundaryIds), List.copyOf(entries.values()));
+        }
+
+        static ThreadHistory restore(Snapshot snapshot) {
+            var history = new ThreadHistory();
+            for (Entry e : snapshot.entries()) {
+                history.entries.put(e.messageId(), e);
+                history.totalChars += e.content().length();
+            }
+            history.lastCreateTime = snapshot.lastCreateTime();
+            history.boundaryIds.addAll(snapshot.boundaryIds());
+            return history;
+        }
+    }
+
+    private final Cache<String, ThreadHistory> threads;
+    private final int maxCharsPerThread;
+    private final Path storeDir;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public ThreadMemoryStore(StreamingProperties props) {
+        var memory = props.getMemory();
+        this.maxCharsPerThread = memory.getMaxCharsPerThread();
+        this.threads = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, memory.getMaxThreads()))
+                .build();
+
+        Path dir = null;
+        if ("file".equalsIgnoreCase(memory.getStore())) {
+            dir = Path.of(memory.getStoreDir());
+            try {
+                Files.createDirectories(dir);
+                log.info("[memory] 话题记忆持久化到本地文件: {}", dir.toAbsolutePath());
+            } catch (IOException e) {
+                log.error("[memory] 创建话题记忆目录失败，退回纯内存模式: {}", dir, e);
+                dir = null;
+            }
+        }
+        this.storeDir = dir;
+    }
+
+    /**
+     * 取得话题历史：先查内存，file 模式下再查本地文件，都没有则新建空历史。
+     */
+    public ThreadHistory acquire(String threadId) {
+        return threads.get(threadId, this::load);
+    }
+
+    /**
+     * 一轮增量拉取结束后调用：按字符上限裁剪，file 模式下写回本地文件。
+     */
+    public void save(String threadId, ThreadHistory history) {
+        Snapshot snapshot;
+        history.lock().lock();
+        try {
+            history.trim(maxCharsPerThread);
+            if (storeDir == null) return;
+            snapshot = history.snapshot();
+        } finally {
+            history.lock().unlock();
+        }
+        Path file = fileOf(threadId);
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            mapper.writeValue(tmp.toFile(), snapshot);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("[memory] 写入话题记忆失败: threadId={}", threadId, e);
+        }
+    }
+
+    /**
+     * 回复结束后写入最终内容；只更新已在记忆中的消息，未拉取到的由下一轮增量拉取补上。
+     */
+    public void updateMessage(String threadId, String messageId, String content) {
+        ThreadHistory history = threads.getIfPresent(threadId);
+        if (history == null) return;
+        history.lock().lock();
+        try {
+            history.replace(messageId, content);
+        } finally {
+            history.lock().unlock();
+        }
+    }
+
+    private ThreadHistory load(String threadId) {
+        if (storeDir == null) return new ThreadHistory();
+        Path file = fileOf(threadId);
+        if (!Files.exists(file)) return new ThreadHistory();
+        try {
+            return ThreadHistory.restore(mapper.readValue(file.toFile(), Snapshot.class));
+        } catch (IOException e) {
+            log.warn("[memory] 读取话题记忆失败，重新拉取: threadId={}", threadId, e);
+            return new ThreadHistory();
+        }
+    }
+
+    private Path fileOf(String threadId) {
+        return storeDir.resolve(threadId.replaceAll("[^A-Za-z0-9_-]", "_") + ".json");
+    }
+}
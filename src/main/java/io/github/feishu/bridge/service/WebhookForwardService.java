@@ -2,70 +2,148 @@ package io.github.feishu.bridge.service;
 
 import com.lark.oapi.core.utils.Jsons;
 import io.github.feishu.bridge.config.FeishuProperties;
-import lombok.RequiredArgsConstructor;
+import io.github.feishu.bridge.config.HttpClients;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import java.net.URI;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
+/**
+ * 将飞书事件转发到所有 webhook 地址。每个地址独立排队、并行发送（见 {@link WebhookTarget}），
+ * 调用方只负责序列化和入队，不会被慢下游阻塞。
+ * 开启 outbox 时事件先写入本地文件（见 {@link WebhookOutbox}），各地址按自己的偏移投递，失败重试不丢事件。
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class WebhookForwardService {
 
-    private final FeishuProperties feishuProperties;
-    private final HttpClient httpClient;
+    private final List<WebhookTarget> targets = new ArrayList<>();
+    private final List<WebhookTarget.MemorySource> memorySources = new ArrayList<>();
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "webhook-retry");
+        t.setDaemon(true);
+        return t;
+    });
+    private final WebhookOutbox outbox;
 
-    @Async
-    public void forwardEvent(String eventType, Object payload) {
-        forward("event", eventType, payload);
+    public WebhookForwardService(FeishuProperties feishuProperties, HttpClients httpClients) {
+        HttpClient httpClient = httpClients.webhook();
+        var webhook = feishuProperties.getWebhook();
+        List<String> urls = webhook.getUrls() == null ? List.of() : webhook.getUrls().stream()
+                .filter(url -> url != null && !url.isBlank())
+                .map(String::trim)
+                .distinct()
+                .toList();
+
+        try {
+            this.outbox = webhook.getOutbox().isEnabled() && !urls.isEmpty()
+                    ? new WebhookOutbox(Path.of(webhook.getOutbox().getDir()), webhook.getOutbox().getSegmentBytes())
+                    : null;
+            if (outbox != null && webhook.getRetry().resolveMaxAttempts(true) > 0) {
+                log.warn("[outbox] 已配置 max-attempts={}，超过次数仍失败的事件会被确认并丢弃",
+                        webhook.getRetry().getMaxAttempts());
+            }
+
+            for (String url : urls) {
+                WebhookTarget.Source source;
+                if (outbox != null) {
+                    source = outbox.openCursor(cursorName(url));
+                } else {
+                    var memorySource = new WebhookTarget.MemorySource(webhook.getQueueCapacity());
+                    memorySources.add(memorySource);
+                    source = memorySource;
+                }
+                boolean batched = webhook.getBatch().getUrls().stream()
+                        .anyMatch(u -> u != null && u.trim().equals(url));
+                var target = new WebhookTarget(url, httpClient, source, webhook.getMaxConcurrency(),
+                        Duration.ofSeconds(webhook.getTimeoutSeconds()), webhook.getRetry(), retryScheduler,
+                        batched ? webhook.getBatch() : null);
+                if (batched) {
+                    log.info("webhook 批量投递已开启: url={}, maxEvents={}, lingerMs={}, format={}, gzip={}", url,
+                            webhook.getBatch().getMaxEvents(), webhook.getBatch().getLingerMs(),
+                            webhook.getBatch().getFormat(), webhook.getBatch().isGzip());
+                }
+                target.start();
+                targets.add(target);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("初始化 webhook outbox 失败", e);
+        }
     }
 
-    @Async
-    public void forwardCardAction(Object payload) {
-        forward("card_action", "card_action_trigger", payload);
+    /**
+     * @param payloadJson 飞书推送的原始事件 JSON，原样嵌入信封，不重新序列化
+     */
+    public void forwardEvent(String eventType, String payloadJson) {
+        forward("event", eventType, payloadJson);
     }
 
-    private void forward(String type, String eventType, Object payload) {
-        List<String> urls = feishuProperties.getWebhook().getUrls();
-        if (urls == null || urls.isEmpty()) {
+    public void forwardCardAction(String payloadJson) {
+        forward("card_action", "card_action_trigger", payloadJson);
+    }
+
+    /**
+     * 每个 webhook 目标的队列深度、丢弃数、重试数、延迟等统计。
+     */
+    public List<Map<String, Object>> stats() {
+        return targets.stream().map(WebhookTarget::stats).toList();
+    }
+
+    private void forward(String type, String eventType, String payloadJson) {
+        if (targets.isEmpty()) {
             log.warn("webhook URL 未配置，跳过转发: type={}", type);
             return;
         }
 
-        Map<String, Object> body = Map.of(
-                "type", type,
-                "event_type", eventType,
-                "timestamp", Instant.now().toEpochMilli(),
-                "payload", payload
-        );
-
-        String json = Jsons.DEFAULT.toJson(body);
-
-        for (String url : urls) {
-            if (url == null || url.isBlank()) {
-                continue;
-            }
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .header("Content-Type", "application/json")
-                        .POST(HttpRequest.BodyPublishers.ofString(json))
-                        .timeout(Duration.ofSeconds(30))
-                        .build();
-                httpClient.send(request, HttpResponse.BodyHandlers.discarding());
-                log.info("webhook 转发成功: type={}, event_type={}, url={}", type, eventType, url);
-            } catch (Exception e) {
-                log.error("webhook 转发失败: type={}, url={}", type, url, e);
+        String json = envelope(type, eventType, payloadJson);
+        if (outbox != null) {
+            outbox.append(json);
+            return;
+        }
+        for (var source : memorySources) {
+            if (!source.offer(json)) {
+                log.warn("webhook 队列已满，丢弃事件: type={}, event_type={}", type, eventType);
             }
         }
     }
+
+    /**
+     * 拼接转发信封，payload 直接使用原始 JSON 文本。
+     */
+    private static String envelope(String type, String eventType, String payloadJson) {
+        return new StringBuilder(payloadJson.length() + 128)
+                .append("{\"type\":").append(Jsons.DEFAULT.toJson(type))
+                .append(",\"event_type\":").append(Jsons.DEFAULT.toJson(eventType))
+                .append(",\"timestamp\":").append(Instant.now().toEpochMilli())
+                .append(",\"payload\":").append(payloadJson)
+                .append('}')
+                .toString();
+    }
+
+    /**
+     * 由 URL 生成稳定的文件名，作为该目标在 outbox 中的偏移文件名。
+     */
+    private static String cursorName(String url) {
+        String readable = url.replaceAll("[^A-Za-z0-9]", "_");
+        if (readable.length() > 80) readable = readable.substring(0, 80);
+        return readable + "_" + Integer.toHexString(url.hashCode());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        targets.forEach(WebhookTarget::stop);
+        retryScheduler.shutdownNow();
+        if (outbox != null) outbox.close();
+    }
 }
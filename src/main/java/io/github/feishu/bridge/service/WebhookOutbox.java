@@ -0,0 +1,457 @@
+package io.github.feishu.bridge.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本地 append-only outbox：事件先顺序写入 segment 文件再投递，下游故障或服务重启都不丢事件。
+ * <ul>
+ *   <li>单个后台线程批量写入，每批只 fsync 一次；写入队列有界，写盘跟不上时阻塞追加方，写入失败时保留该批按退避重试；</li>
+ *   <li>记录格式为 [4 字节长度][UTF-8 JSON]，位置是跨 segment 的全局字节偏移，segment 文件名即其起始偏移；</li>
+ *   <li>每个 webhook 目标一个 {@link Cursor}，投递确认后推进并持久化自己的偏移，所有目标都确认过的 segment 会被删除。</li>
+ * </ul>
+ * 游标在投递目标的虚拟线程上读文件，锁一律用 ReentrantLock，避免持有 monitor 做 IO 时钉住载体线程。
+ */
+@Slf4j
+class WebhookOutbox {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_BATCH = 1024;
+    private static final int MAX_QUEUED = 16 * MAX_BATCH;
+    private static final long OFFSET_PERSIST_INTERVAL_MS = 200;
+    private static final long MIN_RETRY_DELAY_MS = 100;
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+
+    private final Path dir;
+    private final Path offsetDir;
+    private final long segmentBytes;
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final LinkedBlockingQueue<byte[]> appendQueue = new LinkedBlockingQueue<>(MAX_QUEUED);
+    private final List<Cursor> cursors = new CopyOnWriteArrayList<>();
+    private final ReentrantLock dataLock = new ReentrantLock();
+    private final Condition dataAppended = dataLock.newCondition();
+    private final Thread writer;
+
+    /** 已落盘（fsync）的末尾位置，游标只读取此位置之前的数据 */
+    private volatile long endPosition;
+    private volatile boolean running = true;
+    private FileChannel writeChannel;
+    private long writeSegmentBase;
+
+    WebhookOutbox(Path dir, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.offsetDir = dir.resolve("offsets");
+        this.segmentBytes = Math.max(1024, segmentBytes);
+        Files.createDirectories(offsetDir);
+        recover();
+        this.writer = Thread.ofPlatform().daemon().name("webhook-outbox-writer").start(this::writeLoop);
+        log.info("[outbox] webhook outbox 已启用: dir={}, segments={}, end={}",
+                dir.toAbsolutePath(), segments.size(), endPosition);
+    }
+
+    /**
+     * 追加一条事件，由后台线程批量落盘，调用方不等待 IO；写入队列已满时阻塞到有空位（背压），不丢弃事件。
+     */
+    void append(String json) {
+        byte[] record = json.getBytes(StandardCharsets.UTF_8);
+        try {
+            if (appendQueue.offer(record)) return;
+            log.warn("[outbox] 写入队列已满（{} 条），等待落盘", MAX_QUEUED);
+            while (!appendQueue.offer(record, 100, TimeUnit.MILLISECONDS)) {
+                if (!running) {
+                    log.error("[outbox] outbox 已关闭，丢弃事件");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("[outbox] 等待写入队列时被中断，丢弃事件");
+        }
+    }
+
+    /**
+     * 为一个 webhook 目标打开游标；首次出现的目标从当前末尾开始，不回放历史事件。
+     */
+    Cursor openCursor(String name) throws IOException {
+        Path offsetFile = offsetDir.resolve(name + ".offset");
+        long start = endPosition;
+        if (Files.exists(offsetFile)) {
+            start = Long.parseLong(Files.readString(offsetFile).trim());
+        }
+        start = Math.max(start, segments.firstKey());
+        var cursor = new Cursor(offsetFile, start);
+        cursor.persist();
+        cursors.add(cursor);
+        return cursor;
+    }
+
+    void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Cursor cursor : cursors) {
+            cursor.lock.lock();
+            try {
+                cursor.closeQuietly();
+            } finally {
+                cursor.lock.unlock();
+            }
+        }
+        try {
+            writeChannel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ---- 写入 ----
+
+    private void recover() throws IOException {
+        try (var files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(p -> segments.put(baseOf(p), p));
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+            return;
+        }
+        var last = segments.lastEntry();
+        writeChannel = FileChannel.open(last.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long valid = validLength(writeChannel);
+        if (valid < writeChannel.size()) {
+            log.warn("[outbox] 截断未写完整的尾部记录: file={}, {} -> {}", last.getValue(), writeChannel.size(), valid);
+            writeChannel.truncate(valid);
+        }
+        writeChannel.position(valid);
+        writeSegmentBase = last.getKey();
+        endPosition = writeSegmentBase + valid;
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<byte[]>(MAX_BATCH);
+        long retryDelayMs = 0;
+        while (running || !appendQueue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    byte[] first = appendQueue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    appendQueue.drainTo(batch, MAX_BATCH - 1);
+                }
+                if (retryDelayMs > 0) repair();
+                writeBatch(batch);
+                batch.clear();
+                retryDelayMs = 0;
+            } catch (InterruptedException e) {
+                drainOnInterrupt(batch);
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    log.error("[outbox] 关闭时写入失败，{} 条事件未落盘", batch.size() + appendQueue.size(), e);
+                    return;
+                }
+                // 保留这一批，退避后从最后一次落盘的位置重写
+                retryDelayMs = retryDelayMs == 0 ? MIN_RETRY_DELAY_MS : Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+                log.error("[outbox] 写入失败，{}ms 后重试 {} 条事件", retryDelayMs, batch.size(), e);
+                try {
+                    Thread.sleep(retryDelayMs);
+                } catch (InterruptedException ie) {
+                    drainOnInterrupt(batch);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入线程被中断时把手上的批次和队列中剩余的事件一次写完再退出。
+     */
+    private void drainOnInterrupt(List<byte[]> batch) {
+        // 先清除中断标记，否则 FileChannel 会直接抛出 ClosedByInterruptException 并关闭通道
+        Thread.interrupted();
+        appendQueue.drainTo(batch);
+        try {
+            if (!batch.isEmpty()) {
+                repair();
+                writeBatch(batch);
+            }
+        } catch (Exception e) {
+            log.error("[outbox] 中断时写入失败，{} 条事件未落盘", batch.size(), e);
+        } finally {
+            batch.clear();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 写入失败后恢复写入通道：截掉最后一次落盘之后写了一半的数据；滚动 segment 失败时重新打开原 segment。
+     */
+    private void repair() throws IOException {
+        if (writeChannel == null || !writeChannel.isOpen()) {
+            writeChannel = FileChannel.open(segments.get(writeSegmentBase),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        long valid = endPosition - writeSegmentBase;
+        if (writeChannel.size() > valid) writeChannel.truncate(valid);
+        writeChannel.position(valid);
+    }
+
+    private void writeBatch(List<byte[]> batch) throws IOException {
+        int total = 0;
+        for (byte[] record : batch) {
+            total += 4 + record.length;
+        }
+        if (writeChannel.position() > 0 && writeChannel.position() + total > segmentBytes) {
+            roll();
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        for (byte[] record : batch) {
+            buf.putInt(record.length).put(record);
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            writeChannel.write(buf);
+        }
+        writeChannel.force(false);
+
+        dataLock.lock();
+        try {
+            endPosition = writeSegmentBase + writeChannel.position();
+            dataAppended.signalAll();
+        } finally {
+            dataLock.unlock();
+        }
+    }
+
+    private void roll() throws IOException {
+        long nextBase = writeSegmentBase + writeChannel.position();
+        writeChannel.close();
+        openSegment(nextBase);
+        log.debug("[outbox] 滚动到新 segment: base={}", nextBase);
+    }
+
+    private void openSegment(long base) throws IOException {
+        Path file = dir.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+        writeChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeSegmentBase = base;
+        segments.put(base, file);
+    }
+
+    private static long validLength(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long pos = 0;
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while (pos + 4 <= size) {
+            header.clear();
+            channel.read(header, pos);
+            int len = header.flip().getInt();
+            if (len < 0 || pos + 4 + len > size) break;
+            pos += 4 + len;
+        }
+        return pos;
+    }
+
+    private static long baseOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 删除所有游标都已确认越过的 segment（当前写入中的除外）。
+     */
+    private void cleanup() {
+        long minCommitted = Long.MAX_VALUE;
+        for (Cursor cursor : cursors) {
+            minCommitted = Math.min(minCommitted, cursor.committed);
+        }
+        for (Map.Entry<Long, Path> seg : segments.entrySet()) {
+            Long nextBase = segments.higherKey(seg.getKey());
+            if (nextBase == null || nextBase > minCommitted) break;
+            try {
+                Files.deleteIfExists(seg.getValue());
+                segments.remove(seg.getKey());
+                log.debug("[outbox] 清理已投递 segment: {}", seg.getValue().getFileName());
+            } catch (IOException e) {
+                log.warn("[outbox] 清理 segment 失败: {}", seg.getValue(), e);
+                break;
+            }
+        }
+    }
+
+    // ---- 读取 ----
+
+    /**
+     * 单个 webhook 目标的读取游标。readPos 之前、不在 pending 中的记录都已确认；
+     * committed 为最早未确认记录的位置，重启后从这里继续投递（at-least-once）。
+     */
+    final class Cursor implements WebhookTarget.Source {
+        private final Path offsetFile;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final TreeSet<Long> pending = new TreeSet<>();
+        private long readPos;
+        private volatile long committed;
+        private long lastPersistAt;
+        private FileChannel channel;
+        private long channelBase = -1;
+
+        private Cursor(Path offsetFile, long start) {
+            this.offsetFile = offsetFile;
+            this.readPos = start;
+            this.committed = start;
+        }
+
+        @Override
+        public List<WebhookTarget.Entry> poll(int max, long lingerMs) throws InterruptedException {
+            awaitData(Long.MAX_VALUE);
+            var entries = new ArrayList<WebhookTarget.Entry>();
+            readAvailable(entries, max);
+
+            long deadline = System.currentTimeMillis() + lingerMs;
+            while (entries.size() < max) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) break;
+                awaitData(remaining);
+                readAvailable(entries, max);
+            }
+            return entries;
+        }
+
+        /**
+         * 等待写入线程落盘 readPos 之后的数据，最多等待 timeoutMs 毫秒。
+         */
+        private void awaitData(long timeoutMs) throws InterruptedException {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            dataLock.lock();
+            try {
+                while (endPosition <= readPos && nanos > 0) {
+                    nanos = dataAppended.awaitNanos(nanos);
+                }
+            } finally {
+                dataLock.unlock();
+            }
+        }
+
+        private void readAvailable(List<WebhookTarget.Entry> entries, int max) {
+            lock.lock();
+            try {
+                long end = endPosition;
+                while (entries.size() < max && readPos < end) {
+                    try {
+                        entries.add(readNext());
+                    } catch (IOException e) {
+                        long skipTo = nextSegmentBase(readPos, end);
+                        log.error("[outbox] 读取记录失败，跳过到 {}: position={}", skipTo, readPos, e);
+                        readPos = skipTo;
+                        committed = pending.isEmpty() ? readPos : pending.first();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private WebhookTarget.Entry readNext() throws IOException {
+            var seg = segments.floorEntry(readPos);
+            if (seg == null) throw new IOException("segment 不存在: position=" + readPos);
+            if (channelBase != seg.getKey()) {
+                closeQuietly();
+                channel = FileChannel.open(seg.getValue(), StandardOpenOption.READ);
+                channelBase = seg.getKey();
+            }
+            long local = readPos - channelBase;
+            ByteBuffer header = ByteBuffer.allocate(4);
+            readFully(header, local);
+            int len = header.flip().getInt();
+            ByteBuffer body = ByteBuffer.allocate(len);
+            readFully(body, local + 4);
+
+            long position = readPos;
+            readPos += 4 + len;
+            pending.add(position);
+            return new WebhookTarget.Entry(position, new String(body.array(), StandardCharsets.UTF_8));
+        }
+
+        private void readFully(ByteBuffer buf, long position) throws IOException {
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, position + buf.position()) < 0) {
+                    throw new IOException("segment 提前结束: position=" + position);
+                }
+            }
+        }
+
+        private long nextSegmentBase(long position, long end) {
+            Long next = segments.higherKey(position);
+            return next != null ? next : end;
+        }
+
+        @Override
+        public void ack(List<WebhookTarget.Entry> entries) {
+            boolean persist;
+            lock.lock();
+            try {
+                for (var entry : entries) {
+                    pending.remove(entry.position());
+                }
+                committed = pending.isEmpty() ? readPos : pending.first();
+                long now = System.currentTimeMillis();
+                persist = now - lastPersistAt >= OFFSET_PERSIST_INTERVAL_MS;
+                if (persist) lastPersistAt = now;
+            } finally {
+                lock.unlock();
+            }
+            if (persist) {
+                persist();
+                cleanup();
+            }
+        }
+
+        @Override
+        public void describe(Map<String, Object> stats) {
+            stats.put("backlogBytes", endPosition - committed);
+            stats.put("committedOffset", committed);
+        }
+
+        private void persist() {
+            try {
+                Path tmp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+                Files.writeString(tmp, Long.toString(committed));
+                Files.move(tmp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("[outbox] 保存投递偏移失败: {}", offsetFile, e);
+            }
+        }
+
+        private void closeQuietly() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                channel = null;
+                channelBase = -1;
+            }
+            if (!running) persist();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.FeishuProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 单个 webhook 目标：由一个虚拟线程从 {@link Source} 拉取事件，在在途请求数上限内用 sendAsync 非阻塞发送。
+ * 失败时按指数退避 + 随机抖动重试，成功或放弃后向 Source 确认。
+ * 一个目标变慢只会让它自己的队列积压，不影响其他目标。
+ */
+@Slf4j
+class WebhookTarget {
+
+    /**
+     * 待投递事件
+     *
+     * @param position 在 outbox 中的位置，内存队列为 -1
+     */
+    record Entry(long position, String json) {
+    }
+
+    /**
+     * 事件来源：内存队列或 outbox 游标。poll 只由目标自己的投递线程调用，ack 可能来自任意线程。
+     */
+    interface Source {
+
+        /**
+         * 阻塞等待至少一条事件；拿到首条后最多再等 lingerMs 毫秒凑够 max 条。
+         */
+        List<Entry> poll(int max, long lingerMs) throws InterruptedException;
+
+        /**
+         * 投递成功或放弃后确认。
+         */
+        void ack(List<Entry> entries);
+
+        /**
+         * 补充来源自身的统计（队列深度、积压等）。
+         */
+        void describe(Map<String, Object> stats);
+    }
+
+    /**
+     * 有界内存队列，队列满时丢弃新事件并计数。
+     */
+    static final class MemorySource implements Source {
+        private final ArrayBlockingQueue<String> queue;
+        private final LongAdder dropped = new LongAdder();
+
+        MemorySource(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        }
+
+        boolean offer(String json) {
+            if (queue.offer(json)) return true;
+            dropped.increment();
+            return false;
+        }
+
+        @Override
+        public List<Entry> poll(int max, long lingerMs) throws InterruptedException {
+            var entries = new ArrayList<Entry>(Math.min(max, queue.size() + 1));
+            entries.add(new Entry(-1, queue.take()));
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+            var more = new ArrayList<String>();
+            while (entries.size() < max) {
+                queue.drainTo(more, max - entries.size());
+                for (String json : more) {
+                    entries.add(new Entry(-1, json));
+                }
+                more.clear();
+                long remaining = deadline - System.nanoTime();
+                if (entries.size() >= max || remaining <= 0) break;
+                String next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) break;
+                entries.add(new Entry(-1, next));
+            }
+            return entries;
+        }
+
+        @Override
+        public void ack(List<Entry> entries) {
+        }
+
+        @Override
+        public void describe(Map<String, Object> stats) {
+            stats.put("queueDepth", queue.size());
+            stats.put("dropped", dropped.sum());
+        }
+    }
+
+    private final String url;
+    private final URI uri;
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final Source source;
+    private final Semaphore permits;
+    private final FeishuProperties.Retry retry;
+    /** 0 表示一直重试 */
+    private final int maxAttempts;
+    private final ScheduledExecutorService retryScheduler;
+    /** 为 null 时逐条投递 */
+    private final FeishuProperties.Batch batch;
+    private volatile boolean running = true;
+    private Thread dispatcher;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder latencyTotalMs = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final AtomicLong latencyMaxMs = new AtomicLong();
+    private volatile long lastLatencyMs;
+
+    WebhookTarget(String url, HttpClient httpClient, Source source, int maxConcurrency, Duration timeout,
+                  FeishuProperties.Retry retry, ScheduledExecutorService retryScheduler,
+                  FeishuProperties.Batch batch) {
+        this.url = url;
+        this.uri = URI.create(url);
+        this.httpClient = httpClient;
+        this.timeout = timeout;
+        this.source = source;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+        this.retry = retry;
+        this.maxAttempts = retry.resolveMaxAttempts(source instanceof WebhookOutbox.Cursor);
+        this.retryScheduler = retryScheduler;
+        this.batch = batch;
+    }
+
+    void start() {
+        dispatcher = Thread.ofVirtual().name("webhook-" + uri.getHost()).start(this::dispatchLoop);
+    }
+
+    void stop() {
+        running = false;
+        if (dispatcher != null) dispatcher.interrupt();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                permits.acquire();
+                List<Entry> entries;
+                try {
+                    entries = batch == null ? source.poll(1, 0)
+                            : source.poll(Math.max(1, batch.getMaxEvents()), batch.getLingerMs());
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+                inFlight.incrementAndGet();
+                deliver(entries, buildRequest(entries), 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("webhook 投递线程异常: url={}", url, e);
+            }
+        }
+    }
+
+    /**
+     * 逐条模式直接发送原始信封；批量模式拼接为 JSON 数组或 NDJSON（信封已是 JSON 字符串，无需重新序列化），可选 gzip。
+     */
+    private HttpRequest buildRequest(List<Entry> entries) {
+        var builder = HttpRequest.newBuilder().uri(uri).timeout(timeout);
+        String contentType = "application/json";
+        String text;
+        if (batch == null) {
+            text = entries.getFirst().json();
+        } else {
+            boolean ndjson = "ndjson".equalsIgnoreCase(batch.getFormat());
+            var sb = new StringBuilder(entries.size() * 256);
+            if (!ndjson) sb.append('[');
+            for (int i = 0; i < entries.size(); i++) {
+                if (i > 0 && !ndjson) sb.append(',');
+                sb.append(entries.get(i).json());
+                if (ndjson) sb.append('\n');
+            }
+            if (!ndjson) sb.append(']');
+            text = sb.toString();
+            if (ndjson) contentType = "application/x-ndjson";
+        }
+
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        if (batch != null && batch.isGzip()) {
+            body = gzip(body);
+            builder.header("Content-Encoding", "gzip");
+        }
+        return builder.header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private static byte[] gzip(byte[] data) {
+        var out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (var gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private void deliver(List<Entry> batch, HttpRequest request, int attempt) {
+        long start = System.currentTimeMillis();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((resp, e) -> {
+                    long latency = System.currentTimeMillis() - start;
+                    recordLatency(latency);
+                    int status = resp != null ? resp.statusCode() : -1;
+                    if (e == null && status / 100 == 2) {
+                        delivered.add(batch.size());
+                        log.info("webhook 转发成功: url={}, events={}, 耗时={}ms", url, batch.size(), latency);
+                        complete(batch);
+                        return;
+                    }
+
+                    if (!running) {
+                        // 停机中：不确认，outbox 模式下重启后会重新投递
+                        inFlight.decrementAndGet();
+                        permits.release();
+                        return;
+                    }
+                    boolean retryable = e != null || status == 408 || status == 429 || status >= 500;
+                    boolean attemptsLeft = maxAttempts <= 0 || attempt < maxAttempts;
+                    if (retryable && attemptsLeft) {
+                        long delay = backoffMs(attempt);
+                        retries.increment();
+                        log.warn("webhook 转发失败，{}ms 后第 {} 次重试: url={}, status={}, error={}",
+                                delay, attempt + 1, url, status, e != null ? e.toString() : null);
+                        retryScheduler.schedule(() -> deliver(batch, request, attempt + 1), delay, TimeUnit.MILLISECONDS);
+                    } else {
+                        failed.add(batch.size());
+                        log.error("webhook 转发失败，放弃投递: url={}, status={}, attempts={}", url, status, attempt, e);
+                        complete(batch);
+                    }
+                });
+    }
+
+    private void complete(List<Entry> batch) {
+        try {
+            source.ack(batch);
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    /**
+     * 指数退避 + equal jitter：取 [d/2, d] 之间的随机值，避免多个目标同时重试。
+     */
+    private long backoffMs(int attempt) {
+        long base = Math.max(1, retry.getInitialBackoffMs());
+        long exp = base << Math.min(attempt - 1, 20);
+        long capped = Math.min(Math.max(base, retry.getMaxBackoffMs()), exp);
+        return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+
+    private void recordLatency(long latency) {
+        lastLatencyMs = latency;
+        requests.increment();
+        latencyTotalMs.add(latency);
+        latencyMaxMs.accumulateAndGet(latency, Math::max);
+    }
+
+    Map<String, Object> stats() {
+        long n = requests.sum();
+        var stats = new LinkedHashMap<String, Object>();
+        stats.put("url", url);
+        source.describe(stats);
+        stats.put("inFlight", inFlight.get());
+        stats.put("delivered", delivered.sum());
+        stats.put("failed", failed.sum());
+        stats.put("retries", retries.sum());
+        stats.put("lastLatencyMs", lastLatencyMs);
+        stats.put("avgLatencyMs", n > 0 ? latencyTotalMs.sum() / n : 0);
+        stats.put("maxLatencyMs", latencyMaxMs.get());
+        return stats;
+    }
+}
@@ -1,9 +1,11 @@
 package io.github.feishu.bridge.streaming;
 
+import com.google.gson.stream.JsonReader;
 import com.lark.oapi.core.utils.Jsons;
 import io.github.feishu.bridge.config.StreamingProperties;
 import lombok.RequiredArgsConstructor;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpRequest;
 import java.time.Duration;
@@ -52,48 +54,85 @@ public class DifyStreamingProvider implements StreamingProvider {
                 .build();
     }
 
+    /**
+     * 系统提示词和模型在 Dify 应用中配置，作用域即应用本身（接口地址 + API Key）；
+     * chat 应用已有会话时回答依赖上游保存的上下文，不缓存。
+     */
     @Override
-    @SuppressWarnings("unchecked")
-    public void onStreamData(String userId, String sseData) {
-        if ("workflow".equalsIgnoreCase(config.getAppType())) return;
-        try {
-            var map = (Map<String, Object>) Jsons.DEFAULT.fromJson(sseData, Map.class);
-            String convId = (String) map.get("conversation_id");
-            if (convId != null && !convId.isEmpty()) {
-                conversationIds.put(userId, convId);
-            }
-        } catch (Exception ignored) {
-        }
+    public String cacheScope(String userId) {
+        String app = config.getApiUrl() + "\n" + config.getApiKey();
+        if ("workflow".equalsIgnoreCase(config.getAppType())) return "dify-workflow\n" + app;
+        return conversationIds.containsKey(userId) ? null : "dify-chat\n" + app;
+    }
+
+    /**
+     * 是否已为该用户记下 chat 应用的会话。
+     */
+    public boolean hasConversation(String userId) {
+        return conversationIds.containsKey(userId);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    public String parseChunk(String sseData) {
-        try {
-            var map = (Map<String, Object>) Jsons.DEFAULT.fromJson(sseData, Map.class);
-            String event = (String) map.getOrDefault("event", "");
-            return switch (event) {
-                case "message", "agent_message" -> (String) map.get("answer");
-                case "text_chunk" -> {
-                    var data = (Map<String, Object>) map.get("data");
-                    yield data != null ? (String) data.get("text") : null;
+    public StreamEvent decode(String userId, String sseData) {
+        return decode(userId, sseData, true);
+    }
+
+    /**
+     * 不记录 conversation_id：对冲落败的请求若记下自己的会话，下一轮会接到并未展示给用户的上下文上。
+     */
+    @Override
+    public StreamEvent peek(String sseData) {
+        return decode(null, sseData, false);
+    }
+
+    private StreamEvent decode(String userId, String sseData, boolean remember) {
+        String event = null;
+        String answer = null;
+        String text = null;
+        String convId = null;
+        try (JsonReader reader = SseJson.reader(sseData)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "event" -> event = SseJson.nextStringOrNull(reader);
+                    case "answer" -> answer = SseJson.nextStringOrNull(reader);
+                    case "conversation_id" -> convId = SseJson.nextStringOrNull(reader);
+                    case "data" -> text = readDataText(reader);
+                    default -> reader.skipValue();
                 }
-                default -> null;
-            };
+            }
         } catch (Exception e) {
-            return null;
+            return StreamEvent.IGNORED;
+        }
+
+        if (remember && convId != null && !convId.isEmpty() && !"workflow".equalsIgnoreCase(config.getAppType())
+                && !convId.equals(conversationIds.get(userId))) {
+            conversationIds.put(userId, convId);
         }
+
+        if (event == null) return StreamEvent.IGNORED;
+        return switch (event) {
+            case "message", "agent_message" -> StreamEvent.content(answer);
+            case "text_chunk" -> StreamEvent.content(text);
+            case "message_end", "workflow_finished" -> StreamEvent.DONE;
+            default -> convId != null ? StreamEvent.METADATA : StreamEvent.IGNORED;
+        };
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public boolean isDone(String sseData) {
-        try {
-            var map = (Map<String, Object>) Jsons.DEFAULT.fromJson(sseData, Map.class);
-            String event = (String) map.getOrDefault("event", "");
-            return "message_end".equals(event) || "workflow_finished".equals(event);
-        } catch (Exception e) {
-            return false;
+    /**
+     * 读取 data 对象中的 text 字段（workflow 的 text_chunk 事件），其余字段跳过。
+     */
+    private static String readDataText(JsonReader reader) throws IOException {
+        if (!SseJson.beginObjectIfPresent(reader)) return null;
+        String text = null;
+        while (reader.hasNext()) {
+            if ("text".equals(reader.nextName())) {
+                text = SseJson.nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
         }
+        reader.endObject();
+        return text;
     }
 }
@@ -0,0 +1,469 @@
+package io.github.feishu.bridge.streaming;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 组合多个 OpenAI 兼容 / Dify 端点的 provider：
+ * <ul>
+ *   <li>路由：健康的端点按首 token 延迟的 EWMA 从低到高依次尝试。尚无样本的端点按所有端点的均值计，
+ *       长期未被选中的端点 EWMA 随时间向均值回归，变慢的首选端点会让出流量，而空闲的备用端点不会仅因空闲排到前面；
+ *       分数相同时按配置顺序；</li>
+ *   <li>会话粘性：Dify chat 应用的会话保存在应答的那个端点上，该用户后续请求先发往该端点，冷却中时才按分数路由；</li>
+ *   <li>故障转移：连接错误、非 200 或首个 token 之前流就结束时换下一个端点，
+ *       除请求本身的错误（400/413/422）外，失败的端点在冷却期内排到最后；</li>
+ *   <li>对冲：首个 token 超过 hedgeAfterMs 仍未到达时向下一个端点再发一次请求，先返回 token 的一方胜出，
+ *       另一方的响应流立即关闭，其已等待的时间计入该端点的 EWMA。</li>
+ * </ul>
+ * 每个请求在独立的虚拟线程中用 sendAsync 发出并读到首个 token 为止，胜出请求已读取的行由 {@link UpstreamResponse} 先行返回。
+ * 首个 token 之前的行用 {@link StreamingProvider#peek} 判断，落败请求不会留下会话状态。
+ */
+@Slf4j
+public class FailoverStreamingProvider implements StreamingProvider {
+
+    /** 长期未被选中的端点，路由时其 EWMA 按此半衰期向均值回归 */
+    private static final long IDLE_HALF_LIFE_MS = 60_000;
+
+    public static final class Endpoint {
+        private final String name;
+        private final StreamingProvider provider;
+
+        // 以下字段由 this 保护
+        private double ttftEwmaMs = Double.NaN;
+        private long lastSampleAt;
+        private long unhealthyUntil;
+
+        public Endpoint(String name, StreamingProvider provider) {
+            this.name = name;
+            this.provider = provider;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public StreamingProvider provider() {
+            return provider;
+        }
+
+        /**
+         * 首 token 延迟的 EWMA（毫秒），尚无样本时为 NaN。
+         */
+        public synchronized double ttftEwmaMs() {
+            return ttftEwmaMs;
+        }
+
+        public synchronized boolean isHealthy(long now) {
+            return now >= unhealthyUntil;
+        }
+
+        synchronized void recordTtft(long ms, double alpha, long now) {
+            ttftEwmaMs = Double.isNaN(ttftEwmaMs) ? ms : alpha * ms + (1 - alpha) * ttftEwmaMs;
+            lastSampleAt = now;
+        }
+
+        synchronized void markUnhealthy(long until) {
+            unhealthyUntil = Math.max(unhealthyUntil, until);
+        }
+
+        /**
+         * @param fleetMean 健康端点 EWMA 的均值，还没有任何样本时为 NaN
+         */
+        synchronized double routingScore(long now, double fleetMean) {
+            if (now < unhealthyUntil) return Double.POSITIVE_INFINITY;
+            if (Double.isNaN(ttftEwmaMs)) return Double.isNaN(fleetMean) ? 0 : fleetMean;
+            if (Double.isNaN(fleetMean)) return ttftEwmaMs;
+            double weight = Math.pow(0.5, (double) (now - lastSampleAt) / IDLE_HALF_LIFE_MS);
+            return fleetMean + (ttftEwmaMs - fleetMean) * weight;
+        }
+
+        synchronized long unhealthyUntil() {
+            return unhealthyUntil;
+        }
+    }
+
+    private final List<Endpoint> endpoints;
+    private final long hedgeAfterMs;
+    private final long cooldownMs;
+    private final double alpha;
+    /** userId → 保存着该用户 Dify 会话的端点 */
+    private final ConcurrentHashMap<String, Endpoint> conversationEndpoints = new ConcurrentHashMap<>();
+    private final ExecutorService attempts = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("llm-attempt-", 0).factory());
+
+    public FailoverStreamingProvider(List<Endpoint> endpoints, StreamingProperties.Failover config) {
+        if (endpoints.isEmpty()) throw new IllegalArgumentException("endpoints is empty");
+        this.endpoints = List.copyOf(endpoints);
+        this.hedgeAfterMs = Math.max(0, config.getHedgeAfterMs());
+        this.cooldownMs = TimeUnit.SECONDS.toMillis(Math.max(0, config.getCooldownSeconds()));
+        double a = config.getEwmaAlpha();
+        this.alpha = a > 0 && a <= 1 ? a : 0.3;
+        log.info("[failover] 已启用: endpoints={}, hedgeAfterMs={}, cooldownSeconds={}, ewmaAlpha={}",
+                this.endpoints.stream().map(Endpoint::name).toList(), hedgeAfterMs,
+                config.getCooldownSeconds(), alpha);
+    }
+
+    public List<Endpoint> endpoints() {
+        return endpoints;
+    }
+
+    /**
+     * 首个端点的请求，实际请求由 {@link #open} 按路由选择端点。
+     */
+    @Override
+    public HttpRequest buildRequest(String userQuery, String userId, List<Map<String, String>> history) {
+        return endpoints.getFirst().provider().buildRequest(userQuery, userId, history);
+    }
+
+    /**
+     * 按首个端点解码；读取 {@link #open} 返回的响应时应使用 {@link UpstreamResponse#provider()}。
+     */
+    @Override
+    public StreamEvent decode(String userId, String sseData) {
+        return endpoints.getFirst().provider().decode(userId, sseData);
+    }
+
+    @Override
+    public StreamEvent peek(String sseData) {
+        return endpoints.getFirst().provider().peek(sseData);
+    }
+
+    /**
+     * 回答可能来自任一端点，作用域为全部端点作用域的组合；任一端点不可缓存时不缓存。
+     */
+    @Override
+    public String cacheScope(String userId) {
+        var sb = new StringBuilder("failover");
+        for (Endpoint e : endpoints) {
+            String scope = e.provider().cacheScope(userId);
+            if (scope == null) return null;
+            sb.append("\n\n").append(scope);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public UpstreamResponse open(HttpClient client, String userQuery, String userId,
+                                 List<Map<String, String>> history, Consumer<Closeable> inFlight)
+            throws IOException, InterruptedException {
+        var race = new Race();
+        inFlight.accept(race);
+        var finished = race.finished;
+        var running = new LinkedHashSet<Attempt>();
+        List<Endpoint> order = route(System.currentTimeMillis(), userId);
+        int next = 0;
+        Attempt hedge = null;
+        Attempt lastFailure = null;
+
+        try {
+            running.add(start(order.get(next++), client, userQuery, userId, history, race));
+            long hedgeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(hedgeAfterMs);
+            while (true) {
+                Attempt done;
+                if (hedgeAfterMs > 0 && hedge == null && running.size() == 1 && next < order.size()) {
+                    done = finished.poll(hedgeAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        Endpoint target = order.get(next++);
+                        log.info("[failover] 端点 {} 超过 {}ms 未返回首个 token，向 {} 发出对冲请求",
+                                running.getFirst().endpoint.name(), hedgeAfterMs, target.name());
+                        hedge = start(target, client, userQuery, userId, history, race);
+                        running.add(hedge);
+                        continue;
+                    }
+                } else {
+                    done = finished.take();
+                }
+                running.remove(done);
+                // 会话被取消时 race.close() 放入 CANCELLED 唤醒这里，不必等仍在连接中的请求
+                if (race.isClosed()) throw new CancellationException("superseded");
+
+                if (done.succeeded()) {
+                    race.settle(done);
+                    if (done.endpoint.provider() instanceof DifyStreamingProvider) {
+                        conversationEndpoints.put(userId, done.endpoint);
+                    } else {
+                        conversationEndpoints.remove(userId);
+                    }
+                    long now = System.currentTimeMillis();
+                    done.endpoint.recordTtft(done.latencyMs, alpha, now);
+                    // 被关闭的请求至少已等待这么久，计入 EWMA，避免慢端点一直排在前面
+                    for (Attempt loser : running) loser.endpoint.recordTtft(loser.elapsedMs(), alpha, now);
+                    String route = done == hedge ? "hedge_won"
+                            : hedge != null ? "hedge_lost"
+                            : lastFailure != null ? "failover" : "first";
+                    if (!"first".equals(route)) {
+                        log.info("[failover] 由端点 {} 应答: route={}, 首 token {}ms",
+                                done.endpoint.name(), route, done.latencyMs);
+                    }
+                    return done.toResponse(route);
+                }
+
+                fail(done);
+                lastFailure = done;
+                if (!running.isEmpty()) continue;
+                if (next >= order.size()) break;
+                Endpoint target = order.get(next++);
+                log.warn("[failover] 切换到端点 {}", target.name());
+                running.add(start(target, client, userQuery, userId, history, race));
+                hedgeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(hedgeAfterMs);
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            race.close();
+            throw e;
+        }
+
+        log.warn("[failover] 所有端点均请求失败: endpoints={}", order.stream().map(Endpoint::name).toList());
+        if (lastFailure.error == null) return lastFailure.toResponse("failover");
+        if (lastFailure.error instanceof IOException io) throw io;
+        if (lastFailure.error instanceof RuntimeException re) throw re;
+        throw new IOException(lastFailure.error);
+    }
+
+    private Attempt start(Endpoint endpoint, HttpClient client, String userQuery, String userId,
+                          List<Map<String, String>> history, Race race) {
+        var attempt = new Attempt(endpoint, endpoint.provider().buildRequest(userQuery, userId, history),
+                client, race);
+        race.add(attempt);
+        attempts.execute(attempt);
+        return attempt;
+    }
+
+    private void fail(Attempt attempt) {
+        String reason = attempt.error == null ? "HTTP " + attempt.status
+                : attempt.error.getMessage() == null ? attempt.error.getClass().getSimpleName()
+                : attempt.error.getClass().getSimpleName() + ": " + attempt.error.getMessage();
+        boolean cooldown = attempt.error != null || !isRequestError(attempt.status);
+        if (cooldown && cooldownMs > 0) {
+            attempt.endpoint.markUnhealthy(System.currentTimeMillis() + cooldownMs);
+        }
+        log.warn("[failover] 端点 {} 请求失败（{}）{}", attempt.endpoint.name(), reason,
+                cooldown && cooldownMs > 0 ? "，冷却 " + cooldownMs / 1000 + "s" : "");
+    }
+
+    /**
+     * 请求本身的错误（格式、长度），换端点多半同样失败，不视为端点故障。
+     */
+    private static boolean isRequestError(int status) {
+        return status == 400 || status == 413 || status == 422;
+    }
+
+    /**
+     * 健康的端点按路由分数排序，分数相同时保持配置顺序；冷却中的端点按恢复时间排在最后，所有端点都失败时仍会被尝试。
+     * 用户在某个健康端点上有 Dify 会话时该端点排在最前。
+     */
+    List<Endpoint> route(long now, String userId) {
+        record Ranked(Endpoint endpoint, double score, long unhealthyUntil) {
+        }
+        double sum = 0;
+        int sampled = 0;
+        for (Endpoint e : endpoints) {
+            double ewma = e.ttftEwmaMs();
+            if (!Double.isNaN(ewma) && e.isHealthy(now)) {
+                sum += ewma;
+                sampled++;
+            }
+        }
+        double fleetMean = sampled == 0 ? Double.NaN : sum / sampled;
+
+        var ranked = new ArrayList<Ranked>(endpoints.size());
+        for (Endpoint e : endpoints) {
+            long until = e.unhealthyUntil();
+            ranked.add(new Ranked(e, e.routingScore(now, fleetMean), until > now ? until : 0));
+        }
+        // List.sort 是稳定排序，分数相同的端点保持配置顺序
+        ranked.sort(Comparator.comparingDouble(Ranked::score).thenComparingLong(Ranked::unhealthyUntil));
+        var order = new ArrayList<Endpoint>(endpoints.size());
+        for (Ranked r : ranked) order.add(r.endpoint());
+
+        Endpoint sticky = userId == null ? null : conversationEndpoints.get(userId);
+        if (sticky != null && sticky.isHealthy(now)
+                && sticky.provider() instanceof DifyStreamingProvider dify && dify.hasConversation(userId)) {
+            order.remove(sticky);
+            order.addFirst(sticky);
+        }
+        return order;
+    }
+
+    /**
+     * 一次 open 中发出的所有请求。会话被取消或已决出胜者时取消其余请求：尚未收到响应头的取消发送，
+     * 已收到的关闭响应流。
+     */
+    private static final class Race implements Closeable {
+        final BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+        private final List<Attempt> attempts = new ArrayList<>();
+        private Attempt winner;
+        private boolean closed;
+
+        synchronized void add(Attempt attempt) {
+            attempts.add(attempt);
+        }
+
+        /**
+         * 登记发送中的请求；已被取消或已由其他请求胜出时立即取消。
+         */
+        synchronized void sending(Attempt attempt, CompletableFuture<?> future) {
+            attempt.sending = future;
+            if (closed || (winner != null && winner != attempt)) future.cancel(true);
+        }
+
+        /**
+         * 登记响应流；已被取消或已由其他请求胜出时返回 false，由调用方关闭。
+         */
+        synchronized boolean attach(Attempt attempt, InputStream body) {
+            if (closed || (winner != null && winner != attempt)) return false;
+            attempt.body = body;
+            return true;
+        }
+
+        synchronized void settle(Attempt winner) {
+            this.winner = winner;
+            for (Attempt a : attempts) {
+                if (a != winner) a.cancel();
+            }
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) return;
+            closed = true;
+            for (Attempt a : attempts) a.cancel();
+            finished.add(Attempt.CANCELLED);
+        }
+    }
+
+    /**
+     * 向一个端点发出请求并读到首个 token（或流结束信号）为止，完成后放入 finished 队列。
+     */
+    private static final class Attempt implements Runnable {
+        /** 由 {@link Race#close()} 放入 finished，唤醒等待中的 open */
+        static final Attempt CANCELLED = new Attempt(null, null, null, null);
+
+        final Endpoint endpoint;
+        final HttpRequest request;
+        final HttpClient client;
+        final Race race;
+        final long startNanos = System.nanoTime();
+        final List<String> lines = new ArrayList<>();
+
+        // 以下两个字段由 race 保护
+        CompletableFuture<?> sending;
+        InputStream body;
+
+        // 以下字段在放入 finished 之前写入
+        int status = -1;
+        BufferedReader reader;
+        String errorBody;
+        Exception error;
+        boolean firstToken;
+        long latencyMs;
+
+        Attempt(Endpoint endpoint, HttpRequest request, HttpClient client, Race race) {
+            this.endpoint = endpoint;
+            this.request = request;
+            this.client = client;
+            this.race = race;
+        }
+
+        @Override
+        public void run() {
+            InputStream in = null;
+            try {
+                var future = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+                race.sending(this, future);
+                var response = future.get();
+                in = response.body();
+                status = response.statusCode();
+                if (!race.attach(this, in)) throw new CancellationException("settled");
+                if (status != 200) {
+                    errorBody = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    closeQuietly(in);
+                } else {
+                    reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                    readUntilFirstToken();
+                    if (!firstToken) {
+                        closeQuietly(in);
+                        error = new IOException("上游在首个 token 之前结束了响应");
+                    }
+                }
+            } catch (ExecutionException e) {
+                error = e.getCause() instanceof Exception cause ? cause : e;
+            } catch (Exception e) {
+                closeQuietly(in);
+                error = e;
+            }
+            latencyMs = elapsedMs();
+            race.finished.add(this);
+        }
+
+        private void readUntilFirstToken() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+                String data = StreamingProvider.sseData(line);
+                if (data == null) continue;
+                var type = endpoint.provider().peek(data).type();
+                if (type == StreamEvent.Type.CONTENT || type == StreamEvent.Type.REASONING
+                        || type == StreamEvent.Type.DONE) {
+                    firstToken = true;
+                    return;
+                }
+            }
+        }
+
+        /** 由 race 在持锁时调用 */
+        void cancel() {
+            if (sending != null) sending.cancel(true);
+            closeQuietly(body);
+        }
+
+        boolean succeeded() {
+            return status == 200 && firstToken;
+        }
+
+        long elapsedMs() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        UpstreamResponse toResponse(String route) {
+            return new UpstreamResponse(endpoint.name(), route, endpoint.provider(), request.uri(), status,
+                    body != null ? body : InputStream.nullInputStream(), reader, lines, errorBody);
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
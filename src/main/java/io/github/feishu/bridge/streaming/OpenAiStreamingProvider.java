@@ -1,15 +1,19 @@
 package io.github.feishu.bridge.streaming;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.lark.oapi.core.utils.Jsons;
 import io.github.feishu.bridge.config.StreamingProperties;
 import lombok.RequiredArgsConstructor;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpRequest;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @RequiredArgsConstructor
 public class OpenAiStreamingProvider implements StreamingProvider {
@@ -43,37 +47,53 @@ public class OpenAiStreamingProvider implements StreamingProvider {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    public String parseChunk(String sseData) {
-        try {
-            var map = (Map<String, Object>) Jsons.DEFAULT.fromJson(sseData, Map.class);
-            var choices = (List<Map<String, Object>>) map.get("choices");
-            if (choices == null || choices.isEmpty()) return null;
-            var delta = (Map<String, Object>) choices.getFirst().get("delta");
-            if (delta == null) return null;
-            return (String) delta.get("content");
-        } catch (Exception e) {
-            return null;
-        }
+    public String cacheScope(String userId) {
+        return "openai\n" + config.getApiUrl() + "\n" + config.getModel()
+                + "\n" + Objects.requireNonNullElse(config.getSystemPrompt(), "");
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    public String parseReasoningChunk(String sseData) {
-        try {
-            var map = (Map<String, Object>) Jsons.DEFAULT.fromJson(sseData, Map.class);
-            var choices = (List<Map<String, Object>>) map.get("choices");
-            if (choices == null || choices.isEmpty()) return null;
-            var delta = (Map<String, Object>) choices.getFirst().get("delta");
-            if (delta == null) return null;
-            return (String) delta.get("reasoning_content");
-        } catch (Exception e) {
-            return null;
+    public StreamEvent decode(String userId, String sseData) {
+        if ("[DONE]".equals(sseData)) return StreamEvent.DONE;
+        try (JsonReader reader = SseJson.reader(sseData)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("choices".equals(reader.nextName())) {
+                    return readFirstChoiceDelta(reader);
+                }
+                reader.skipValue();
+            }
+        } catch (Exception ignored) {
         }
+        return StreamEvent.IGNORED;
     }
 
-    @Override
-    public boolean isDone(String sseData) {
-        return "[DONE]".equals(sseData.trim());
+    /**
+     * 只读取 choices[0].delta 中的 content / reasoning_content，读完 delta 即返回，不再解析后续字段。
+     * 部分兼容实现会在同一个 delta 中同时下发两者（思考到正文的过渡），两者都保留。
+     */
+    private static StreamEvent readFirstChoiceDelta(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) return StreamEvent.IGNORED;
+        reader.beginArray();
+        if (!reader.hasNext() || !SseJson.beginObjectIfPresent(reader)) return StreamEvent.IGNORED;
+
+        while (reader.hasNext()) {
+            if (!"delta".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            if (!SseJson.beginObjectIfPresent(reader)) return StreamEvent.IGNORED;
+            String content = null;
+            String reasoning = null;
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "content" -> content = SseJson.nextStringOrNull(reader);
+                    case "reasoning_content" -> reasoning = SseJson.nextStringOrNull(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            return StreamEvent.delta(content, reasoning);
+        }
+        return StreamEvent.IGNORED;
     }
 }
@@ -0,0 +1,45 @@
+package io.github.feishu.bridge.streaming;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * SSE payload 的流式 JSON 读取工具：基于 Gson {@link JsonReader} 逐 token 读取，
+ * 不构建中间 Map，跳过不关心的字段。
+ */
+final class SseJson {
+
+    private SseJson() {
+    }
+
+    static JsonReader reader(String json) {
+        return new JsonReader(new StringReader(json));
+    }
+
+    /**
+     * 读取一个字符串值；值为 null 或非字符串类型时跳过并返回 null。
+     */
+    static String nextStringOrNull(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * 若下一个值是对象则进入并返回 true，否则跳过该值并返回 false。
+     */
+    static boolean beginObjectIfPresent(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            return true;
+        }
+        reader.skipValue();
+        return false;
+    }
+}
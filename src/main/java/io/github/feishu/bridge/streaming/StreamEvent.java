@@ -0,0 +1,46 @@
+package io.github.feishu.bridge.streaming;
+
+/**
+ * 一行 SSE data 解码后的类型化事件，由 {@link StreamingProvider#decode} 一次性产出，
+ * 避免对同一行 payload 反复做 JSON 解析。
+ *
+ * @param type      事件类型
+ * @param text      CONTENT 时为正文增量，其余类型为 null
+ * @param reasoning 推理内容增量：REASONING 时必有；同一个 delta 同时带正文和推理内容时随 CONTENT 一并给出，否则为 null
+ */
+public record StreamEvent(Type type, String text, String reasoning) {
+
+    public enum Type {
+        /** 回复正文增量 */
+        CONTENT,
+        /** 只有模型推理/思考内容增量（如 DeepSeek 的 reasoning_content），没有正文 */
+        REASONING,
+        /** 仅携带元数据（如 Dify 的 conversation_id），不含文本 */
+        METADATA,
+        /** 流结束信号 */
+        DONE,
+        /** 无法识别或与回复无关的行 */
+        IGNORED
+    }
+
+    public static final StreamEvent DONE = new StreamEvent(Type.DONE, null, null);
+    public static final StreamEvent METADATA = new StreamEvent(Type.METADATA, null, null);
+    public static final StreamEvent IGNORED = new StreamEvent(Type.IGNORED, null, null);
+
+    public static StreamEvent content(String text) {
+        return delta(text, null);
+    }
+
+    public static StreamEvent reasoning(String text) {
+        return delta(null, text);
+    }
+
+    /**
+     * 一个 delta 中的正文和推理内容，两者都有时不丢弃任何一个。
+     */
+    public static StreamEvent delta(String content, String reasoning) {
+        if (reasoning != null && reasoning.isEmpty()) reasoning = null;
+        if (content != null && !content.isEmpty()) return new StreamEvent(Type.CONTENT, content, reasoning);
+        return reasoning != null ? new StreamEvent(Type.REASONING, null, reasoning) : IGNORED;
+    }
+}
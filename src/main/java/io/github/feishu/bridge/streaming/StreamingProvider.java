@@ -1,8 +1,13 @@
 package io.github.feishu.bridge.streaming;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface StreamingProvider {
 
@@ -15,24 +20,50 @@ public interface StreamingProvider {
     HttpRequest buildRequest(String userQuery, String userId, List<Map<String, String>> history);
 
     /**
-     * 从一行 SSE data（已去除 "data: " 前缀）中提取文本增量。
-     * 返回 null 表示该行不包含内容。
+     * 发出请求并返回上游响应（任意状态码），默认为 {@link #buildRequest} 后直接发送。
+     * 组合多个端点的实现在这里做故障转移和对冲，返回前可能已读取首个 token 之前的若干行。
+     *
+     * @param inFlight 登记进行中的请求，会话被取消时由调用方关闭；返回的响应需由调用方另行登记
      */
-    String parseChunk(String sseData);
+    default UpstreamResponse open(HttpClient client, String userQuery, String userId,
+                                  List<Map<String, String>> history, Consumer<Closeable> inFlight)
+            throws IOException, InterruptedException {
+        var request = buildRequest(userQuery, userId, history);
+        var response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        return UpstreamResponse.direct(this, request.uri(), response.statusCode(), response.body());
+    }
 
     /**
-     * 从一行 SSE data 中提取模型推理/思考内容（如 DeepSeek 的 reasoning_content）。
-     * 默认返回 null，表示该 provider 不支持或该行不含推理内容。
+     * 将一行 SSE data（已去除 "data: " 前缀）解码为类型化事件。
+     * 每行只解析一次，实现应使用流式读取、只取需要的字段；
+     * 元数据（如 Dify 的 conversation_id）也在此处顺带提取。
+     * 无法识别或不含内容的行返回 {@link StreamEvent#IGNORED}。
      */
-    default String parseReasoningChunk(String sseData) {
-        return null;
+    StreamEvent decode(String userId, String sseData);
+
+    /**
+     * 与 {@link #decode} 相同，但不记录任何元数据。用于尚未确定是否采用的响应（如对冲请求），
+     * 胜出的响应由调用方再用 {@link #decode} 正式解码。
+     */
+    default StreamEvent peek(String sseData) {
+        return decode(null, sseData);
     }
 
-    boolean isDone(String sseData);
+    /**
+     * 响应缓存的作用域：除问题本身外决定回答的请求参数（接口地址、模型、系统提示词等），
+     * 作用域相同且问题相同的请求可复用同一个回答。
+     * 请求依赖上游保存的会话状态（如 Dify 的 conversation_id）时返回 null，不使用缓存。
+     */
+    default String cacheScope(String userId) {
+        return null;
+    }
 
     /**
-     * SSE 流中每行 data 的回调，供 provider 提取元数据（如 Dify 的 conversation_id）。
+     * 取出一行 SSE 的 data 内容（去掉 "data:" 前缀和首尾空白）；不是 data 行或内容为空时返回 null。
      */
-    default void onStreamData(String userId, String sseData) {
+    static String sseData(String line) {
+        if (!line.startsWith("data:")) return null;
+        String data = line.substring(line.startsWith("data: ") ? 6 : 5).trim();
+        return data.isEmpty() ? null : data;
     }
 }
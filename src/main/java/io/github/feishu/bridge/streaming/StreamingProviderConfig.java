@@ -5,15 +5,58 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+
 @Configuration
 @ConditionalOnProperty(name = "streaming.enabled", havingValue = "true")
 public class StreamingProviderConfig {
 
+    /**
+     * 配置了备用端点时，主端点和备用端点组合为 {@link FailoverStreamingProvider}。
+     * 备用端点未配置的字段沿用主端点的 openai / dify 配置，例如只换接口地址和 API Key 时仍使用同一个系统提示词。
+     */
     @Bean
     public StreamingProvider streamingProvider(StreamingProperties props) {
-        return switch (props.getProvider().toLowerCase()) {
-            case "dify" -> new DifyStreamingProvider(props.getDify());
-            default -> new OpenAiStreamingProvider(props.getOpenai());
+        StreamingProvider primary = create(props.getProvider(), props.getOpenai(), props.getDify());
+        var backups = props.getFailover().getEndpoints();
+        if (backups.isEmpty()) return primary;
+
+        var endpoints = new ArrayList<FailoverStreamingProvider.Endpoint>();
+        endpoints.add(new FailoverStreamingProvider.Endpoint("primary", primary));
+        for (int i = 0; i < backups.size(); i++) {
+            var backup = backups.get(i);
+            String name = backup.getName() == null || backup.getName().isBlank() ? "backup-" + (i + 1) : backup.getName();
+            endpoints.add(new FailoverStreamingProvider.Endpoint(name,
+                    create(backup.getProvider(), inherit(backup.getOpenai(), props.getOpenai()),
+                            inherit(backup.getDify(), props.getDify()))));
+        }
+        return new FailoverStreamingProvider(endpoints, props.getFailover());
+    }
+
+    static StreamingProperties.OpenAi inherit(StreamingProperties.OpenAi backup, StreamingProperties.OpenAi primary) {
+        return new StreamingProperties.OpenAi(
+                or(backup.getApiUrl(), primary.getApiUrl()),
+                or(backup.getApiKey(), primary.getApiKey()),
+                or(backup.getModel(), primary.getModel()),
+                or(backup.getSystemPrompt(), primary.getSystemPrompt()));
+    }
+
+    static StreamingProperties.Dify inherit(StreamingProperties.Dify backup, StreamingProperties.Dify primary) {
+        return new StreamingProperties.Dify(
+                or(backup.getApiUrl(), primary.getApiUrl()),
+                or(backup.getApiKey(), primary.getApiKey()),
+                or(backup.getAppType(), primary.getAppType()));
+    }
+
+    private static String or(String value, String fallback) {
+        return value == null || value.isBlank() ? fallback : value;
+    }
+
+    private static StreamingProvider create(String provider, StreamingProperties.OpenAi openai,
+                                            StreamingProperties.Dify dify) {
+        return switch (provider.toLowerCase()) {
+            case "dify" -> new DifyStreamingProvider(dify);
+            default -> new OpenAiStreamingProvider(openai);
         };
     }
 }
@@ -0,0 +1,105 @@
+package io.github.feishu.bridge.streaming;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * {@link StreamingProvider#open} 返回的上游响应。
+ * 经过故障转移或对冲时，胜出的请求已读取了首个 token 及之前的若干行，这些行在后续内容之前按原顺序返回；
+ * 调用方应使用 {@link #provider()} 解码，而不是发起请求的组合 provider。
+ */
+public final class UpstreamResponse implements Closeable {
+
+    private final String endpoint;
+    private final String route;
+    private final StreamingProvider provider;
+    private final URI uri;
+    private final int statusCode;
+    private final InputStream body;
+    private final BufferedReader reader;
+    private final ArrayDeque<String> pending;
+    private final String errorBody;
+
+    UpstreamResponse(String endpoint, String route, StreamingProvider provider, URI uri, int statusCode,
+                     InputStream body, BufferedReader reader, List<String> pending, String errorBody) {
+        this.endpoint = endpoint;
+        this.route = route;
+        this.provider = provider;
+        this.uri = uri;
+        this.statusCode = statusCode;
+        this.body = body;
+        this.reader = reader != null ? reader
+                : new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        this.pending = new ArrayDeque<>(pending);
+        this.errorBody = errorBody;
+    }
+
+    /**
+     * 单端点请求的响应，尚未读取任何内容。
+     */
+    static UpstreamResponse direct(StreamingProvider provider, URI uri, int statusCode, InputStream body) {
+        return new UpstreamResponse(null, null, provider, uri, statusCode, body, null, List.of(), null);
+    }
+
+    /**
+     * 应答的端点名称，单端点时为 null。
+     */
+    public String endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * 胜出请求的来路：first（首选端点直接成功）| failover（前面的端点失败后切换）|
+     * hedge_won（对冲请求先返回 token）| hedge_lost（已发出对冲，但首选端点先返回 token）。单端点时为 null。
+     */
+    public String route() {
+        return route;
+    }
+
+    /**
+     * 解码本响应 SSE 行所用的 provider。
+     */
+    public StreamingProvider provider() {
+        return provider;
+    }
+
+    public URI uri() {
+        return uri;
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 读取下一行，先返回已预读的行；流结束时返回 null。
+     */
+    public String readLine() throws IOException {
+        String line = pending.poll();
+        return line != null ? line : reader.readLine();
+    }
+
+    /**
+     * 非 200 响应的内容。
+     */
+    public String readErrorBody() throws IOException {
+        if (errorBody != null) return errorBody;
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 直接关闭底层响应流：可能由其他线程调用以中断阻塞中的 {@link #readLine()}，
+     * 关闭 BufferedReader 会等待读取方持有的锁。
+     */
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.feishu.bridge.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.feishu.bridge.config.StreamingProperties;
+import io.github.feishu.bridge.service.ConversationLogIndex;
+import io.github.feishu.bridge.service.ConversationLogService;
+import io.github.feishu.bridge.service.ConversationRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationLogControllerTests {
+
+    @TempDir
+    Path dir;
+
+    private ConversationLogService service;
+    private ConversationLogController controller;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        var props = new StreamingProperties();
+        props.getLog().setEnabled(true);
+        props.getLog().setDir(dir.toString());
+        props.getLog().setFormat("ndjson");
+        service = new ConversationLogService(props);
+        controller = new ConversationLogController(service);
+
+        now = System.currentTimeMillis();
+        // 每 10 分钟一条，最新的在前：i = 0 为当前时间
+        for (int i = 11; i >= 0; i--) {
+            service.save(record(i, now - TimeUnit.MINUTES.toMillis(10L * i), i % 2 == 0 ? "dify" : "openai",
+                    1000L * i));
+        }
+        service.shutdown();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void sinceMinutesAndProviderNarrowTheResult() {
+        var body = query(null, null, 35, "dify", null, 0, 50, false);
+        // 35 分钟内为 i = 0..3，dify 为 i = 0, 2
+        assertThat(body.get("total")).isEqualTo(2);
+        assertThat(openIds(body)).containsExactly("ou_0", "ou_2");
+    }
+
+    @Test
+    void acceptsEpochMillisAndIsoTimes() {
+        String from = Instant.ofEpochMilli(now - TimeUnit.MINUTES.toMillis(45)).toString();
+        String to = Long.toString(now - TimeUnit.MINUTES.toMillis(15));
+        var body = query(from, to, null, null, null, 0, 50, false);
+        assertThat(openIds(body)).containsExactly("ou_2", "ou_3", "ou_4");
+    }
+
+    @Test
+    void rejectsUnparseableTimes() {
+        var response = controller.query("yesterday", null, null, null, null, null, null, null, null,
+                null, null, 0, 50, false);
+        assertThat(response.getStatusCode().value()).isEqualTo(400);
+    }
+
+    @Test
+    void minTtftAndPagingAreApplied() {
+        var body = query(null, null, null, null, 5000L, 2, 3, false);
+        // ttft >= 5000 为 i = 5..11，倒序跳过 2 条
+        assertThat(body.get("total")).isEqualTo(7);
+        assertThat(body.get("offset")).isEqualTo(2);
+        assertThat(openIds(body)).containsExactly("ou_7", "ou_8", "ou_9");
+    }
+
+    @Test
+    void limitIsClampedAndOffsetIsNonNegative() {
+        var body = query(null, null, null, null, null, -5, 10_000, false);
+        assertThat(body.get("offset")).isEqualTo(0);
+        assertThat(body.get("limit")).isEqualTo(500);
+        assertThat(openIds(body)).hasSize(12);
+
+        assertThat(query(null, null, null, null, null, 0, 0, false).get("limit")).isEqualTo(1);
+    }
+
+    @Test
+    void detailReadsTheFullRecord() {
+        var body = query(null, null, null, null, null, 0, 1, true);
+        @SuppressWarnings("unchecked")
+        var item = (Map<String, Object>) ((List<?>) body.get("items")).getFirst();
+        assertThat(((ConversationLogIndex.Entry) item.get("index")).openId()).isEqualTo("ou_0");
+        assertThat(((JsonNode) item.get("record")).path("userQuery").asText()).isEqualTo("问题 0");
+    }
+
+    private Map<String, Object> query(String from, String to, Integer sinceMinutes, String provider,
+                                      Long minTtftMs, int offset, int limit, boolean detail) {
+        var response = controller.query(from, to, sinceMinutes, null, null, provider, null, minTtftMs, null,
+                null, null, offset, limit, detail);
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        return response.getBody();
+    }
+
+    private static List<String> openIds(Map<String, Object> body) {
+        return ((List<?>) body.get("items")).stream()
+                .map(item -> ((ConversationLogIndex.Entry) item).openId())
+                .toList();
+    }
+
+    private static ConversationRecord record(int i, long timestamp, String provider, long ttftMs) {
+        return new ConversationRecord(timestamp, "ou_" + i, "om_" + i, null, null, "问题 " + i, provider,
+                false, false, 0, "none", List.of(), "http://127.0.0.1/v1/chat/completions", 200, null,
+                "回答 " + i, "om_reply_" + i, ttftMs + 100, ttftMs, 3, 10, 0, 0, 5, 100.0, 100.0);
+    }
+}
@@ -0,0 +1,319 @@
+package io.github.feishu.bridge.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.feishu.bridge.FeishuBridgeApplication;
+import io.github.feishu.bridge.service.FeishuWsService;
+import io.github.feishu.bridge.support.FeishuStubServer;
+import io.github.feishu.bridge.support.MockLlmServer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 端到端压测：在本进程内启动模拟大模型服务、飞书开放平台桩服务和完整的 Spring 上下文，
+ * 由虚拟用户向 {@link FeishuWsService#handleEvent} 注入合成的 im.message.receive_v1 事件，
+ * 从飞书桩服务收到的请求判断每条回复的首个内容和完整内容何时送达。
+ * <p>
+ * 每个虚拟用户使用独立的 open_id，发出一条消息后等待回复完成（或超时）再发下一条（闭环）。
+ * 结束后输出吞吐、首内容延迟（用户可见的 TTFT）和完成延迟的 p50/p99、卡片刷新频率、频控次数和堆内存占用。
+ * <p>
+ * 参数均为 {@code --name=value}：
+ * <ul>
+ *   <li>users（50）、messages 每个用户发送的消息数（5）、think-ms 两条消息的间隔（0）、timeout-seconds（120）；</li>
+ *   <li>ttft-ms（800）、tokens-per-second（30）、reply-tokens（100）：模拟大模型的输出节奏；</li>
+ *   <li>rate-limit-ratio（0）：卡片更新请求返回 429 的比例；</li>
+ *   <li>prompts（0）：大于 0 时所有消息从这么多个固定问题中轮流选取（用于观察响应缓存），否则每条消息各不相同；</li>
+ *   <li>名称中带 "." 的参数原样传给 Spring，如 {@code --streaming.card.engine=cardkit}、{@code --streaming.provider=dify}。</li>
+ * </ul>
+ * 运行方式：{@code mvn -Pload test-compile exec:exec -Dload.args="--users=200 --messages=3"}
+ */
+public final class LoadHarness {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private LoadHarness() {
+    }
+
+    /**
+     * 一条已发出、等待回复的消息
+     */
+    private static final class Pending {
+        final long sentNanos = System.nanoTime();
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        final AtomicInteger updates = new AtomicInteger();
+        volatile long firstContentNanos;
+        volatile long lastUpdateNanos;
+        volatile long doneNanos;
+
+        void finish(boolean success) {
+            if (!done.isDone()) {
+                doneNanos = System.nanoTime();
+                done.complete(success);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = new LinkedHashMap<String, String>();
+        var springArgs = new ArrayList<String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("参数格式应为 --name=value: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            if (name.contains(".")) springArgs.add(arg);
+            else options.put(name, arg.substring(arg.indexOf('=') + 1));
+        }
+        int users = intOption(options, "users", 50);
+        int messages = intOption(options, "messages", 5);
+        long thinkMs = intOption(options, "think-ms", 0);
+        long timeoutSeconds = intOption(options, "timeout-seconds", 120);
+        int ttftMs = intOption(options, "ttft-ms", 800);
+        double tokensPerSecond = doubleOption(options, "tokens-per-second", 30);
+        int replyTokens = intOption(options, "reply-tokens", 100);
+        double rateLimitRatio = doubleOption(options, "rate-limit-ratio", 0);
+        int prompts = intOption(options, "prompts", 0);
+        if (!options.isEmpty()) throw new IllegalArgumentException("未知参数: " + options.keySet());
+
+        try (var feishu = FeishuStubServer.start(); var llm = MockLlmServer.start()) {
+            feishu.setRecordCalls(false);
+            feishu.setRateLimitRatio(rateLimitRatio);
+            llm.setTtftMs(ttftMs);
+            llm.setTokensPerSecond(tokensPerSecond);
+            llm.setReplyTokens(replyTokens);
+
+            var pending = new ConcurrentHashMap<String, Pending>();
+            feishu.setListener(new FeishuStubServer.Listener() {
+                @Override
+                public void onReply(String repliedMessageId, String body) {
+                    Pending p = pending.get(repliedMessageId);
+                    if (p == null) return;
+                    if (!body.contains(MockLlmServer.START_MARKER)) {
+                        // 繁忙提示或错误卡片
+                        p.finish(false);
+                        return;
+                    }
+                    p.firstContentNanos = System.nanoTime();
+                    if (body.contains(MockLlmServer.END_MARKER)) p.finish(true);
+                }
+
+                @Override
+                public void onUpdate(String repliedMessageId, String body) {
+                    Pending p = pending.get(repliedMessageId);
+                    if (p == null) return;
+                    p.updates.incrementAndGet();
+                    p.lastUpdateNanos = System.nanoTime();
+                    if (body.contains(MockLlmServer.END_MARKER)) p.finish(true);
+                }
+            });
+
+            var properties = new LinkedHashMap<String, String>();
+            properties.put("spring.main.banner-mode", "off");
+            properties.put("logging.level.root", "WARN");
+            properties.put("logging.level.io.github.feishu.bridge", "WARN");
+            properties.put("logging.level.io.github.feishu.bridge.service.WebhookForwardService", "ERROR");
+            properties.put("feishu.app-id", "cli_load");
+            properties.put("feishu.app-secret", "load");
+            properties.put("feishu.ws.enabled", "false");
+            properties.put("feishu.base-url", feishu.baseUrl());
+            properties.put("feishu.webhook.urls", "");
+            properties.put("streaming.enabled", "true");
+            properties.put("streaming.reply-mode", "true");
+            properties.put("streaming.openai.api-url", llm.openAiUrl());
+            properties.put("streaming.openai.api-key", "load");
+            properties.put("streaming.dify.api-url", llm.difyUrl());
+            properties.put("streaming.dify.api-key", "load");
+            // 末条内容送达后会话还要做最终更新和收尾，下一条消息可能先到，留出余量以免被判为繁忙
+            properties.put("streaming.concurrency.max-conversations", String.valueOf(users * 2));
+            // 同名参数在命令行出现两次会被 Spring 合并成逗号分隔的值，这里先覆盖默认值
+            for (String arg : springArgs) {
+                properties.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+
+            try (var ctx = new SpringApplicationBuilder(FeishuBridgeApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .run(properties.entrySet().stream()
+                            .map(e -> "--" + e.getKey() + "=" + e.getValue())
+                            .toArray(String[]::new))) {
+                var ws = ctx.getBean(FeishuWsService.class);
+                var registry = ctx.getBean(MeterRegistry.class);
+                System.out.printf("压测开始: users=%d, messages=%d, prompts=%d, ttft=%dms, tokens/s=%.1f, replyTokens=%d, 429=%.0f%%, 其他参数=%s%n",
+                        users, messages, prompts, ttftMs, tokensPerSecond, replyTokens, rateLimitRatio * 100, springArgs);
+
+                var gcBefore = gcSnapshot();
+                var peakHeap = new AtomicLong();
+                var sampler = Executors.newSingleThreadScheduledExecutor(r -> Thread.ofPlatform().daemon().unstarted(r));
+                var memory = ManagementFactory.getMemoryMXBean();
+                sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(
+                        memory.getHeapMemoryUsage().getUsed(), Math::max), 0, 100, TimeUnit.MILLISECONDS);
+
+                var finished = new ConcurrentLinkedQueue<Pending>();
+                var timeouts = new AtomicInteger();
+                long start = System.nanoTime();
+                try (var vus = Executors.newVirtualThreadPerTaskExecutor()) {
+                    for (int u = 0; u < users; u++) {
+                        int user = u;
+                        vus.execute(() -> {
+                            for (int m = 0; m < messages; m++) {
+                                String messageId = "om_load_" + user + "_" + m;
+                                var p = new Pending();
+                                pending.put(messageId, p);
+                                String text = prompts > 0
+                                        ? "压测问题 " + (user * messages + m) % prompts
+                                        : "压测消息 " + user + "-" + m;
+                                ws.handleEvent(event(user, messageId, text));
+                                try {
+                                    p.done.get(timeoutSeconds, TimeUnit.SECONDS);
+                                    finished.add(p);
+                                } catch (TimeoutException e) {
+                                    timeouts.incrementAndGet();
+                                } catch (Exception e) {
+                                    return;
+                                } finally {
+                                    pending.remove(messageId);
+                                }
+                                if (thinkMs > 0) sleep(thinkMs);
+                            }
+                        });
+                    }
+                }
+                long elapsedNanos = System.nanoTime() - start;
+                sampler.shutdownNow();
+                var gcAfter = gcSnapshot();
+
+                System.gc();
+                long retainedHeap = memory.getHeapMemoryUsage().getUsed();
+                report(finished, timeouts.get(), elapsedNanos, feishu.stats(), llm.getRequests(), registry,
+                        peakHeap.get(), retainedHeap, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void report(ConcurrentLinkedQueue<Pending> finished, int timeouts, long elapsedNanos,
+                               FeishuStubServer.Stats stats, long upstreamRequests, MeterRegistry registry,
+                               long peakHeap, long retainedHeap, long gcCount, long gcMs) {
+        var succeeded = finished.stream().filter(p -> p.done.getNow(false)).toList();
+        int failed = finished.size() - succeeded.size();
+        double seconds = elapsedNanos / 1e9;
+
+        long[] ttft = succeeded.stream().mapToLong(p -> p.firstContentNanos - p.sentNanos).sorted().toArray();
+        long[] total = succeeded.stream().mapToLong(p -> p.doneNanos - p.sentNanos).sorted().toArray();
+        // 单条回复的卡片刷新频率：首个内容到最后一次更新之间的更新次数 / 时长
+        double[] refreshHz = succeeded.stream()
+                .filter(p -> p.updates.get() > 1 && p.lastUpdateNanos > p.firstContentNanos)
+                .mapToDouble(p -> p.updates.get() / ((p.lastUpdateNanos - p.firstContentNanos) / 1e9))
+                .sorted().toArray();
+
+        double rejected = registry.find("feishu.streaming.rejected").counters().stream()
+                .mapToDouble(Counter::count).sum();
+        double errors = registry.find("feishu.streaming.errors").counters().stream()
+                .mapToDouble(Counter::count).sum();
+        var cardUpdates = registry.find("feishu.card.update").timers();
+        long cardUpdateCount = cardUpdates.stream().mapToLong(Timer::count).sum();
+        double cardUpdateMeanMs = cardUpdateCount == 0 ? 0 : cardUpdates.stream()
+                .mapToDouble(t -> t.totalTime(TimeUnit.MILLISECONDS)).sum() / cardUpdateCount;
+
+        System.out.println();
+        System.out.println("========== 压测结果 ==========");
+        System.out.printf("耗时               : %.1fs%n", seconds);
+        System.out.printf("完成 / 失败 / 超时 : %d / %d / %d（繁忙拒绝 %.0f，上游错误 %.0f）%n",
+                succeeded.size(), failed, timeouts, rejected, errors);
+        System.out.printf("吞吐               : %.2f 条回复/秒（上游请求 %d 次）%n", succeeded.size() / seconds, upstreamRequests);
+        System.out.printf("首内容延迟 (TTFT)  : p50=%dms p90=%dms p99=%dms max=%dms%n",
+                percentileMs(ttft, 50), percentileMs(ttft, 90), percentileMs(ttft, 99), percentileMs(ttft, 100));
+        System.out.printf("完成延迟           : p50=%dms p90=%dms p99=%dms max=%dms%n",
+                percentileMs(total, 50), percentileMs(total, 90), percentileMs(total, 99), percentileMs(total, 100));
+        System.out.printf("卡片刷新频率       : 单条回复 p50=%.2fHz p99=%.2fHz，整体 %.1f 次/秒%n",
+                percentile(refreshHz, 50), percentile(refreshHz, 99), stats.updated() / seconds);
+        System.out.printf("卡片更新调用       : 飞书侧成功 %d，频控 429 %d；更新引擎调用 %d 次，平均 %.1fms%n",
+                stats.updated(), stats.rateLimited(), cardUpdateCount, cardUpdateMeanMs);
+        System.out.printf("堆内存             : 峰值 %.1fMB，结束 GC 后 %.1fMB；GC %d 次 / %dms%n",
+                peakHeap / 1048576.0, retainedHeap / 1048576.0, gcCount, gcMs);
+    }
+
+    private static String event(int user, String messageId, String text) {
+        try {
+            String content = MAPPER.writeValueAsString(Map.of("text", text));
+            var message = new LinkedHashMap<String, Object>();
+            message.put("message_id", messageId);
+            message.put("chat_id", "oc_load_" + user);
+            message.put("chat_type", "p2p");
+            message.put("message_type", "text");
+            message.put("content", content);
+            return MAPPER.writeValueAsString(Map.of(
+                    "schema", "2.0",
+                    "header", Map.of(
+                            "event_id", "ev_" + messageId,
+                            "event_type", "im.message.receive_v1",
+                            "create_time", String.valueOf(System.currentTimeMillis()),
+                            "app_id", "cli_load"),
+                    "event", Map.of(
+                            "sender", Map.of(
+                                    "sender_id", Map.of("open_id", "ou_load_" + user),
+                                    "sender_type", "user"),
+                            "message", message)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long percentileMs(long[] sortedNanos, int p) {
+        if (sortedNanos.length == 0) return 0;
+        int index = (int) Math.ceil(p / 100.0 * sortedNanos.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sortedNanos[Math.clamp(index, 0, sortedNanos.length - 1)]);
+    }
+
+    private static double percentile(double[] sorted, int p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.clamp(index, 0, sorted.length - 1)];
+    }
+
+    /**
+     * @return [GC 次数, GC 累计耗时 ms]
+     */
+    private static long[] gcSnapshot() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.remove(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static double doubleOption(Map<String, String> options, String name, double defaultValue) {
+        String value = options.remove(name);
+        return value == null || value.isBlank() ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
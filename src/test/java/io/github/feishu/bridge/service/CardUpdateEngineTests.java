@@ -0,0 +1,134 @@
+package io.github.feishu.bridge.service;
+
+import com.lark.oapi.Client;
+import io.github.feishu.bridge.config.FeishuProperties;
+import io.github.feishu.bridge.config.HttpClients;
+import io.github.feishu.bridge.config.HttpProperties;
+import io.github.feishu.bridge.config.StreamingProperties;
+import io.github.feishu.bridge.support.FeishuStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CardUpdateEngineTests {
+
+    private FeishuStubServer stub;
+    private FeishuApiService feishuApi;
+    private StreamingExecutors executors;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = FeishuStubServer.start();
+        var feishuProps = new FeishuProperties();
+        feishuProps.setAppId("cli_test");
+        feishuProps.setAppSecret("secret");
+        feishuProps.setBaseUrl(stub.baseUrl());
+        var streamingProps = new StreamingProperties();
+        var client = Client.newBuilder(feishuProps.getAppId(), feishuProps.getAppSecret())
+                .openBaseUrl(feishuProps.getBaseUrl())
+                .build();
+        feishuApi = new FeishuApiService(client, new TenantTokenManager(client, feishuProps),
+                new MessageCache(streamingProps), new ThreadMemoryStore(streamingProps),
+                new HttpClients(new HttpProperties()), feishuProps);
+        executors = new StreamingExecutors(streamingProps);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executors.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void cardKitUpdatesOnlyTheTextElement() throws Exception {
+        var engine = new CardKitCardEngine(feishuApi, executors);
+
+        String messageId = engine.send("ou_1", null, "你好");
+        assertThat(messageId).isNotNull();
+        assertThat(stub.calls("POST", "/cardkit/v1/cards").getFirst().body()).contains("streaming_mode");
+        assertThat(stub.calls("POST", "/im/v1/messages").getFirst().body()).contains("card_id");
+
+        assertThat(engine.update(messageId, "你好，世界", false)).isEqualTo(CardUpdateEngine.Result.OK);
+        assertThat(engine.update(messageId, "你好，世界！", true)).isEqualTo(CardUpdateEngine.Result.OK);
+        engine.release(messageId);
+
+        var contentCalls = stub.calls("PUT", "/cardkit/v1/cards/card_1/elements/" + CardKitCardEngine.ELEMENT_ID);
+        assertThat(contentCalls).hasSize(2);
+        assertThat(contentCalls.get(0).body()).contains("\"sequence\":1").doesNotContain("elements");
+        assertThat(contentCalls.get(1).body()).contains("\"sequence\":2");
+        var settings = stub.calls("PATCH", "/cardkit/v1/cards/card_1/settings");
+        assertThat(settings).hasSize(1);
+        assertThat(settings.getFirst().body()).contains("\"sequence\":3");
+        assertThat(stub.calls("PATCH", "/im/v1/messages")).isEmpty();
+    }
+
+    @Test
+    void releasingAnUnfinishedCardClosesStreamingOffTheCallingThread() throws Exception {
+        stub.setSettingsDelayMs(1000);
+        var engine = new CardKitCardEngine(feishuApi, executors);
+        String messageId = engine.send("ou_1", null, "你好");
+        assertThat(engine.update(messageId, "你好，世", false)).isEqualTo(CardUpdateEngine.Result.OK);
+
+        long start = System.nanoTime();
+        engine.release(messageId);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(500);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stub.calls("PATCH", "/cardkit/v1/cards/card_1/settings").isEmpty()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(stub.calls("PATCH", "/cardkit/v1/cards/card_1/settings")).singleElement()
+                .satisfies(c -> assertThat(c.body()).contains("streaming_mode").contains("\"sequence\":2"));
+    }
+
+    @Test
+    void fallsBackToPatchWhenCardKitIsUnavailable() throws Exception {
+        stub.setCardKitEnabled(false);
+        var engine = new CardKitCardEngine(feishuApi, executors);
+
+        String first = engine.send("ou_1", null, "a");
+        assertThat(first).isNotNull();
+        assertThat(engine.update(first, "ab", true)).isEqualTo(CardUpdateEngine.Result.OK);
+        assertThat(stub.calls("PATCH", "/im/v1/messages/" + first)).hasSize(1);
+        assertThat(engine.fallback().isTracked(first)).isTrue();
+        engine.release(first);
+        assertThat(engine.fallback().isTracked(first)).isFalse();
+
+        // 降级期间不再尝试创建卡片实体
+        engine.send("ou_1", null, "b");
+        assertThat(stub.calls("POST", "/cardkit/v1/cards")).hasSize(1);
+        assertThat(stub.calls("POST", "/im/v1/messages")).hasSize(2);
+    }
+
+    @Test
+    void fallsBackToWholeCardUpdateWhenElementUpdateFails() throws Exception {
+        var engine = new CardKitCardEngine(feishuApi, executors);
+        String messageId = engine.send("ou_1", "om_user", "a");
+        assertThat(stub.calls("POST", "/im/v1/messages/om_user/reply")).hasSize(1);
+
+        stub.setElementUpdateEnabled(false);
+        assertThat(engine.update(messageId, "ab", false)).isEqualTo(CardUpdateEngine.Result.OK);
+        assertThat(engine.update(messageId, "abc", true)).isEqualTo(CardUpdateEngine.Result.OK);
+
+        assertThat(stub.calls("PUT", "/cardkit/v1/cards/card_1/elements")).hasSize(1);
+        assertThat(stub.calls("PUT", "/cardkit/v1/cards/card_1").stream()
+                .filter(c -> !c.path().contains("/elements/"))).hasSize(2);
+    }
+
+    @Test
+    void patchEngineRebuildsTheWholeCard() throws Exception {
+        var engine = new PatchCardEngine(feishuApi);
+        String messageId = engine.send("ou_1", null, "a");
+        assertThat(engine.update(messageId, "ab", false)).isEqualTo(CardUpdateEngine.Result.OK);
+
+        var patches = stub.calls("PATCH", "/im/v1/messages/" + messageId);
+        assertThat(patches).hasSize(1);
+        assertThat(patches.getFirst().body()).contains("markdown");
+        assertThat(stub.calls("POST", "/cardkit/")).isEmpty();
+    }
+}
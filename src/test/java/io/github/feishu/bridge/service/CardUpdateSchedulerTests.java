@@ -0,0 +1,91 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import io.github.feishu.bridge.streaming.OpenAiStreamingProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CardUpdateSchedulerTests {
+
+    private StreamingExecutors executors;
+    private CardUpdateScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) scheduler.shutdown();
+        if (executors != null) executors.shutdown();
+    }
+
+    @Test
+    void fullFeishuApiPoolNeverRunsUpdatesOnTheSchedulerThread() throws Exception {
+        var props = new StreamingProperties();
+        props.getConcurrency().setFeishuApiThreads(1);
+        props.getConcurrency().setFeishuApiQueueCapacity(1);
+        props.getCard().setMaxPatchQps(100);
+        props.getCard().setMinIntervalMs(0);
+        var registry = new SimpleMeterRegistry();
+        var metrics = new StreamingMetrics(registry, props, new OpenAiStreamingProvider(props.getOpenai()));
+        var engine = new BlockingEngine();
+        executors = new StreamingExecutors(props);
+        scheduler = new CardUpdateScheduler(engine, executors, metrics, props);
+
+        for (int i = 0; i < 5; i++) scheduler.submit("om_" + i, "partial " + i);
+        assertThat(engine.started.await(5, TimeUnit.SECONDS)).isTrue();
+        // 一个线程被阻塞、队列已满，其余更新应留在调度器中等待，而不是在调度线程上执行
+        Thread.sleep(200);
+        assertThat(registry.counter("feishu.streaming.feishu.api.rejected",
+                "provider", "openai", "task", "card_update").count()).isPositive();
+
+        var done = new ArrayList<CompletableFuture<Boolean>>();
+        for (int i = 0; i < 5; i++) done.add(scheduler.complete("om_" + i, "final " + i));
+        engine.release.countDown();
+        CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertThat(engine.threads).noneMatch(name -> name.startsWith("card-scheduler"));
+        for (int i = 0; i < 5; i++) {
+            List<String> updates = engine.updates.get("om_" + i);
+            assertThat(updates).isNotEmpty();
+            assertThat(updates.getLast()).isEqualTo("final " + i);
+        }
+    }
+
+    /**
+     * 第一次更新阻塞到测试放行，模拟一次很慢的 PATCH。
+     */
+    private static final class BlockingEngine implements CardUpdateEngine {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final Map<String, List<String>> updates = new ConcurrentHashMap<>();
+
+        @Override
+        public String send(String openId, String replyToMessageId, String content) {
+            return null;
+        }
+
+        @Override
+        public Result update(String messageId, CharSequence content, boolean isFinal) throws Exception {
+            threads.add(Thread.currentThread().getName());
+            started.countDown();
+            release.await();
+            updates.computeIfAbsent(messageId, k -> new ArrayList<>()).add(content.toString());
+            return Result.OK;
+        }
+
+        @Override
+        public void release(String messageId) {
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationLogIndexTests {
+
+    private static final long BASE = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    private ConversationLogIndex index;
+    private ConversationLogService service;
+
+    @AfterEach
+    void tearDown() {
+        if (index != null) index.close();
+        if (service != null) service.shutdown();
+    }
+
+    @Test
+    void appendedEntriesSurviveReload() throws Exception {
+        index = new ConversationLogIndex(dir);
+        assertThat(index.load(Set.of())).isEmpty();
+        index.append(List.of(
+                entry(BASE, "ou_1", "openai", 200, "a.ndjson", 0),
+                new ConversationLogIndex.Entry(BASE + 1, null, "omt_1", 502, -1, 30, "dify", "a.ndjson", 100, 50),
+                entry(BASE + 2, "ou_2", "openai", 200, "b.ndjson", 0)));
+        index.close();
+
+        index = new ConversationLogIndex(dir);
+        // b.ndjson 已被删除，其索引行丢弃
+        assertThat(index.load(Set.of("a.ndjson"))).containsExactly("a.ndjson");
+        assertThat(index.size()).isEqualTo(2);
+        var items = index.query(all(), 0, 10).items();
+        assertThat(items.getFirst()).isEqualTo(
+                new ConversationLogIndex.Entry(BASE + 1, null, "omt_1", 502, -1, 30, "dify", "a.ndjson", 100, 50));
+        assertThat(items.get(1).openId()).isEqualTo("ou_1");
+    }
+
+    @Test
+    void tabsInFieldsDoNotBreakTheTsvLine() throws Exception {
+        index = new ConversationLogIndex(dir);
+        index.load(Set.of());
+        index.append(List.of(entry(BASE, "ou_\t1", "openai", 200, "a.ndjson", 0)));
+        index.close();
+
+        index = new ConversationLogIndex(dir);
+        index.load(Set.of("a.ndjson"));
+        assertThat(index.query(all(), 0, 10).items()).singleElement()
+                .satisfies(e -> assertThat(e.openId()).isEqualTo("ou_ 1"));
+    }
+
+    @Test
+    void removeFileDropsItsEntries() throws Exception {
+        index = new ConversationLogIndex(dir);
+        index.load(Set.of());
+        index.append(List.of(entry(BASE, "ou_1", "openai", 200, "a.ndjson", 0),
+                entry(BASE + 1, "ou_1", "openai", 200, "a.ndjson", 100),
+                entry(BASE + 2, "ou_1", "openai", 200, "b.ndjson", 0)));
+
+        index.removeFile("a.ndjson");
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.query(all(), 0, 10).items()).extracting(ConversationLogIndex.Entry::file)
+                .containsExactly("b.ndjson");
+    }
+
+    @Test
+    void removeFileForgetsStringsOnlyItsEntriesUsed() throws Exception {
+        index = new ConversationLogIndex(dir);
+        index.load(Set.of());
+        index.append(List.of(entry(BASE, "ou_1", "openai", 200, "a.ndjson", 0),
+                entry(BASE + 1, "ou_2", "openai", 200, "a.ndjson", 100),
+                entry(BASE + 2, "ou_1", "openai", 200, "b.ndjson", 0)));
+        // ou_1、ou_2、openai、a.ndjson、b.ndjson
+        assertThat(index.internedStrings()).isEqualTo(5);
+
+        index.removeFile("a.ndjson");
+        assertThat(index.internedStrings()).isEqualTo(3);
+    }
+
+    @Test
+    void timeCutoffScanAllowsForSlightlyOutOfOrderWrites() throws Exception {
+        long from = BASE;
+        long slack = TimeUnit.MINUTES.toMillis(1);
+        index = new ConversationLogIndex(dir);
+        index.load(Set.of());
+        // 按写入顺序：越往后写入越新，但时间戳可能略有乱序
+        index.append(List.of(
+                entry(from + 5_000, "ou_lost", "openai", 200, "a.ndjson", 0),
+                entry(from - slack - 1, "ou_old", "openai", 200, "a.ndjson", 100),
+                entry(from + 1_000, "ou_late", "openai", 200, "a.ndjson", 200),
+                entry(from - slack / 2, "ou_early", "openai", 200, "a.ndjson", 300)));
+
+        var page = index.query(filter(from, null, null, null), 0, 10);
+        // ou_early 早于 from 但在余量内，继续往前扫描找到 ou_late；ou_old 超出余量，扫描在此停止，
+        // 更早写入的 ou_lost 虽在区间内也不再返回（乱序超出余量）
+        assertThat(page.items()).extracting(ConversationLogIndex.Entry::openId).containsExactly("ou_late");
+        assertThat(page.total()).isEqualTo(1);
+
+        // 不限起始时间时全量扫描
+        assertThat(index.query(all(), 0, 10).total()).isEqualTo(4);
+    }
+
+    @Test
+    void filtersAndPagesNewestFirst() throws Exception {
+        index = new ConversationLogIndex(dir);
+        index.load(Set.of());
+        var batch = new ArrayList<ConversationLogIndex.Entry>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(new ConversationLogIndex.Entry(BASE + i * 1000L, "ou_" + (i % 2), "omt_" + i,
+                    i == 9 ? 500 : 200, i * 100L, i * 1000L, i % 3 == 0 ? "dify" : "openai",
+                    "a.ndjson", i * 100L, 100));
+        }
+        index.append(batch);
+
+        var page = index.query(filter(null, null, "OpenAI", null), 1, 3);
+        // openai: i = 1,2,4,5,7,8，倒序后跳过 8，取 7,5,4
+        assertThat(page.total()).isEqualTo(6);
+        assertThat(page.items()).extracting(ConversationLogIndex.Entry::threadId)
+                .containsExactly("omt_7", "omt_5", "omt_4");
+
+        var range = index.query(new ConversationLogIndex.Filter(BASE + 2000, BASE + 6000, "ou_0", null, null,
+                null, 300L, null, null, 5000L), 0, 10);
+        // [2000, 6000) 内 ou_0 为 i = 2,4；ttft >= 300 且 total <= 5000 只剩 i = 4
+        assertThat(range.items()).extracting(ConversationLogIndex.Entry::threadId).containsExactly("omt_4");
+
+        var errors = index.query(new ConversationLogIndex.Filter(null, null, null, null, null, 500,
+                null, 600L, null, null), 0, 10);
+        assertThat(errors.total()).isZero();
+        assertThat(index.query(filter(null, null, null, 500), 0, 10).items())
+                .extracting(ConversationLogIndex.Entry::threadId).containsExactly("omt_9");
+    }
+
+    @Test
+    void serviceRebuildsTheIndexForExistingLogFiles() throws Exception {
+        var props = new StreamingProperties();
+        var log = props.getLog();
+        log.setEnabled(true);
+        log.setDir(dir.toString());
+        log.setFormat("ndjson");
+        log.setIndexEnabled(false);
+        service = new ConversationLogService(props);
+        for (int i = 0; i < 5; i++) {
+            service.save(ConversationLogServiceTests.record(i, BASE + i, i % 2 == 0 ? "dify" : "openai",
+                    200, 10L * i, 100L * i));
+        }
+        service.shutdown();
+        assertThat(dir.resolve(ConversationLogIndex.INDEX_FILE)).doesNotExist();
+
+        log.setIndexEnabled(true);
+        service = new ConversationLogService(props);
+        awaitIndexed(5);
+        var page = service.query(all(), 0, 10);
+        assertThat(page.items()).extracting(ConversationLogIndex.Entry::openId)
+                .containsExactly("ou_user4", "ou_user3", "ou_user2", "ou_user1", "ou_user0");
+        var newest = page.items().getFirst();
+        assertThat(newest.provider()).isEqualTo("dify");
+        assertThat(newest.ttftMs()).isEqualTo(40);
+        assertThat(newest.totalMs()).isEqualTo(400);
+        assertThat(service.readRecord(newest).path("userQuery").asText()).isEqualTo("问题 4");
+        service.shutdown();
+        assertThat(Files.readAllLines(dir.resolve(ConversationLogIndex.INDEX_FILE))).hasSize(5);
+    }
+
+    private void awaitIndexed(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (service.query(all(), 0, 1).total() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static ConversationLogIndex.Entry entry(long ts, String openId, String provider, int status,
+                                                    String file, long offset) {
+        return new ConversationLogIndex.Entry(ts, openId, null, status, 10, 100, provider, file, offset, 100);
+    }
+
+    private static ConversationLogIndex.Filter all() {
+        return filter(null, null, null, null);
+    }
+
+    private static ConversationLogIndex.Filter filter(Long from, Long to, String provider, Integer httpStatus) {
+        return new ConversationLogIndex.Filter(from, to, null, null, provider, httpStatus, null, null, null, null);
+    }
+}
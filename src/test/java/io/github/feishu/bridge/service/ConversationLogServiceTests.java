@@ -0,0 +1,110 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationLogServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private ConversationLogService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) service.shutdown();
+    }
+
+    @Test
+    void shutdownDrainsQueuedRecords() throws Exception {
+        var props = props("ndjson", 100_000, "drop");
+        service = new ConversationLogService(props);
+        for (int i = 0; i < 5000; i++) {
+            service.save(record(i));
+        }
+        service.shutdown();
+
+        assertThat(service.getDropped()).isZero();
+        assertThat(service.getQueueDepth()).isZero();
+        assertThat(countLines(".ndjson")).isEqualTo(5000);
+    }
+
+    @Test
+    void fullQueueDropsAndCountsUnderDropPolicy() throws Exception {
+        // 容量 2 且 files 模式每条都写一个文件，生产速度远高于写入速度
+        var props = props("files", 2, "drop");
+        service = new ConversationLogService(props);
+        int total = 2000;
+        for (int i = 0; i < total; i++) {
+            service.save(record(i));
+        }
+        service.shutdown();
+
+        assertThat(service.getDropped()).isPositive();
+        assertThat(countFiles(".json") + service.getDropped()).isEqualTo(total);
+    }
+
+    @Test
+    void fullQueueWaitsUnderBlockPolicy() throws Exception {
+        var props = props("files", 2, "block");
+        props.getLog().setBlockTimeoutMs(5000);
+        service = new ConversationLogService(props);
+        int total = 500;
+        for (int i = 0; i < total; i++) {
+            service.save(record(i));
+        }
+        service.shutdown();
+
+        assertThat(service.getDropped()).isZero();
+        assertThat(countFiles(".json")).isEqualTo(total);
+    }
+
+    private StreamingProperties props(String format, int queueCapacity, String overflowPolicy) {
+        var props = new StreamingProperties();
+        var log = props.getLog();
+        log.setEnabled(true);
+        log.setDir(dir.toString());
+        log.setFormat(format);
+        log.setMaxFiles(0);
+        log.setQueueCapacity(queueCapacity);
+        log.setOverflowPolicy(overflowPolicy);
+        log.setIndexEnabled(false);
+        return props;
+    }
+
+    static ConversationRecord record(int i) {
+        return record(i, System.currentTimeMillis(), "openai", 200, 20, 100);
+    }
+
+    static ConversationRecord record(int i, long timestamp, String provider, int httpStatus, long ttftMs,
+                                     long totalMs) {
+        return new ConversationRecord(timestamp, "ou_user" + i, "om_" + i, null, null,
+                "问题 " + i, provider, false, false, 0, "none", List.of(), "http://127.0.0.1/v1/chat/completions",
+                httpStatus, null, "回答 " + i, "om_reply_" + i, totalMs, ttftMs, 3, 10, 0, 0, 5, 100.0, 100.0);
+    }
+
+    private long countFiles(String suffix) throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(suffix)).count();
+        }
+    }
+
+    private long countLines(String suffix) throws IOException {
+        long lines = 0;
+        try (var files = Files.list(dir)) {
+            for (Path file : files.filter(p -> p.getFileName().toString().endsWith(suffix)).toList()) {
+                lines += Files.readAllLines(file).size();
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.feishu.bridge.service;
+
+import com.lark.oapi.Client;
+import io.github.feishu.bridge.config.FeishuProperties;
+import io.github.feishu.bridge.config.HttpClients;
+import io.github.feishu.bridge.config.HttpProperties;
+import io.github.feishu.bridge.config.StreamingProperties;
+import io.github.feishu.bridge.support.FeishuStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeishuApiServiceTests {
+
+    private static final int MAX_CHARS_PER_THREAD = 30;
+    private static final long BASE = 1_700_000_000_000L;
+
+    private FeishuStubServer stub;
+    private TenantTokenManager tokenManager;
+    private FeishuApiService feishuApi;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = FeishuStubServer.start();
+        var feishuProps = new FeishuProperties();
+        feishuProps.setAppId("cli_test");
+        feishuProps.setAppSecret("secret");
+        feishuProps.setBaseUrl(stub.baseUrl());
+        var streamingProps = new StreamingProperties();
+        streamingProps.getMemory().setMaxCharsPerThread(MAX_CHARS_PER_THREAD);
+        var client = Client.newBuilder(feishuProps.getAppId(), feishuProps.getAppSecret())
+                .openBaseUrl(feishuProps.getBaseUrl())
+                .build();
+        tokenManager = new TenantTokenManager(client, feishuProps);
+        feishuApi = new FeishuApiService(client, tokenManager,
+                new MessageCache(streamingProps), new ThreadMemoryStore(streamingProps),
+                new HttpClients(new HttpProperties()), feishuProps);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tokenManager.shutdown();
+        stub.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {99991661, 99991663})
+    void proxyRequestRefreshesTheTokenAndRetriesOnce(int code) throws Exception {
+        assertThat(feishuApi.proxyRequest("GET", "/im/v1/chats", null)).contains("\"code\":0");
+        assertThat(stub.getTokensIssued()).isEqualTo(1);
+
+        stub.revokeIssuedTokens(code);
+        String body = feishuApi.proxyRequest("GET", "/im/v1/chats", null);
+
+        assertThat(body).contains("\"code\":0");
+        assertThat(stub.getTokensIssued()).isEqualTo(2);
+        assertThat(stub.calls("GET", "/im/v1/chats")).hasSize(3);
+        assertThat(tokenManager.getToken().value()).isEqualTo("t-stub-2");
+    }
+
+    @Test
+    void otherErrorCodesAreReturnedWithoutRetry() throws Exception {
+        feishuApi.proxyRequest("GET", "/im/v1/chats", null);
+        stub.revokeIssuedTokens(99991400);
+
+        assertThat(feishuApi.proxyRequest("GET", "/im/v1/chats", null)).contains("\"code\":99991400");
+        assertThat(stub.getTokensIssued()).isEqualTo(1);
+        assertThat(stub.calls("GET", "/im/v1/chats")).hasSize(2);
+    }
+
+    @Test
+    void threadHistoryIgnoresMessagesBeforeTheCursorWhenStartTimeIsIgnored() {
+        for (int i = 1; i <= 5; i++) {
+            stub.addThreadMessage("omt_1", "om_" + i, i % 2 == 0 ? "app" : "user", "消息" + i + "-123456", BASE + i * 1000L);
+        }
+        // 每条 10 个字符，上限 30：只保留最新的 3 条
+        assertThat(contents(feishuApi.fetchThreadHistory("omt_1", 10)))
+                .containsExactly("消息3-123456", "消息4-123456", "消息5-123456");
+
+        // 桩服务和真实接口一样忽略 start_time，再次返回整个话题；已裁剪的消息不能重新混进来
+        stub.addThreadMessage("omt_1", "om_6", "app", "消息6-123456", BASE + 6000);
+        stub.addThreadMessage("omt_1", "om_7", "user", "消息7-123456", BASE + 6500);
+        var history = feishuApi.fetchThreadHistory("omt_1", 10);
+        assertThat(contents(history)).containsExactly("消息5-123456", "消息6-123456", "消息7-123456");
+        assertThat(history.get(1).get("role")).isEqualTo("assistant");
+
+        assertThat(contents(feishuApi.fetchThreadHistory("omt_1", 10)))
+                .containsExactly("消息5-123456", "消息6-123456", "消息7-123456");
+    }
+
+    private static List<String> contents(List<Map<String, String>> history) {
+        return history.stream().map(m -> m.get("content")).toList();
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.feishu.bridge.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HashingEmbedderTests {
+
+    private static final double THRESHOLD = 0.85;
+
+    @Test
+    void paraphrasesAreAboveTheDefaultThreshold() {
+        assertThat(similarity("如何重置密码", "密码怎么重置")).isGreaterThanOrEqualTo(THRESHOLD);
+        assertThat(similarity("How do I reset my password?", "password reset")).isGreaterThanOrEqualTo(THRESHOLD);
+        assertThat(similarity("what is the deadline", "What's the deadline?")).isGreaterThanOrEqualTo(THRESHOLD);
+    }
+
+    @Test
+    void differentQuestionsAreBelowTheDefaultThreshold() {
+        assertThat(similarity("如何重置密码", "如何修改邮箱")).isLessThan(THRESHOLD);
+        assertThat(similarity("how do i reset my password", "how do i reset my phone")).isLessThan(THRESHOLD);
+    }
+
+    @Test
+    void whWordsChangeTheQuestion() {
+        assertThat(similarity("when is the deadline", "what is the deadline")).isLessThan(THRESHOLD);
+        assertThat(similarity("where is the office", "who is the office manager")).isLessThan(THRESHOLD);
+        assertThat(similarity("why is vpn slow", "vpn slow")).isLessThan(THRESHOLD);
+    }
+
+    @Test
+    void vectorsAreUnitLength() {
+        float[] v = HashingEmbedder.embed(ResponseCache.normalize("报销流程是什么"));
+        assertThat(v).hasSize(HashingEmbedder.DIMENSIONS);
+        double norm = 0;
+        for (float x : v) norm += x * x;
+        assertThat(norm).isCloseTo(1.0, within(1e-5));
+    }
+
+    @Test
+    void textWithoutFeaturesHasNoVector() {
+        assertThat(HashingEmbedder.embed("how do i")).isNull();
+        assertThat(HashingEmbedder.embed("请问吗")).isNull();
+        assertThat(HashingEmbedder.embed("？！")).isNull();
+    }
+
+    static double similarity(String a, String b) {
+        float[] x = HashingEmbedder.embed(ResponseCache.normalize(a));
+        float[] y = HashingEmbedder.embed(ResponseCache.normalize(b));
+        double dot = 0;
+        for (int i = 0; i < x.length; i++) dot += x[i] * y[i];
+        return dot;
+    }
+}
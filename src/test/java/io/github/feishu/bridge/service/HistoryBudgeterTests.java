@@ -0,0 +1,67 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistoryBudgeterTests {
+
+    private final HistoryBudgeter budgeter = new HistoryBudgeter(props());
+
+    @Test
+    void summaryFollowsTheSlidingHistoryWindow() {
+        // 预算只放得下最近一问一答，其余压缩为摘要
+        String first = summary(budgeter.apply("omt_1", turns(1, 3)));
+        assertThat(first).contains("用户: 问题1", "助手: 回答2").doesNotContain("问题3");
+
+        // 历史窗口向前滑动一轮：问题1 已不在历史中，摘要仍保留它，并且只追加新挤出的一轮
+        String second = summary(budgeter.apply("omt_1", turns(2, 4)));
+        assertThat(second).startsWith(first).contains("用户: 问题3", "助手: 回答3").doesNotContain("问题4");
+        assertThat(second.split("问题2", -1)).hasSize(2);
+    }
+
+    @Test
+    void unrelatedHistoryUnderTheSameKeyStartsANewSummary() {
+        summary(budgeter.apply("ou_1", turns(1, 3)));
+
+        var other = List.<Map<String, String>>of(
+                Map.of("role", "user", "content", "另一件事"),
+                Map.of("role", "assistant", "content", "好的"),
+                Map.of("role", "user", "content", "问题9"),
+                Map.of("role", "assistant", "content", "回答9"));
+        String summary = summary(budgeter.apply("ou_1", other));
+        assertThat(summary).contains("用户: 另一件事").doesNotContain("问题1");
+    }
+
+    /**
+     * 第 from 到 to 轮（含）的一问一答
+     */
+    private static List<Map<String, String>> turns(int from, int to) {
+        var history = new ArrayList<Map<String, String>>();
+        for (int i = from; i <= to; i++) {
+            history.add(Map.of("role", "user", "content", "问题" + i));
+            history.add(Map.of("role", "assistant", "content", "回答" + i));
+        }
+        return history;
+    }
+
+    private static String summary(List<Map<String, String>> history) {
+        assertThat(history.getFirst().get("role")).isEqualTo("system");
+        return history.getFirst().get("content");
+    }
+
+    private static StreamingProperties props() {
+        var props = new StreamingProperties();
+        var memory = props.getMemory();
+        memory.setSummaryEnabled(true);
+        memory.setSummaryMaxChars(100);
+        // 摘要标题约 12 tokens，摘要预留 100，剩余 6 tokens 放得下一问一答（每条约 3 tokens）
+        memory.setMaxHistoryTokens(118);
+        return props;
+    }
+}
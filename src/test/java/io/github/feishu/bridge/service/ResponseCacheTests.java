@@ -0,0 +1,89 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheTests {
+
+    private static final String SCOPE = "openai\nhttp://127.0.0.1/v1/chat/completions\ngpt\n";
+
+    @Test
+    void normalizeFoldsWidthCaseAndWhitespace() {
+        assertThat(ResponseCache.normalize("ＶＰＮ　怎么连？")).isEqualTo("vpn 怎么连");
+        assertThat(ResponseCache.normalize("  VPN \t\n 怎么连  ")).isEqualTo("vpn 怎么连");
+        assertThat(ResponseCache.normalize("Ｈｅｌｌｏ　Ｗｏｒｌｄ")).isEqualTo("hello world");
+    }
+
+    @Test
+    void normalizeStripsOnlyTrailingPunctuation() {
+        assertThat(ResponseCache.normalize("如何报销？！。")).isEqualTo("如何报销");
+        assertThat(ResponseCache.normalize("如何报销 ？")).isEqualTo("如何报销");
+        assertThat(ResponseCache.normalize("what's v1.2, really?")).isEqualTo("what's v1.2, really");
+        assertThat(ResponseCache.normalize("c++ 怎么用...")).isEqualTo("c++ 怎么用");
+        assertThat(ResponseCache.normalize("？！")).isEmpty();
+    }
+
+    @Test
+    void firstSegmentKeepsShortAnswersAndCutsAtTheLastNewline() {
+        assertThat(ResponseCache.firstSegment("短回答")).isEqualTo("短回答");
+        String exact = "a".repeat(64);
+        assertThat(ResponseCache.firstSegment(exact)).isSameAs(exact);
+
+        String answer = "第一段\n" + "第二段".repeat(10) + "\n" + "x".repeat(100);
+        assertThat(ResponseCache.firstSegment(answer)).isEqualTo("第一段\n" + "第二段".repeat(10));
+        // 开头就是换行时不截成空内容
+        assertThat(ResponseCache.firstSegment("\n" + "y".repeat(100))).hasSize(64);
+    }
+
+    @Test
+    void firstSegmentDoesNotSplitASurrogatePair() {
+        String answer = "a".repeat(63) + "😀" + "b".repeat(20);
+        String segment = ResponseCache.firstSegment(answer);
+        assertThat(segment).isEqualTo("a".repeat(63));
+        assertThat(Character.isHighSurrogate(segment.charAt(segment.length() - 1))).isFalse();
+
+        assertThat(ResponseCache.firstSegment("a".repeat(62) + "😀" + "b".repeat(20)))
+                .isEqualTo("a".repeat(62) + "😀");
+    }
+
+    @Test
+    void uncacheableRequestsHaveNoKey() {
+        var cache = cache(100);
+        assertThat(cache.key(null, "如何报销")).isNull();
+        assertThat(cache.key(SCOPE, null)).isNull();
+        assertThat(cache.key(SCOPE, " ？！ ")).isNull();
+        assertThat(cache.get(null)).isNull();
+    }
+
+    @Test
+    void equivalentQuestionsShareOneEntry() {
+        var cache = cache(100);
+        cache.put(cache.key(SCOPE, "如何报销？"), "提交报销单");
+
+        var hit = cache.get(cache.key(new String(SCOPE), "  如何报销"));
+        assertThat(hit).isEqualTo(new ResponseCache.Hit("提交报销单", false, 1));
+        assertThat(cache.key(new String(SCOPE), "q").scope()).isSameAs(cache.key(SCOPE, "q").scope());
+        assertThat(cache.get(cache.key("dify-chat\nhttp://127.0.0.1/v1\nkey", "如何报销"))).isNull();
+    }
+
+    @Test
+    void blankAndOversizedAnswersAreNotStored() {
+        var cache = cache(10);
+        cache.put(cache.key(SCOPE, "a"), "   ");
+        cache.put(cache.key(SCOPE, "b"), "x".repeat(11));
+        cache.put(null, "答案");
+        assertThat(cache.size()).isZero();
+
+        cache.put(cache.key(SCOPE, "c"), "x".repeat(10));
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    private static ResponseCache cache(int maxAnswerChars) {
+        var props = new StreamingProperties();
+        props.getCache().setEnabled(true);
+        props.getCache().setMaxAnswerChars(maxAnswerChars);
+        return new ResponseCache(props, null);
+    }
+}
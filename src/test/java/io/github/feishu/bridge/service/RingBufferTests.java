@@ -0,0 +1,96 @@
+package io.github.feishu.bridge.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RingBufferTests {
+
+    private record Item(int producer, int seq) {
+    }
+
+    @Test
+    void multipleProducersLoseNothingAndKeepPerProducerOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 20_000;
+        var queue = new RingBuffer<Item>(256);
+        var start = new CountDownLatch(1);
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    // 队列容量远小于总量，生产者会频繁遇到队列满
+                    while (!queue.offer(new Item(producer, i))) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+
+        var consumed = new ArrayList<Item>(producers * perProducer);
+        var producersDone = new AtomicBoolean();
+        var consumer = Thread.ofPlatform().start(() -> {
+            var batch = new ArrayList<Item>();
+            while (!producersDone.get() || !queue.isEmpty()) {
+                if (queue.drainTo(batch, 64) == 0) Thread.yield();
+                consumed.addAll(batch);
+                batch.clear();
+            }
+        });
+        start.countDown();
+        for (Thread t : threads) {
+            t.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        producersDone.set(true);
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+
+        assertThat(consumed).hasSize(producers * perProducer);
+        int[] next = new int[producers];
+        for (Item item : consumed) {
+            assertThat(item.seq()).as("producer %d", item.producer()).isEqualTo(next[item.producer()]);
+            next[item.producer()]++;
+        }
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.size()).isZero();
+    }
+
+    @Test
+    void offerFailsWhenFullAndSucceedsAgainAfterDrain() {
+        var queue = new RingBuffer<Integer>(3);
+        assertThat(queue.capacity()).isEqualTo(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(queue.offer(i)).isTrue();
+        }
+        assertThat(queue.offer(4)).isFalse();
+        assertThat(queue.size()).isEqualTo(4);
+
+        var out = new ArrayList<Integer>();
+        assertThat(queue.drainTo(out, 2)).isEqualTo(2);
+        assertThat(queue.offer(4)).isTrue();
+        assertThat(queue.offer(5)).isTrue();
+        assertThat(queue.offer(6)).isFalse();
+
+        assertThat(queue.drainTo(out, 10)).isEqualTo(4);
+        assertThat(out).containsExactly(0, 1, 2, 3, 4, 5);
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.drainTo(out, 10)).isZero();
+    }
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertThat(new RingBuffer<>(1).capacity()).isEqualTo(2);
+        assertThat(new RingBuffer<>(8).capacity()).isEqualTo(8);
+        assertThat(new RingBuffer<>(10000).capacity()).isEqualTo(16384);
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.feishu.bridge.service;
+
+import io.github.feishu.bridge.config.StreamingProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticCacheTests {
+
+    private static final String SCOPE = "openai\n\nhttp://127.0.0.1/v1/chat/completions";
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+
+    @Test
+    void findsAParaphraseThroughTheLshIndex() {
+        var cache = cache(100);
+        cache.put(key(SCOPE, "如何重置密码"), "在设置页点击重置密码");
+        cache.put(key(SCOPE, "how do I reset my password"), "Open settings and click reset");
+        cache.put(key(SCOPE, "报销流程是什么"), "提交报销单后由主管审批");
+
+        var match = cache.lookup(key(SCOPE, "密码怎么重置？"));
+        assertThat(match).isNotNull();
+        assertThat(match.answer()).isEqualTo("在设置页点击重置密码");
+        assertThat(match.prompt()).isEqualTo("如何重置密码");
+        assertThat(match.similarity()).isGreaterThanOrEqualTo(0.85);
+
+        assertThat(cache.lookup(key(SCOPE, "Password reset"))).isNotNull()
+                .extracting(SemanticCache.Match::answer).isEqualTo("Open settings and click reset");
+    }
+
+    @Test
+    void differentQuestionsMiss() {
+        var cache = cache(100);
+        cache.put(key(SCOPE, "what is the deadline"), "周五");
+        cache.put(key(SCOPE, "如何重置密码"), "在设置页点击重置密码");
+
+        assertThat(cache.lookup(key(SCOPE, "when is the deadline"))).isNull();
+        assertThat(cache.lookup(key(SCOPE, "如何修改邮箱"))).isNull();
+        assertThat(cache.lookup(key(SCOPE, "how do i"))).isNull();
+    }
+
+    @Test
+    void scopesAreIsolated() {
+        var cache = cache(100);
+        cache.put(key(SCOPE, "如何重置密码"), "在设置页点击重置密码");
+
+        assertThat(cache.lookup(key("dify-chat\nhttp://127.0.0.1/v1", "密码怎么重置"))).isNull();
+        assertThat(cache.lookup(key(SCOPE, "密码怎么重置"))).isNotNull();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyHitEntryBeyondMaxEntries() {
+        var cache = cache(2);
+        cache.put(key(SCOPE, "如何重置密码"), "a1");
+        cache.put(key(SCOPE, "报销流程是什么"), "a2");
+        // 命中刷新访问顺序，下一次淘汰报销流程
+        assertThat(cache.lookup(key(SCOPE, "密码怎么重置"))).isNotNull();
+
+        cache.put(key(SCOPE, "vpn 怎么连接"), "a3");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.lookup(key(SCOPE, "报销流程是什么"))).isNull();
+        assertThat(cache.lookup(key(SCOPE, "如何重置密码"))).isNotNull();
+        assertThat(cache.lookup(key(SCOPE, "vpn 怎么连接"))).isNotNull();
+    }
+
+    @Test
+    void replacingAKeyKeepsOneEntry() {
+        var cache = cache(10);
+        cache.put(key(SCOPE, "如何重置密码"), "旧回答");
+        cache.put(key(SCOPE, "如何重置密码"), "新回答");
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.lookup(key(SCOPE, "密码怎么重置")).answer()).isEqualTo("新回答");
+    }
+
+    @Test
+    void expiredEntriesAreNotReturnedAndAreRemoved() {
+        var cache = cache(10);
+        cache.put(key(SCOPE, "如何重置密码"), "在设置页点击重置密码");
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(59));
+        assertThat(cache.lookup(key(SCOPE, "密码怎么重置"))).isNotNull();
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(2));
+        assertThat(cache.lookup(key(SCOPE, "密码怎么重置"))).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    private SemanticCache cache(int maxEntries) {
+        var props = new StreamingProperties();
+        props.getCache().setSemanticMaxEntries(maxEntries);
+        props.getCache().setTtlMinutes(60);
+        return new SemanticCache(props, now::get);
+    }
+
+    private static ResponseCache.Key key(String scope, String query) {
+        return new ResponseCache.Key(scope, ResponseCache.normalize(query));
+    }
+}
@@ -0,0 +1,262 @@
+package io.github.feishu.bridge.service;
+
+import com.lark.oapi.Client;
+import io.github.feishu.bridge.config.FeishuProperties;
+import io.github.feishu.bridge.config.HttpClients;
+import io.github.feishu.bridge.config.HttpProperties;
+import io.github.feishu.bridge.config.StreamingProperties;
+import io.github.feishu.bridge.streaming.DifyStreamingProvider;
+import io.github.feishu.bridge.streaming.OpenAiStreamingProvider;
+import io.github.feishu.bridge.streaming.StreamingProvider;
+import io.github.feishu.bridge.support.FeishuStubServer;
+import io.github.feishu.bridge.support.MockLlmServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 回复链路：响应缓存的查询与写入，以及同一用户连续提问时的取代策略。
+ */
+class StreamingReplyServiceTests {
+
+    private static final String QUERY = "如何报销？";
+
+    private FeishuStubServer feishu;
+    private MockLlmServer llm;
+    private StreamingProperties props;
+    private SimpleMeterRegistry registry;
+    private MessageCache messageCache;
+    private StreamingExecutors executors;
+    private CardUpdateScheduler scheduler;
+    private ResponseCache cache;
+    private StreamingReplyService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        feishu = FeishuStubServer.start();
+        llm = MockLlmServer.start();
+        llm.setTtftMs(0);
+        llm.setTokensPerSecond(1000);
+        llm.setReplyTokens(5);
+        props = new StreamingProperties();
+        props.setReplyMode(true);
+        props.getOpenai().setApiUrl(llm.openAiUrl());
+        props.getOpenai().setApiKey("test");
+        props.getDify().setApiUrl(llm.difyUrl());
+        props.getDify().setApiKey("test");
+        props.getCache().setEnabled(true);
+        props.getCard().setMinIntervalMs(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) scheduler.shutdown();
+        if (executors != null) executors.shutdown();
+        llm.close();
+        feishu.close();
+    }
+
+    @Test
+    void replyWithoutHistoryIsStoredAndReplayed() throws Exception {
+        start(new OpenAiStreamingProvider(props.getOpenai()));
+
+        reply("om_1", null, QUERY);
+        assertThat(cache.size()).isEqualTo(1);
+        reply("om_2", null, "如何报销");
+
+        assertThat(llm.getRequests()).isEqualTo(1);
+        assertThat(cacheLookups("miss")).isEqualTo(1);
+        assertThat(cacheLookups("hit")).isEqualTo(1);
+        assertThat(feishu.calls("POST", "/im/v1/messages/om_2/reply")).hasSize(1);
+    }
+
+    @Test
+    void requestWithHistoryNeverHitsTheCache() throws Exception {
+        props.getMemory().setEnabled(true);
+        start(new OpenAiStreamingProvider(props.getOpenai()));
+        reply("om_1", null, QUERY);
+        assertThat(cache.size()).isEqualTo(1);
+
+        // 回复链上有一条历史，同一问题的回答取决于上下文
+        messageCache.put("om_parent", new MessageCache.CachedMessage("user", "我在上海出差", null));
+        reply("om_2", "om_parent", QUERY);
+
+        assertThat(llm.getRequests()).isEqualTo(2);
+        assertThat(cacheLookups("miss")).isEqualTo(1);
+        assertThat(cacheLookups("hit")).isZero();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void nullCacheScopeNeverHitsTheCache() throws Exception {
+        var dify = new DifyStreamingProvider(props.getDify());
+        start(dify);
+        reply("om_1", null, QUERY);
+        // 首轮回答后记下了 Dify 会话，后续请求依赖上游会话状态
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(dify.cacheScope("ou_1")).isNull();
+
+        reply("om_2", null, QUERY);
+        assertThat(llm.getRequests()).isEqualTo(2);
+        assertThat(cacheLookups("miss")).isEqualTo(1);
+        assertThat(cacheLookups("hit")).isZero();
+    }
+
+    @Test
+    void errorRepliesAreNotStored() throws Exception {
+        start(new OpenAiStreamingProvider(props.getOpenai()));
+        llm.setStatus(500);
+        reply("om_1", null, QUERY);
+        assertThat(cache.size()).isZero();
+
+        llm.setStatus(200);
+        reply("om_2", null, QUERY);
+        assertThat(llm.getRequests()).isEqualTo(2);
+        assertThat(cacheLookups("miss")).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void streamEndingWithoutDoneIsNotStored() throws Exception {
+        start(new OpenAiStreamingProvider(props.getOpenai()));
+        llm.setTruncated(true);
+        reply("om_1", null, QUERY);
+        // 截断的回答照常展示给本次提问的用户，但不写入缓存
+        assertThat(feishu.calls("PATCH", "/im/v1/messages/")).isNotEmpty();
+        assertThat(cache.size()).isZero();
+
+        llm.setTruncated(false);
+        reply("om_2", null, QUERY);
+        assertThat(llm.getRequests()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void replyWhoseFinalCardUpdateFailedIsNotStored() throws Exception {
+        start(new OpenAiStreamingProvider(props.getOpenai()));
+        feishu.setRateLimitRatio(1);
+        reply("om_1", null, QUERY);
+
+        assertThat(feishu.stats().rateLimited()).isPositive();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void supersededRepliesAreNotStored() throws Exception {
+        props.getConcurrency().setSupersedePolicy("cancel");
+        llm.setTokensPerSecond(10);
+        llm.setReplyTokens(30);
+        start(new OpenAiStreamingProvider(props.getOpenai()));
+
+        service.handleMessage("ou_1", "oc_1", "第一个问题", "om_1", null, null);
+        await(() -> !feishu.calls("POST", "/im/v1/messages/om_1/reply").isEmpty());
+        llm.setTokensPerSecond(1000);
+        llm.setReplyTokens(5);
+        reply("om_2", null, "第二个问题");
+
+        assertThat(cache.get(cache.key(scope(), "第一个问题"))).isNull();
+        assertThat(cache.get(cache.key(scope(), "第二个问题"))).isNotNull();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void sameUserInAnotherChatDoesNotSupersede() throws Exception {
+        props.getConcurrency().setSupersedePolicy("cancel");
+        llm.setTokensPerSecond(20);
+        llm.setReplyTokens(10);
+        start(new OpenAiStreamingProvider(props.getOpenai()));
+
+        service.handleMessage("ou_1", "oc_dm", "第一个问题", "om_1", null, null);
+        await(() -> !feishu.calls("POST", "/im/v1/messages/om_1/reply").isEmpty());
+        service.handleMessage("ou_1", "oc_group", "第二个问题", "om_2", null, null);
+        await(() -> executors.getActiveConversations() == 0);
+
+        assertThat(replies("superseded")).isZero();
+        assertThat(replies("success")).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void parallelIsTheDefaultWithinOneChat() throws Exception {
+        llm.setTokensPerSecond(20);
+        llm.setReplyTokens(10);
+        start(new OpenAiStreamingProvider(props.getOpenai()));
+
+        service.handleMessage("ou_1", "oc_1", "第一个问题", "om_1", null, null);
+        await(() -> !feishu.calls("POST", "/im/v1/messages/om_1/reply").isEmpty());
+        reply("om_2", null, "第二个问题");
+
+        assertThat(replies("superseded")).isZero();
+        assertThat(replies("success")).isEqualTo(2);
+    }
+
+    @Test
+    void historyAndCardUpdateTimersCarryTheProviderTag() throws Exception {
+        props.getMemory().setEnabled(true);
+        start(new OpenAiStreamingProvider(props.getOpenai()));
+        messageCache.put("om_parent", new MessageCache.CachedMessage("user", "我在上海出差", null));
+        reply("om_1", "om_parent", QUERY);
+
+        assertThat(registry.find("feishu.streaming.history.fetch").tag("provider", "openai").timers()).isNotEmpty();
+        assertThat(registry.find("feishu.card.update").tag("provider", "openai").timers()).isNotEmpty();
+    }
+
+    private void start(StreamingProvider provider) {
+        var feishuProps = new FeishuProperties();
+        feishuProps.setAppId("cli_test");
+        feishuProps.setAppSecret("secret");
+        feishuProps.setBaseUrl(feishu.baseUrl());
+        var client = Client.newBuilder(feishuProps.getAppId(), feishuProps.getAppSecret())
+                .openBaseUrl(feishuProps.getBaseUrl())
+                .build();
+        var httpClients = new HttpClients(new HttpProperties());
+        messageCache = new MessageCache(props);
+        var threadMemory = new ThreadMemoryStore(props);
+        var feishuApi = new FeishuApiService(client, new TenantTokenManager(client, feishuProps),
+                messageCache, threadMemory, httpClients, feishuProps);
+        registry = new SimpleMeterRegistry();
+        var metrics = new StreamingMetrics(registry, props, provider);
+        var engine = new PatchCardEngine(feishuApi);
+        executors = new StreamingExecutors(props);
+        scheduler = new CardUpdateScheduler(engine, executors, metrics, props);
+        cache = new ResponseCache(props, null);
+        service = new StreamingReplyService(provider, feishuApi, scheduler, engine, messageCache, threadMemory,
+                new HistoryBudgeter(props), httpClients, executors, new ConversationRegistry(props), metrics,
+                props, null, cache);
+    }
+
+    /**
+     * 处理一条消息并等待会话结束
+     */
+    private void reply(String messageId, String parentId, String query) throws InterruptedException {
+        service.handleMessage("ou_1", "oc_1", query, messageId, parentId, null);
+        await(() -> executors.getActiveConversations() == 0);
+    }
+
+    private String scope() {
+        return new OpenAiStreamingProvider(props.getOpenai()).cacheScope("ou_1");
+    }
+
+    private double cacheLookups(String result) {
+        var counter = registry.find("feishu.streaming.cache").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private long replies(String outcome) {
+        var timer = registry.find("feishu.streaming.duration").tag("outcome", outcome).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("等待超时").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.feishu.bridge.service;
+
+import com.lark.oapi.Client;
+import io.github.feishu.bridge.config.FeishuProperties;
+import io.github.feishu.bridge.support.FeishuStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TenantTokenManagerTests {
+
+    private FeishuStubServer stub;
+    private TenantTokenManager manager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = FeishuStubServer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) manager.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void concurrentCallersShareOneFetch() throws Exception {
+        stub.setTokenDelayMs(300);
+        manager = manager(TimeUnit.SECONDS.toMillis(5));
+
+        var start = new CountDownLatch(1);
+        var results = new ArrayList<Future<String>>();
+        try (var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 16; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return manager.getToken().value();
+                }));
+            }
+            start.countDown();
+            for (var result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("t-stub-1");
+            }
+        }
+        assertThat(stub.getTokensIssued()).isEqualTo(1);
+
+        // 缓存有效期内不再请求
+        assertThat(manager.getToken().value()).isEqualTo("t-stub-1");
+        assertThat(stub.getTokensIssued()).isEqualTo(1);
+    }
+
+    @Test
+    void tokenCloseToExpiryIsFetchedAgain() throws Exception {
+        // 过期前 1 分钟即视为不可用：61 秒的 token 只能用 1 秒
+        stub.setTokenExpireSeconds(61);
+        manager = manager(TimeUnit.SECONDS.toMillis(5));
+
+        var first = manager.getToken();
+        assertThat(first.value()).isEqualTo("t-stub-1");
+        assertThat(manager.getToken()).isSameAs(first);
+
+        Thread.sleep(1100);
+        assertThat(manager.getToken().value()).isEqualTo("t-stub-2");
+        assertThat(stub.getTokensIssued()).isEqualTo(2);
+    }
+
+    @Test
+    void invalidateOnlyDropsTheSameToken() throws Exception {
+        manager = manager(TimeUnit.SECONDS.toMillis(5));
+        assertThat(manager.getToken().value()).isEqualTo("t-stub-1");
+
+        manager.invalidate("t-stub-0");
+        assertThat(manager.getToken().value()).isEqualTo("t-stub-1");
+
+        manager.invalidate("t-stub-1");
+        assertThat(manager.getToken().value()).isEqualTo("t-stub-2");
+    }
+
+    @Test
+    void slowFetchTimesOutForTheCallerThatStartedIt() throws Exception {
+        stub.setTokenDelayMs(2000);
+        manager = manager(500);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> manager.getToken()).isInstanceOf(TimeoutException.class);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1500);
+
+        // 超时后不再复用卡住的那次刷新
+        stub.setTokenDelayMs(0);
+        assertThat(manager.getToken().value()).startsWith("t-stub-");
+    }
+
+    private TenantTokenManager manager(long fetchTimeoutMs) {
+        var props = new FeishuProperties();
+        props.setAppId("cli_test");
+        props.setAppSecret("secret");
+        props.setBaseUrl(stub.baseUrl());
+        var client = Client.newBuilder(props.getAppId(), props.getAppSecret())
+                .openBaseUrl(props.getBaseUrl())
+                .build();
+        return new TenantTokenManager(client, props, fetchTimeoutMs);
+    }
+}
@@ -0,0 +1,181 @@
+package io.github.feishu.bridge.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookOutboxTests {
+
+    @TempDir
+    Path dir;
+
+    private WebhookOutbox outbox;
+
+    @AfterEach
+    void tearDown() {
+        if (outbox != null) outbox.close();
+    }
+
+    @Test
+    void redeliversFromThePersistedOffsetAfterRestart() throws Exception {
+        outbox = new WebhookOutbox(dir, 1024 * 1024);
+        var cursor = outbox.openCursor("target");
+        outbox.append("{\"n\":1}");
+        outbox.append("{\"n\":2}");
+        outbox.append("{\"n\":3}");
+
+        var entries = pollAll(cursor, 3);
+        assertThat(texts(entries)).containsExactly("{\"n\":1}", "{\"n\":2}", "{\"n\":3}");
+        cursor.ack(entries.subList(0, 1));
+        outbox.close();
+
+        outbox = new WebhookOutbox(dir, 1024 * 1024);
+        var reopened = outbox.openCursor("target");
+        var redelivered = pollAll(reopened, 2);
+        assertThat(texts(redelivered)).containsExactly("{\"n\":2}", "{\"n\":3}");
+        assertThat(redelivered.getFirst().position()).isEqualTo(entries.get(1).position());
+    }
+
+    @Test
+    void outOfOrderAcksCommitOnlyUpToTheOldestPendingRecord() throws Exception {
+        outbox = new WebhookOutbox(dir, 1024 * 1024);
+        var cursor = outbox.openCursor("target");
+        outbox.append("{\"n\":1}");
+        outbox.append("{\"n\":2}");
+        outbox.append("{\"n\":3}");
+        var entries = pollAll(cursor, 3);
+
+        cursor.ack(List.of(entries.get(2)));
+        cursor.ack(List.of(entries.get(0)));
+        assertThat(committedOffset(cursor)).isEqualTo(entries.get(1).position());
+        outbox.close();
+
+        // 至少投递一次：未确认的 2 及其后已确认的 3 都会重新投递
+        outbox = new WebhookOutbox(dir, 1024 * 1024);
+        var reopened = outbox.openCursor("target");
+        var redelivered = pollAll(reopened, 2);
+        assertThat(texts(redelivered)).containsExactly("{\"n\":2}", "{\"n\":3}");
+
+        reopened.ack(redelivered);
+        assertThat(committedOffset(reopened)).isEqualTo(entries.get(2).position() + 4 + "{\"n\":3}".length());
+    }
+
+    @Test
+    void truncatesATornLastRecordOnRecovery() throws Exception {
+        outbox = new WebhookOutbox(dir, 1024 * 1024);
+        var cursor = outbox.openCursor("target");
+        outbox.append("{\"n\":1}");
+        outbox.append("{\"n\":2}");
+        pollAll(cursor, 2);
+        outbox.close();
+
+        // 模拟写到一半崩溃：长度头声明 100 字节，实际只写了 3 字节
+        Path segment = segmentFiles().getLast();
+        long validSize = Files.size(segment);
+        try (var channel = Files.newByteChannel(segment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(7).putInt(100).put("{\"n".getBytes(StandardCharsets.UTF_8)).flip());
+        }
+
+        outbox = new WebhookOutbox(dir, 1024 * 1024);
+        assertThat(Files.size(segment)).isEqualTo(validSize);
+        var reopened = outbox.openCursor("target");
+        outbox.append("{\"n\":3}");
+        var entries = pollAll(reopened, 3);
+        assertThat(texts(entries)).containsExactly("{\"n\":1}", "{\"n\":2}", "{\"n\":3}");
+    }
+
+    @Test
+    void deletesSegmentsOnceEveryCursorHasPassedThem() throws Exception {
+        outbox = new WebhookOutbox(dir, 1024);
+        var fast = outbox.openCursor("fast");
+        var slow = outbox.openCursor("slow");
+        String record = "{\"pad\":\"" + "x".repeat(600) + "\"}";
+        var fastEntries = new ArrayList<WebhookTarget.Entry>();
+        var slowEntries = new ArrayList<WebhookTarget.Entry>();
+        for (int i = 0; i < 4; i++) {
+            // 逐条等待落盘，使每条记录各占一个 segment
+            outbox.append(record);
+            fastEntries.addAll(pollAll(fast, 1));
+            slowEntries.addAll(pollAll(slow, 1));
+        }
+        assertThat(segmentFiles()).hasSize(4);
+
+        fast.ack(fastEntries);
+        slow.ack(slowEntries.subList(0, 1));
+        assertThat(segmentFiles()).hasSize(3);
+
+        // 偏移持久化与清理有节流，等过节流间隔再确认
+        Thread.sleep(250);
+        slow.ack(slowEntries.subList(1, 4));
+        // 正在写入的 segment 保留
+        assertThat(segmentFiles()).hasSize(1);
+    }
+
+    @Test
+    void failedWriteIsRetriedInsteadOfDropped() throws Exception {
+        outbox = new WebhookOutbox(dir, 1024);
+        var cursor = outbox.openCursor("target");
+        String record = "{\"pad\":\"" + "x".repeat(1000) + "\"}";
+        outbox.append(record);
+        var first = pollAll(cursor, 1);
+
+        // 下一条需要滚动到新 segment，用同名目录占住文件名使滚动失败
+        long nextBase = first.getFirst().position() + 4 + record.length();
+        Path blocker = dir.resolve(String.format("%020d.log", nextBase));
+        Files.createDirectory(blocker);
+        outbox.append("{\"n\":2}");
+        outbox.append("{\"n\":3}");
+        Thread.sleep(300);
+        assertThat(backlogBytes(cursor)).isEqualTo(nextBase);
+
+        Files.delete(blocker);
+        var entries = pollAll(cursor, 2);
+        assertThat(texts(entries)).containsExactly("{\"n\":2}", "{\"n\":3}");
+        assertThat(entries.getFirst().position()).isEqualTo(nextBase);
+    }
+
+    private static List<WebhookTarget.Entry> pollAll(WebhookTarget.Source source, int count)
+            throws InterruptedException {
+        var entries = new ArrayList<WebhookTarget.Entry>();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (entries.size() < count && System.currentTimeMillis() < deadline) {
+            entries.addAll(source.poll(count - entries.size(), 100));
+        }
+        assertThat(entries).hasSize(count);
+        return entries;
+    }
+
+    private static List<String> texts(List<WebhookTarget.Entry> entries) {
+        return entries.stream().map(WebhookTarget.Entry::json).toList();
+    }
+
+    private static long backlogBytes(WebhookTarget.Source source) {
+        var stats = new HashMap<String, Object>();
+        source.describe(stats);
+        return (long) stats.get("backlogBytes");
+    }
+
+    private static long committedOffset(WebhookTarget.Source source) {
+        var stats = new HashMap<String, Object>();
+        source.describe(stats);
+        return (long) stats.get("committedOffset");
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+}
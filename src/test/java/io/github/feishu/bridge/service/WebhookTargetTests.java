@@ -0,0 +1,98 @@
+package io.github.feishu.bridge.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.feishu.bridge.config.FeishuProperties;
+import io.github.feishu.bridge.config.HttpClients;
+import io.github.feishu.bridge.config.HttpProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookTargetTests {
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int failFirst;
+    private HttpClients httpClients;
+    private ScheduledExecutorService retryScheduler;
+    private WebhookTarget target;
+    private WebhookOutbox outbox;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.createContext("/hook", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            int status = requests.incrementAndGet() <= failFirst ? 503 : 200;
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        httpClients = new HttpClients(new HttpProperties());
+        retryScheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (target != null) target.stop();
+        if (outbox != null) outbox.close();
+        retryScheduler.shutdownNow();
+        httpClients.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void memoryQueueGivesUpAfterTheDefaultMaxAttempts() throws Exception {
+        failFirst = Integer.MAX_VALUE;
+        var source = new WebhookTarget.MemorySource(10);
+        target = start(source);
+        source.offer("{\"n\":1}");
+
+        awaitStat("failed", 1L);
+        assertThat(requests.get()).isEqualTo(50);
+    }
+
+    @Test
+    void outboxKeepsRetryingByDefault() throws Exception {
+        failFirst = 60;
+        outbox = new WebhookOutbox(dir, 1024 * 1024);
+        target = start(outbox.openCursor("target"));
+        outbox.append("{\"n\":1}");
+
+        awaitStat("delivered", 1L);
+        assertThat(target.stats().get("failed")).isEqualTo(0L);
+        assertThat(requests.get()).isEqualTo(61);
+    }
+
+    private WebhookTarget start(WebhookTarget.Source source) {
+        var retry = new FeishuProperties.Retry();
+        retry.setInitialBackoffMs(1);
+        retry.setMaxBackoffMs(2);
+        var webhookTarget = new WebhookTarget("http://127.0.0.1:" + server.getAddress().getPort() + "/hook",
+                httpClients.webhook(), source, 1, Duration.ofSeconds(5), retry, retryScheduler, null);
+        webhookTarget.start();
+        return webhookTarget;
+    }
+
+    private void awaitStat(String key, Object expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!expected.equals(target.stats().get(key)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(target.stats().get(key)).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,305 @@
+package io.github.feishu.bridge.streaming;
+
+import io.github.feishu.bridge.config.HttpClients;
+import io.github.feishu.bridge.config.HttpProperties;
+import io.github.feishu.bridge.config.StreamingProperties;
+import io.github.feishu.bridge.support.MockLlmServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FailoverStreamingProviderTests {
+
+    private MockLlmServer primary;
+    private MockLlmServer backup;
+    private HttpClients httpClients;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        primary = MockLlmServer.start();
+        backup = MockLlmServer.start();
+        for (var server : List.of(primary, backup)) {
+            server.setTtftMs(0);
+            server.setTokensPerSecond(1000);
+            server.setReplyTokens(3);
+        }
+        httpClients = new HttpClients(new HttpProperties());
+        client = httpClients.llm();
+    }
+
+    @AfterEach
+    void tearDown() {
+        primary.close();
+        backup.close();
+        httpClients.shutdown();
+    }
+
+    @Test
+    void failsOverOnServerErrorAndCoolsDownTheEndpoint() throws Exception {
+        primary.setStatus(503);
+        var provider = provider(primary.openAiUrl(), 0);
+
+        var first = open(provider);
+        assertThat(first.endpoint()).isEqualTo("backup");
+        assertThat(first.route()).isEqualTo("failover");
+        assertThat(readContent(first)).startsWith(MockLlmServer.START_MARKER).endsWith(MockLlmServer.END_MARKER);
+        assertThat(provider.endpoints().getFirst().isHealthy(System.currentTimeMillis())).isFalse();
+
+        // 冷却期内主端点排到最后，不再收到请求
+        var second = open(provider);
+        assertThat(second.endpoint()).isEqualTo("backup");
+        assertThat(second.route()).isEqualTo("first");
+        readContent(second);
+        assertThat(primary.getRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void failsOverOnConnectError() throws Exception {
+        String closedUrl;
+        try (var socket = new ServerSocket(0)) {
+            closedUrl = "http://127.0.0.1:" + socket.getLocalPort() + "/v1/chat/completions";
+        }
+        var provider = provider(closedUrl, 0);
+
+        var response = open(provider);
+        assertThat(response.endpoint()).isEqualTo("backup");
+        assertThat(response.route()).isEqualTo("failover");
+        assertThat(readContent(response)).endsWith(MockLlmServer.END_MARKER);
+    }
+
+    @Test
+    void requestErrorsFailOverWithoutCoolingDown() throws Exception {
+        primary.setStatus(400);
+        var provider = provider(primary.openAiUrl(), 0);
+
+        var response = open(provider);
+        assertThat(response.endpoint()).isEqualTo("backup");
+        readContent(response);
+        assertThat(provider.endpoints().getFirst().isHealthy(System.currentTimeMillis())).isTrue();
+    }
+
+    @Test
+    void returnsTheLastErrorWhenEveryEndpointFails() throws Exception {
+        primary.setStatus(500);
+        backup.setStatus(502);
+        var provider = provider(primary.openAiUrl(), 0);
+
+        var response = open(provider);
+        assertThat(response.statusCode()).isEqualTo(502);
+        assertThat(response.readErrorBody()).contains("mock error");
+    }
+
+    @Test
+    void hedgedRequestWinsWhenTheFirstTokenIsLate() throws Exception {
+        primary.setTtftMs(5000);
+        var provider = provider(primary.openAiUrl(), 100);
+
+        long start = System.currentTimeMillis();
+        var response = open(provider);
+        assertThat(System.currentTimeMillis() - start).isLessThan(3000);
+        assertThat(response.endpoint()).isEqualTo("backup");
+        assertThat(response.route()).isEqualTo("hedge_won");
+        assertThat(readContent(response)).startsWith(MockLlmServer.START_MARKER).endsWith(MockLlmServer.END_MARKER);
+
+        // 落败的请求已等待的时间计入 EWMA，下一次优先选择备用端点
+        assertThat(provider.endpoints().getFirst().ttftEwmaMs()).isGreaterThanOrEqualTo(100);
+        var next = open(provider);
+        assertThat(next.endpoint()).isEqualTo("backup");
+        assertThat(next.route()).isEqualTo("first");
+        readContent(next);
+    }
+
+    @Test
+    void cancellingClosesRequestsInFlight() throws Exception {
+        primary.setTtftMs(5000);
+        var provider = provider(primary.openAiUrl(), 0);
+
+        var inFlight = new AtomicReference<Closeable>();
+        Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(300);
+                inFlight.get().close();
+            } catch (Exception ignored) {
+            }
+        });
+        long start = System.currentTimeMillis();
+        assertThatThrownBy(() -> provider.open(client, "你好", "ou_1", List.of(), inFlight::set))
+                .isInstanceOf(CancellationException.class);
+        assertThat(System.currentTimeMillis() - start).isLessThan(3000);
+        // 取消不视为端点故障
+        assertThat(provider.endpoints().getFirst().isHealthy(System.currentTimeMillis())).isTrue();
+    }
+
+    @Test
+    void cancellingDoesNotWaitForPendingResponseHeaders() throws Exception {
+        primary.setHeaderDelayMs(5000);
+        var provider = provider(primary.openAiUrl(), 0);
+
+        var inFlight = new AtomicReference<Closeable>();
+        Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(300);
+                inFlight.get().close();
+            } catch (Exception ignored) {
+            }
+        });
+        long start = System.currentTimeMillis();
+        assertThatThrownBy(() -> provider.open(client, "你好", "ou_1", List.of(), inFlight::set))
+                .isInstanceOf(CancellationException.class);
+        assertThat(System.currentTimeMillis() - start).isLessThan(3000);
+    }
+
+    @Test
+    void hedgeLoserDoesNotKeepItsDifyConversation() throws Exception {
+        primary.setConversationId("conv-primary");
+        primary.setTtftMs(5000);
+        backup.setConversationId("conv-backup");
+        var primaryDify = dify(primary);
+        var backupDify = dify(backup);
+        var failover = new StreamingProperties.Failover();
+        failover.setHedgeAfterMs(100);
+        var provider = new FailoverStreamingProvider(List.of(
+                new FailoverStreamingProvider.Endpoint("primary", primaryDify),
+                new FailoverStreamingProvider.Endpoint("backup", backupDify)),
+                failover);
+
+        // 落败的主端点在首个 token 之前已返回带 conversation_id 的 workflow_started
+        var response = open(provider);
+        assertThat(response.endpoint()).isEqualTo("backup");
+        assertThat(readContent(response)).endsWith(MockLlmServer.END_MARKER);
+
+        // 已有会话的 chat 应用不缓存，据此判断是否记下了 conversation_id
+        assertThat(primaryDify.cacheScope("ou_1")).isNotNull();
+        assertThat(backupDify.cacheScope("ou_1")).isNull();
+    }
+
+    @Test
+    void unsampledAndIdleEndpointsDoNotOutrankTheActivePrimary() {
+        var provider = provider(primary.openAiUrl(), 0);
+        var primaryEndpoint = provider.endpoints().getFirst();
+        var backupEndpoint = provider.endpoints().getLast();
+        long now = System.currentTimeMillis();
+
+        // 都没有样本时按配置顺序
+        assertThat(names(provider.route(now, "ou_1"))).containsExactly("primary", "backup");
+
+        // 备用端点尚无样本，按均值计，与主端点持平时仍按配置顺序
+        primaryEndpoint.recordTtft(300, 0.3, now);
+        assertThat(names(provider.route(now, "ou_1"))).containsExactly("primary", "backup");
+
+        // 备用端点上次很慢且已空闲 10 分钟：向均值回归，而不是衰减到 0 排到前面
+        backupEndpoint.recordTtft(800, 0.3, now - 600_000);
+        assertThat(names(provider.route(now, "ou_1"))).containsExactly("primary", "backup");
+
+        // 主端点变慢后让出流量
+        for (int i = 0; i < 10; i++) primaryEndpoint.recordTtft(2000, 0.3, now);
+        assertThat(names(provider.route(now, "ou_1"))).containsExactly("backup", "primary");
+    }
+
+    @Test
+    void difyUserStaysOnTheEndpointHoldingTheConversation() throws Exception {
+        primary.setStatus(503);
+        backup.setConversationId("conv-backup");
+        var primaryDify = dify(primary);
+        var backupDify = dify(backup);
+        var failover = new StreamingProperties.Failover();
+        failover.setCooldownSeconds(0);
+        var provider = new FailoverStreamingProvider(List.of(
+                new FailoverStreamingProvider.Endpoint("primary", primaryDify),
+                new FailoverStreamingProvider.Endpoint("backup", backupDify)),
+                failover);
+
+        var first = open(provider);
+        assertThat(first.endpoint()).isEqualTo("backup");
+        readContent(first);
+        assertThat(backupDify.hasConversation("ou_1")).isTrue();
+
+        // 主端点恢复且分数不比备用端点差，但会话在备用端点上
+        primary.setStatus(200);
+        var second = open(provider);
+        assertThat(second.endpoint()).isEqualTo("backup");
+        assertThat(second.route()).isEqualTo("first");
+        readContent(second);
+        assertThat(names(provider.route(System.currentTimeMillis(), "ou_2"))).containsExactly("primary", "backup");
+
+        // 保存会话的端点冷却中时按分数路由
+        provider.endpoints().getLast().markUnhealthy(System.currentTimeMillis() + 60_000);
+        assertThat(names(provider.route(System.currentTimeMillis(), "ou_1"))).containsExactly("primary", "backup");
+    }
+
+    @Test
+    void backupInheritsUnsetFieldsFromThePrimary() {
+        var primaryConfig = new StreamingProperties.OpenAi();
+        primaryConfig.setApiKey("sk-primary");
+        primaryConfig.setModel("gpt-4o-mini");
+        primaryConfig.setSystemPrompt("你是报销助手");
+        var endpoint = new StreamingProperties.Endpoint();
+        endpoint.getOpenai().setApiUrl("https://api.deepseek.com/v1/chat/completions");
+        endpoint.getOpenai().setApiKey("sk-backup");
+
+        var merged = StreamingProviderConfig.inherit(endpoint.getOpenai(), primaryConfig);
+        assertThat(merged.getApiUrl()).isEqualTo("https://api.deepseek.com/v1/chat/completions");
+        assertThat(merged.getApiKey()).isEqualTo("sk-backup");
+        assertThat(merged.getModel()).isEqualTo("gpt-4o-mini");
+        assertThat(merged.getSystemPrompt()).isEqualTo("你是报销助手");
+
+        var dify = StreamingProviderConfig.inherit(endpoint.getDify(), new StreamingProperties.Dify());
+        assertThat(dify.getAppType()).isEqualTo("chat");
+    }
+
+    private static List<String> names(List<FailoverStreamingProvider.Endpoint> endpoints) {
+        return endpoints.stream().map(FailoverStreamingProvider.Endpoint::name).toList();
+    }
+
+    private static DifyStreamingProvider dify(MockLlmServer server) {
+        var config = new StreamingProperties.Dify();
+        config.setApiUrl(server.difyUrl());
+        config.setApiKey("app-test");
+        return new DifyStreamingProvider(config);
+    }
+
+    private FailoverStreamingProvider provider(String primaryUrl, long hedgeAfterMs) {
+        var primaryConfig = new StreamingProperties.OpenAi();
+        primaryConfig.setApiUrl(primaryUrl);
+        var backupConfig = new StreamingProperties.OpenAi();
+        backupConfig.setApiUrl(backup.openAiUrl());
+        var failover = new StreamingProperties.Failover();
+        failover.setHedgeAfterMs(hedgeAfterMs);
+        return new FailoverStreamingProvider(List.of(
+                new FailoverStreamingProvider.Endpoint("primary", new OpenAiStreamingProvider(primaryConfig)),
+                new FailoverStreamingProvider.Endpoint("backup", new OpenAiStreamingProvider(backupConfig))),
+                failover);
+    }
+
+    private UpstreamResponse open(FailoverStreamingProvider provider) throws Exception {
+        return provider.open(client, "你好", "ou_1", List.of(), c -> {
+        });
+    }
+
+    private static String readContent(UpstreamResponse response) throws IOException {
+        var sb = new StringBuilder();
+        try (response) {
+            String line;
+            while ((line = response.readLine()) != null) {
+                String data = StreamingProvider.sseData(line);
+                if (data == null) continue;
+                var event = response.provider().decode("ou_1", data);
+                if (event.type() == StreamEvent.Type.DONE) break;
+                if (event.type() == StreamEvent.Type.CONTENT) sb.append(event.text());
+            }
+        }
+        return sb.toString();
+    }
+}
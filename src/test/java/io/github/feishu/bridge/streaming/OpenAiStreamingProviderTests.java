@@ -0,0 +1,79 @@
+package io.github.feishu.bridge.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.feishu.bridge.config.StreamingProperties;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenAiStreamingProviderTests {
+
+    /** 与压测共用的录制数据（DeepSeek reasoner 的一次完整回复） */
+    private static final Path REASONING_FIXTURE = Path.of("src/jmh/resources/sse/openai_reasoning.txt");
+
+    private final OpenAiStreamingProvider provider = new OpenAiStreamingProvider(new StreamingProperties.OpenAi());
+
+    @Test
+    void decodesTheRecordedReasoningStream() throws Exception {
+        var mapper = new ObjectMapper();
+        var expectedContent = new StringBuilder();
+        var expectedReasoning = new StringBuilder();
+        var content = new StringBuilder();
+        var reasoning = new StringBuilder();
+        int reasoningEvents = 0;
+        boolean done = false;
+
+        for (String data : sseData(REASONING_FIXTURE)) {
+            if (!"[DONE]".equals(data)) {
+                var delta = mapper.readTree(data).path("choices").path(0).path("delta");
+                expectedContent.append(delta.path("content").asText(""));
+                expectedReasoning.append(delta.path("reasoning_content").asText(""));
+            }
+
+            StreamEvent event = provider.decode("ou_1", data);
+            if (event.type() == StreamEvent.Type.DONE) done = true;
+            if (event.text() != null) content.append(event.text());
+            if (event.reasoning() != null) {
+                reasoning.append(event.reasoning());
+                reasoningEvents++;
+            }
+        }
+
+        assertThat(done).isTrue();
+        assertThat(expectedReasoning).isNotEmpty();
+        assertThat(expectedContent).isNotEmpty();
+        assertThat(content.toString()).isEqualTo(expectedContent.toString());
+        assertThat(reasoning.toString()).isEqualTo(expectedReasoning.toString());
+        assertThat(reasoningEvents).isPositive();
+    }
+
+    @Test
+    void keepsBothContentAndReasoningFromOneDelta() {
+        String both = "{\"choices\":[{\"index\":0,\"delta\":{\"reasoning_content\":\"想好了。\",\"content\":\"答案\"}}]}";
+        assertThat(provider.decode("ou_1", both))
+                .isEqualTo(new StreamEvent(StreamEvent.Type.CONTENT, "答案", "想好了。"));
+
+        String contentFirst = "{\"choices\":[{\"delta\":{\"content\":\"答案\",\"reasoning_content\":\"\"}}]}";
+        assertThat(provider.decode("ou_1", contentFirst))
+                .isEqualTo(new StreamEvent(StreamEvent.Type.CONTENT, "答案", null));
+
+        String reasoningOnly = "{\"choices\":[{\"delta\":{\"content\":null,\"reasoning_content\":\"嗯\"}}]}";
+        assertThat(provider.decode("ou_1", reasoningOnly))
+                .isEqualTo(new StreamEvent(StreamEvent.Type.REASONING, null, "嗯"));
+
+        assertThat(provider.decode("ou_1", "{\"choices\":[{\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}"))
+                .isSameAs(StreamEvent.IGNORED);
+        assertThat(provider.decode("ou_1", "{\"choices\":[]}")).isSameAs(StreamEvent.IGNORED);
+    }
+
+    private static List<String> sseData(Path fixture) throws Exception {
+        return Files.readAllLines(fixture).stream()
+                .map(StreamingProvider::sseData)
+                .filter(data -> data != null)
+                .toList();
+    }
+}
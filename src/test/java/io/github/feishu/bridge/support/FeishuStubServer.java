@@ -0,0 +1,303 @@
+package io.github.feishu.bridge.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地飞书开放平台桩服务，覆盖桥接服务用到的接口：tenant_access_token、发送/回复/PATCH 消息、列出话题消息、CardKit 卡片实体。
+ * 记录收到的每个请求，并可模拟 CardKit 不可用、组件流式更新失败、更新接口频控（HTTP 429）、token 失效等情况。
+ * 配合 {@code feishu.base-url} 或 {@code Client.Builder#openBaseUrl} 使用。
+ */
+public class FeishuStubServer implements AutoCloseable {
+
+    public record Call(String method, String path, String body) {
+    }
+
+    /**
+     * 压测用的回调，按被回复的用户消息归并发出的卡片及其后续更新（需开启 reply 模式）。
+     */
+    public interface Listener {
+
+        /**
+         * 回复了一条用户消息（首张卡片或错误卡片）
+         */
+        void onReply(String repliedMessageId, String body);
+
+        /**
+         * 更新了回复该用户消息的卡片（PATCH 消息或 CardKit 组件 / 整卡更新），被频控拒绝的请求不回调
+         */
+        void onUpdate(String repliedMessageId, String body);
+    }
+
+    /**
+     * 各类请求的累计次数
+     */
+    public record Stats(long sent, long replied, long updated, long rateLimited) {
+    }
+
+    private static final Pattern REPLY_PATH = Pattern.compile("^/im/v1/messages/([^/]+)/reply$");
+    private static final Pattern MESSAGE_PATH = Pattern.compile("^/im/v1/messages/([^/]+)$");
+    private static final Pattern CARD_PATH = Pattern.compile("^/cardkit/v1/cards/([^/]+)(/.*)?$");
+    private static final Pattern CARD_ID = Pattern.compile("card_\\d+");
+
+    private final HttpServer server;
+    private final ConcurrentLinkedQueue<Call> calls = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    /** 已签发的 token 数，第 n 个 token 为 t-stub-n */
+    private final AtomicInteger tokens = new AtomicInteger();
+    /** 发出的消息 ID / 卡片实体 ID → 被回复的用户消息 ID */
+    private final Map<String, String> repliedTo = new ConcurrentHashMap<>();
+    /** 话题 ID → 话题内消息（JSON），按加入顺序即创建时间正序 */
+    private final Map<String, List<String>> threadMessages = new ConcurrentHashMap<>();
+    /** 已创建、尚未发送的卡片实体内容 */
+    private final Map<String, String> cardBodies = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder replied = new LongAdder();
+    private final LongAdder updated = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private volatile boolean cardKitEnabled = true;
+    private volatile boolean elementUpdateEnabled = true;
+    private volatile boolean recordCalls = true;
+    private volatile double rateLimitRatio;
+    private volatile Listener listener;
+    private volatile long tokenDelayMs;
+    private volatile long settingsDelayMs;
+    private volatile long tokenExpireSeconds = 7200;
+    private volatile int revokedTokens;
+    private volatile int revokedCode;
+
+    private FeishuStubServer(HttpServer server) {
+        this.server = server;
+    }
+
+    public static FeishuStubServer start() throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        var stub = new FeishuStubServer(server);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", stub::handle);
+        server.start();
+        return stub;
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 按方法和路径前缀过滤已收到的请求（路径不含 /open-apis 前缀）。
+     */
+    public List<Call> calls(String method, String pathPrefix) {
+        return calls.stream()
+                .filter(c -> c.method().equals(method) && c.path().startsWith(pathPrefix))
+                .toList();
+    }
+
+    public Stats stats() {
+        return new Stats(sent.sum(), replied.sum(), updated.sum(), rateLimited.sum());
+    }
+
+    public void setCardKitEnabled(boolean enabled) {
+        this.cardKitEnabled = enabled;
+    }
+
+    public void setElementUpdateEnabled(boolean enabled) {
+        this.elementUpdateEnabled = enabled;
+    }
+
+    /**
+     * 是否保存每个请求（含请求体），压测时关闭以免桩服务自身占用大量内存。
+     */
+    public void setRecordCalls(boolean recordCalls) {
+        this.recordCalls = recordCalls;
+    }
+
+    /**
+     * 卡片更新请求按此比例随机返回 HTTP 429（code 99991400）。
+     */
+    public void setRateLimitRatio(double ratio) {
+        this.rateLimitRatio = ratio;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 向话题追加一条文本消息。列出话题消息时与真实接口一样忽略 start_time，总是从头返回整个话题。
+     *
+     * @param senderType user / app
+     */
+    public void addThreadMessage(String threadId, String messageId, String senderType, String text,
+                                 long createTimeMs) {
+        String content = "{\\\"text\\\":\\\"" + text + "\\\"}";
+        threadMessages.computeIfAbsent(threadId, k -> new CopyOnWriteArrayList<>()).add(
+                "{\"message_id\":\"" + messageId + "\",\"msg_type\":\"text\",\"thread_id\":\"" + threadId
+                        + "\",\"create_time\":\"" + createTimeMs + "\",\"sender\":{\"sender_type\":\"" + senderType
+                        + "\"},\"body\":{\"content\":\"" + content + "\"}}");
+    }
+
+    /**
+     * 签发 tenant_access_token 前的延迟，模拟鉴权接口很慢
+     */
+    public void setTokenDelayMs(long tokenDelayMs) {
+        this.tokenDelayMs = tokenDelayMs;
+    }
+
+    /**
+     * 更新卡片实体设置（关闭流式模式）前的延迟
+     */
+    public void setSettingsDelayMs(long settingsDelayMs) {
+        this.settingsDelayMs = settingsDelayMs;
+    }
+
+    public void setTokenExpireSeconds(long tokenExpireSeconds) {
+        this.tokenExpireSeconds = tokenExpireSeconds;
+    }
+
+    /**
+     * 已签发的 token 次数
+     */
+    public int getTokensIssued() {
+        return tokens.get();
+    }
+
+    /**
+     * 作废目前已签发的所有 token，之后带这些 token 的请求返回 HTTP 400 和给定错误码（99991661 / 99991663）。
+     */
+    public void revokeIssuedTokens(int code) {
+        this.revokedCode = code;
+        this.revokedTokens = tokens.get();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        String method = ex.getRequestMethod();
+        String path = ex.getRequestURI().getPath().replaceFirst("^/open-apis", "");
+        String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+        if (path.startsWith("/auth/")) {
+            issueToken(ex);
+            return;
+        }
+        if (recordCalls) calls.add(new Call(method, path, body));
+        if (isRevoked(ex.getRequestHeaders().getFirst("Authorization"))) {
+            respond(ex, 400, "{\"code\":" + revokedCode + ",\"msg\":\"Invalid access token for authorization\"}");
+            return;
+        }
+
+        Matcher reply = REPLY_PATH.matcher(path);
+        Matcher message = MESSAGE_PATH.matcher(path);
+        Matcher card = CARD_PATH.matcher(path);
+        boolean isUpdate = (method.equals("PATCH") && message.matches())
+                || (method.equals("PUT") && card.matches());
+
+        if (settingsDelayMs > 0 && path.endsWith("/settings")) {
+            try {
+                Thread.sleep(settingsDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (path.startsWith("/cardkit/") && !cardKitEnabled) {
+            respond(ex, 400, "{\"code\":99991672,\"msg\":\"Access denied. scope cardkit:card:write required\"}");
+        } else if (isUpdate && rateLimitRatio > 0 && ThreadLocalRandom.current().nextDouble() < rateLimitRatio) {
+            rateLimited.increment();
+            respond(ex, 429, "{\"code\":99991400,\"msg\":\"request trigger frequency limit\"}");
+        } else if (method.equals("GET") && path.equals("/im/v1/messages")) {
+            String query = ex.getRequestURI().getQuery();
+            Matcher container = Pattern.compile("container_id=([^&]+)").matcher(query != null ? query : "");
+            var items = container.find() ? threadMessages.getOrDefault(container.group(1), List.of()) : List.<String>of();
+            respond(ex, 200, "{\"code\":0,\"msg\":\"success\",\"data\":{\"has_more\":false,\"items\":["
+                    + String.join(",", items) + "]}}");
+        } else if (method.equals("POST") && path.equals("/cardkit/v1/cards")) {
+            String cardId = "card_" + ids.incrementAndGet();
+            if (listener != null) cardBodies.put(cardId, body);
+            respond(ex, 200, "{\"code\":0,\"msg\":\"success\",\"data\":{\"card_id\":\"" + cardId + "\"}}");
+        } else if (method.equals("PUT") && path.endsWith("/content") && !elementUpdateEnabled) {
+            respond(ex, 400, "{\"code\":300309,\"msg\":\"streaming mode is closed\"}");
+        } else if (method.equals("POST") && (path.equals("/im/v1/messages") || reply.matches())) {
+            String messageId = "om_" + ids.incrementAndGet();
+            if (reply.matches()) {
+                replied.increment();
+                onReply(reply.group(1), messageId, body);
+            } else {
+                sent.increment();
+            }
+            respond(ex, 200, "{\"code\":0,\"msg\":\"success\",\"data\":{\"message_id\":\"" + messageId + "\"}}");
+        } else {
+            if (isUpdate) {
+                updated.increment();
+                onUpdate(message.matches() ? message.group(1) : card.group(1), body);
+            }
+            respond(ex, 200, "{\"code\":0,\"msg\":\"success\",\"data\":{}}");
+        }
+    }
+
+    private void issueToken(HttpExchange ex) throws IOException {
+        if (tokenDelayMs > 0) {
+            try {
+                Thread.sleep(tokenDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        respond(ex, 200, "{\"code\":0,\"msg\":\"ok\",\"tenant_access_token\":\"t-stub-" + tokens.incrementAndGet()
+                + "\",\"expire\":" + tokenExpireSeconds + "}");
+    }
+
+    private boolean isRevoked(String authorization) {
+        if (authorization == null || !authorization.startsWith("Bearer t-stub-")) return false;
+        try {
+            return Integer.parseInt(authorization.substring("Bearer t-stub-".length())) <= revokedTokens;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void onReply(String userMessageId, String messageId, String body) {
+        repliedTo.put(messageId, userMessageId);
+        // CardKit 模式下回复的是卡片实体，内容在创建卡片的请求里，后续更新按 card_id 寻址
+        Matcher cardId = CARD_ID.matcher(body);
+        if (cardId.find()) {
+            repliedTo.put(cardId.group(), userMessageId);
+            String card = cardBodies.remove(cardId.group());
+            if (card != null) body = card;
+        }
+        var l = listener;
+        if (l != null) l.onReply(userMessageId, body);
+    }
+
+    private void onUpdate(String target, String body) {
+        var l = listener;
+        String userMessageId = repliedTo.get(target);
+        if (l != null && userMessageId != null) l.onUpdate(userMessageId, body);
+    }
+
+    private static void respond(HttpExchange ex, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        ex.getResponseBody().write(bytes);
+        ex.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
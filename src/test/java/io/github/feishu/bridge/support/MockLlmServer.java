@@ -0,0 +1,185 @@
+package io.github.feishu.bridge.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地模拟的大模型 SSE 服务，按配置的首 token 延迟（TTFT）和 token 速率逐个输出固定内容：
+ * <ul>
+ *   <li>OpenAI 兼容：POST /v1/chat/completions，以 {@code data: [DONE]} 结束；</li>
+ *   <li>Dify：POST /v1/chat-messages（workflow_started / message / message_end）和 /v1/workflows/run（text_chunk / workflow_finished）。</li>
+ * </ul>
+ * 回复以 {@link #START_MARKER} 开头、{@link #END_MARKER} 结尾，便于从飞书侧请求中判断首个内容和完整回复是否已送达。
+ */
+public class MockLlmServer implements AutoCloseable {
+
+    public static final String START_MARKER = "LOADSTART";
+    public static final String END_MARKER = "LOADEND";
+
+    private final HttpServer server;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private volatile long ttftMs = 500;
+    private volatile double tokensPerSecond = 30;
+    private volatile int replyTokens = 100;
+    private volatile int status = 200;
+    private volatile long headerDelayMs;
+    private volatile String conversationId = "conv-load";
+    private volatile boolean truncated;
+
+    private MockLlmServer(HttpServer server) {
+        this.server = server;
+    }
+
+    public static MockLlmServer start() throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        var mock = new MockLlmServer(server);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v1/chat/completions", ex -> mock.stream(ex, Format.OPENAI));
+        server.createContext("/v1/chat-messages", ex -> mock.stream(ex, Format.DIFY_CHAT));
+        server.createContext("/v1/workflows/run", ex -> mock.stream(ex, Format.DIFY_WORKFLOW));
+        server.start();
+        return mock;
+    }
+
+    /**
+     * OpenAI 兼容接口的完整地址，对应 {@code streaming.openai.api-url}
+     */
+    public String openAiUrl() {
+        return baseUrl() + "/v1/chat/completions";
+    }
+
+    /**
+     * Dify 接口前缀，对应 {@code streaming.dify.api-url}
+     */
+    public String difyUrl() {
+        return baseUrl() + "/v1";
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setTtftMs(long ttftMs) {
+        this.ttftMs = ttftMs;
+    }
+
+    public void setTokensPerSecond(double tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
+    /**
+     * 每次回复的 token 数（含首尾标记）
+     */
+    public void setReplyTokens(int replyTokens) {
+        this.replyTokens = Math.max(2, replyTokens);
+    }
+
+    /**
+     * 非 200 时不输出 SSE，直接返回该状态码和一段 JSON 错误
+     */
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * 收到请求后延迟多久才返回响应头，模拟连接建立或排队很慢的上游
+     */
+    public void setHeaderDelayMs(long headerDelayMs) {
+        this.headerDelayMs = headerDelayMs;
+    }
+
+    /**
+     * Dify chat 事件中返回的 conversation_id
+     */
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    /**
+     * 输出完内容后不发送结束事件（[DONE] / message_end / workflow_finished）就关闭连接，模拟上游中途断开
+     */
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public int getActiveStreams() {
+        return active.get();
+    }
+
+    private enum Format {OPENAI, DIFY_CHAT, DIFY_WORKFLOW}
+
+    private void stream(HttpExchange ex, Format format) throws IOException {
+        requests.increment();
+        active.incrementAndGet();
+        try (ex) {
+            ex.getRequestBody().readAllBytes();
+            if (headerDelayMs > 0) Thread.sleep(Duration.ofMillis(headerDelayMs));
+            if (status != 200) {
+                byte[] error = "{\"error\":{\"message\":\"mock error\"}}".getBytes(StandardCharsets.UTF_8);
+                ex.sendResponseHeaders(status, error.length);
+                ex.getResponseBody().write(error);
+                return;
+            }
+            ex.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            ex.sendResponseHeaders(200, 0);
+            OutputStream out = ex.getResponseBody();
+            Duration interval = Duration.ofNanos((long) (1_000_000_000L / Math.max(0.001, tokensPerSecond)));
+            int tokens = replyTokens;
+            String convId = conversationId;
+            if (format == Format.DIFY_CHAT) {
+                write(out, "{\"event\":\"workflow_started\",\"conversation_id\":\"" + convId + "\"}");
+            }
+
+            Thread.sleep(Duration.ofMillis(ttftMs));
+            for (int i = 0; i < tokens; i++) {
+                if (i > 0) Thread.sleep(interval);
+                String token = i == 0 ? START_MARKER + " " : i == tokens - 1 ? END_MARKER : "流式输出" + i + " ";
+                write(out, chunk(format, token, convId));
+            }
+            if (truncated) return;
+            write(out, switch (format) {
+                case OPENAI -> "[DONE]";
+                case DIFY_CHAT -> "{\"event\":\"message_end\",\"conversation_id\":\"" + convId + "\"}";
+                case DIFY_WORKFLOW -> "{\"event\":\"workflow_finished\",\"data\":{}}";
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // 桥接侧取消回复时会关闭连接
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private static String chunk(Format format, String token, String convId) {
+        return switch (format) {
+            case OPENAI -> "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + token + "\"},\"finish_reason\":null}]}";
+            case DIFY_CHAT -> "{\"event\":\"message\",\"conversation_id\":\"" + convId + "\",\"answer\":\"" + token + "\"}";
+            case DIFY_WORKFLOW -> "{\"event\":\"text_chunk\",\"data\":{\"text\":\"" + token + "\"}}";
+        };
+    }
+
+    private static void write(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}